@@ -0,0 +1,70 @@
+package com.example.permissionapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.os.SystemClock;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.example.permissionapp.metrics.LatencyHistogram;
+import com.example.permissionapp.metrics.MetricsSnapshot;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * 启动 MainActivity，检查 StartupTrace 在首帧后写入的各阶段耗时
+ * 测试由 orchestrator 在新进程中运行，这次启动是进程内的第一个 Activity，进程级首帧（冷启动）应记录一次，且不短于 Activity 级首帧。
+ * 各阶段和首帧各记录一次，setContentView、绑定视图和权限状态都在首帧之前完成。
+ * 这里只检查指标是否正确写入，不是耗时基准；冷启动耗时由 :macrobenchmark 的 StartupBenchmark 测量
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupTraceTest {
+    
+    private static final long REPORT_TIMEOUT_MILLIS = 5000;
+    private static final String FIRST_FRAME = "startup.activity_first_frame";
+    private static final String PROCESS_FIRST_FRAME = "startup.process_first_frame";
+    
+    @Test
+    public void recordsStartupPhases() {
+        MetricsSnapshot before = AppMetrics.REGISTRY.snapshot();
+        try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+            MetricsSnapshot startup = awaitReport(before);
+            
+            for (StartupTrace.Phase phase : StartupTrace.Phase.values()) {
+                assertEquals(phase.metricName, 1, startup.getHistogram(phase.metricName).count);
+            }
+            LatencyHistogram.Snapshot firstFrame = startup.getHistogram(FIRST_FRAME);
+            assertEquals(FIRST_FRAME, 1, firstFrame.count);
+            
+            long beforeFrameNanos = startup.getHistogram(StartupTrace.Phase.CONTENT_VIEW.metricName).sumNanos
+                    + startup.getHistogram(StartupTrace.Phase.BIND_VIEWS.metricName).sumNanos
+                    + startup.getHistogram(StartupTrace.Phase.PERMISSION_STATE.metricName).sumNanos;
+            assertTrue("首帧 " + firstFrame.sumNanos / 1_000_000 + " ms 短于首帧前各阶段之和 "
+                    + beforeFrameNanos / 1_000_000 + " ms", firstFrame.sumNanos >= beforeFrameNanos);
+            
+            LatencyHistogram.Snapshot processFirstFrame = startup.getHistogram(PROCESS_FIRST_FRAME);
+            assertEquals(PROCESS_FIRST_FRAME, 1, processFirstFrame.count);
+            // 进程级首帧按毫秒记录，允许 1 ms 的截断误差
+            assertTrue("进程级首帧 " + processFirstFrame.sumNanos / 1_000_000 + " ms 短于 Activity 级首帧 "
+                    + firstFrame.sumNanos / 1_000_000 + " ms", processFirstFrame.sumNanos + 1_000_000L >= firstFrame.sumNanos);
+        }
+    }
+    
+    /**
+     * 等待首帧后的空闲回调写入指标，返回启动期间新增的指标
+     */
+    private static MetricsSnapshot awaitReport(MetricsSnapshot before) {
+        long deadline = SystemClock.uptimeMillis() + REPORT_TIMEOUT_MILLIS;
+        while (true) {
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+            MetricsSnapshot startup = AppMetrics.REGISTRY.snapshot().minus(before);
+            if (startup.getHistogram(StartupTrace.Phase.DEFERRED_INIT.metricName).count > 0) {
+                return startup;
+            }
+            assertTrue("首帧后 " + REPORT_TIMEOUT_MILLIS + " ms 内没有写入启动指标",
+                    SystemClock.uptimeMillis() < deadline);
+            SystemClock.sleep(50);
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,141 @@
+package com.example.permissionapp;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.util.Log;
+import com.example.permissionapp.metrics.LatencyHistogram;
+import com.example.permissionapp.metrics.MetricsRegistry;
+import com.example.permissionapp.metrics.MetricsSnapshot;
+import com.example.permissionapp.metrics.MetricsSummaryFile;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内的性能指标：收集、写入和读取路径的延迟与计数
+ * 每轮收集结束时把增量累加到按版本保存的摘要文件，升级后可以和上一个版本对比
+ */
+final class AppMetrics {
+    
+    private static final String TAG = "AppMetrics";
+    
+    private static final String SUMMARY_FILE = "metrics_summary.bin";
+    private static final int MAX_RELEASES = 5;
+    
+    static final MetricsRegistry REGISTRY = new MetricsRegistry();
+    
+    // 按权限序号索引的收集耗时
+    private static final LatencyHistogram[] COLLECT_LATENCY = new LatencyHistogram[AppPermission.values().length];
+    static {
+        for (AppPermission permission : AppPermission.values()) {
+            COLLECT_LATENCY[permission.ordinal()] =
+                    REGISTRY.histogram("collect." + permission.name().toLowerCase(Locale.US));
+        }
+    }
+    
+    // 从收到第一个请求到本轮记录写入完成
+    static final LatencyHistogram BATCH_LATENCY = REGISTRY.histogram("collect.batch");
+    static final LatencyHistogram DIRECTORY_WALK = REGISTRY.histogram("storage.directory_walk");
+    
+    static final LatencyHistogram STORE_COMMIT = REGISTRY.histogram("store.commit");
+    static final LongAdder RECORDS_WRITTEN = REGISTRY.counter("store.records_written");
+    static final LongAdder RECORDS_DROPPED = REGISTRY.counter("store.records_dropped");
+    static final LongAdder BYTES_WRITTEN = REGISTRY.counter("store.bytes_written");
+    
+    static final LatencyHistogram READ_OPEN_CURSOR = REGISTRY.histogram("read.open_cursor");
+    static final LatencyHistogram READ_OPEN_QUERY = REGISTRY.histogram("read.open_query");
+    static final LatencyHistogram READ_EXPORT = REGISTRY.histogram("read.export");
+    static final LatencyHistogram READ_PAGE = REGISTRY.histogram("read.page");
+    static final LongAdder RECORDS_READ = REGISTRY.counter("read.records");
+    
+    // 上次写入摘要文件时的快照，下次只累加差值
+    private static MetricsSnapshot lastPersisted = MetricsSnapshot.EMPTY;
+    private static MetricsSummaryFile summaryFile;
+    
+    private AppMetrics() {
+    }
+    
+    static LatencyHistogram collectLatency(AppPermission permission) {
+        return COLLECT_LATENCY[permission.ordinal()];
+    }
+    
+    private static synchronized MetricsSummaryFile getSummaryFile(Context context) {
+        if (summaryFile == null) {
+            summaryFile = new MetricsSummaryFile(
+                    new File(context.getApplicationContext().getFilesDir(), SUMMARY_FILE), MAX_RELEASES);
+        }
+        return summaryFile;
+    }
+    
+    /**
+     * 把上次保存之后新增的指标累加到当前版本的摘要中，应在后台线程调用
+     */
+    static synchronized void persist(Context context) {
+        MetricsSnapshot current = REGISTRY.snapshot();
+        MetricsSnapshot delta = current.minus(lastPersisted);
+        if (delta.isEmpty()) {
+            return;
+        }
+        try {
+            getSummaryFile(context).accumulate(versionName(context), delta, System.currentTimeMillis());
+            lastPersisted = current;
+        } catch (IOException e) {
+            Log.w(TAG, "保存指标摘要失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 调试信息：本进程的指标，以及当前版本和上一个版本的 p99 对比
+     */
+    static void appendDebugInfo(Context context, StringBuilder out) {
+        out.append("本次运行:\n");
+        MetricsSnapshot current = REGISTRY.snapshot();
+        if (current.isEmpty()) {
+            out.append("暂无数据\n");
+        } else {
+            current.appendTo(out);
+        }
+        
+        List<MetricsSummaryFile.Release> releases;
+        try {
+            releases = getSummaryFile(context).load();
+        } catch (IOException e) {
+            out.append("\n读取指标摘要失败: ").append(e.getMessage()).append('\n');
+            return;
+        }
+        if (releases.isEmpty()) {
+            return;
+        }
+        MetricsSummaryFile.Release latest = releases.get(releases.size() - 1);
+        MetricsSummaryFile.Release previous = releases.size() > 1 ? releases.get(releases.size() - 2) : null;
+        out.append("\n版本 ").append(latest.version).append(" 累计");
+        if (previous != null) {
+            out.append("（对比 ").append(previous.version).append("）");
+        }
+        out.append(":\n");
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : latest.metrics.getHistograms().entrySet()) {
+            LatencyHistogram.Snapshot histogram = entry.getValue();
+            out.append(String.format(Locale.US, "%s: n=%d, p99 %.2f ms",
+                    entry.getKey(), histogram.count, histogram.percentileMillis(0.99)));
+            if (previous != null) {
+                LatencyHistogram.Snapshot before = previous.metrics.getHistogram(entry.getKey());
+                if (before.count > 0) {
+                    out.append(String.format(Locale.US, " (之前 %.2f ms)", before.percentileMillis(0.99)));
+                }
+            }
+            out.append('\n');
+        }
+    }
+    
+    private static String versionName(Context context) {
+        try {
+            String name = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionName;
+            return name != null ? name : "unknown";
+        } catch (PackageManager.NameNotFoundException e) {
+            return "unknown";
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,66 @@
+package com.example.permissionapp;
+
+import android.Manifest;
+
+/**
+ * 应用申请的权限
+ * 序号用作权限状态位图和按钮数组的下标，新增权限只能追加在末尾
+ */
+public enum AppPermission {
+    CONTACTS(Manifest.permission.READ_CONTACTS, "通讯录权限", "通讯录权限 - 用于同步联系人到云端"),
+    LOCATION(Manifest.permission.ACCESS_FINE_LOCATION, "位置权限", "位置权限 - 用于提供基于位置的服务"),
+    CAMERA(Manifest.permission.CAMERA, "相机权限", "相机权限 - 用于扫描二维码和拍照"),
+    STORAGE(Manifest.permission.READ_EXTERNAL_STORAGE, "存储权限", "存储权限 - 用于保存应用数据"),
+    MICROPHONE(Manifest.permission.RECORD_AUDIO, "麦克风权限", "麦克风权限 - 用于语音通话和语音输入");
+    
+    private static final AppPermission[] VALUES = values();
+    
+    public final String permission;
+    public final String displayName;
+    // 权限说明，显示在授权对话框和数据查看页面
+    public final String description;
+    
+    AppPermission(String permission, String displayName, String description) {
+        this.permission = permission;
+        this.displayName = displayName;
+        this.description = description;
+    }
+    
+    /**
+     * 在状态位图中对应的位
+     */
+    public int mask() {
+        return 1 << ordinal();
+    }
+    
+    /**
+     * 按系统权限名查找，不是本应用申请的权限时返回 null
+     */
+    public static AppPermission fromPermission(String permission) {
+        for (AppPermission p : VALUES) {
+            if (p.permission.equals(permission)) {
+                return p;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 全部系统权限名，用于一次请求所有权限
+     */
+    public static String[] allPermissions() {
+        String[] permissions = new String[VALUES.length];
+        for (int i = 0; i < VALUES.length; i++) {
+            permissions[i] = VALUES[i].permission;
+        }
+        return permissions;
+    }
+    
+    static AppPermission fromOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+    
+    static int count() {
+        return VALUES.length;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,231 @@
+package com.example.permissionapp;
+
+import android.util.Log;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * 数据收集队列
+ * 按权限合并尚未执行的重复请求，在单个后台线程上顺序执行，队列清空后回调通知
+ */
+public class CollectionQueue {
+    
+    private static final String TAG = "CollectionQueue";
+    
+    /**
+     * 队列回调，均在工作线程上调用
+     */
+    public interface Callback {
+        /** 执行某个权限的数据收集 */
+        void collect(String permission);
+        
+        /** 队列已清空，lastStartId 为清空前收到的最后一个启动ID */
+        void onDrained(int lastStartId);
+    }
+    
+    /**
+     * 队列统计快照
+     */
+    public static class Stats {
+        public final int queueDepth;
+        public final int maxQueueDepth;
+        public final long submitted;
+        public final long coalesced;
+        public final long completed;
+        public final long failed;
+        public final long lastLatencyNanos;
+        public final long maxLatencyNanos;
+        public final long totalLatencyNanos;
+        
+        Stats(int queueDepth, int maxQueueDepth, long submitted, long coalesced, long completed,
+              long failed, long lastLatencyNanos, long maxLatencyNanos, long totalLatencyNanos) {
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.submitted = submitted;
+            this.coalesced = coalesced;
+            this.completed = completed;
+            this.failed = failed;
+            this.lastLatencyNanos = lastLatencyNanos;
+            this.maxLatencyNanos = maxLatencyNanos;
+            this.totalLatencyNanos = totalLatencyNanos;
+        }
+        
+        /** 平均单任务耗时（从入队到执行完成），单位毫秒 */
+        public double averageLatencyMillis() {
+            return completed == 0 ? 0 : totalLatencyNanos / (double) completed / 1_000_000.0;
+        }
+    }
+    
+    private final Executor worker;
+    private final Callback callback;
+    
+    // 待执行的权限和首次入队时间，按入队顺序排列；权限种类很少，用数组避免每次入队分配节点和装箱
+    private String[] pendingPermissions = new String[8];
+    private long[] pendingSince = new long[8];
+    private int pendingCount = 0;
+    private boolean draining = false;
+    private int lastStartId = 0;
+    
+    private int maxQueueDepth = 0;
+    private long submitted = 0;
+    private long coalesced = 0;
+    private long completed = 0;
+    private long failed = 0;
+    private long lastLatencyNanos = 0;
+    private long maxLatencyNanos = 0;
+    private long totalLatencyNanos = 0;
+    
+    private final Runnable drainTask = this::drain;
+    
+    public CollectionQueue(Executor worker, Callback callback) {
+        this.worker = worker;
+        this.callback = callback;
+    }
+    
+    /**
+     * 提交一次收集请求
+     * permission 为 null 时只记录启动ID，用于让空请求也能正确触发 stopSelf
+     *
+     * @return 请求是否与已排队的同一权限请求合并
+     */
+    public boolean submit(String permission, int startId) {
+        boolean merged;
+        boolean schedule;
+        synchronized (this) {
+            lastStartId = startId;
+            merged = permission != null && enqueueLocked(permission, System.nanoTime());
+            schedule = !draining;
+            draining = true;
+        }
+        if (schedule) {
+            worker.execute(drainTask);
+        }
+        return merged;
+    }
+    
+    /**
+     * 一次提交多个权限的收集请求，它们在同一轮处理中执行
+     *
+     * @return 与已排队请求合并的个数
+     */
+    public int submitAll(String[] permissions, int startId) {
+        int merged = 0;
+        boolean schedule;
+        synchronized (this) {
+            lastStartId = startId;
+            long now = System.nanoTime();
+            for (String permission : permissions) {
+                if (permission != null && enqueueLocked(permission, now)) {
+                    merged++;
+                }
+            }
+            schedule = !draining;
+            draining = true;
+        }
+        if (schedule) {
+            worker.execute(drainTask);
+        }
+        return merged;
+    }
+    
+    /**
+     * @return 是否与已排队的同一权限请求合并
+     */
+    private boolean enqueueLocked(String permission, long now) {
+        submitted++;
+        if (indexOfPending(permission) >= 0) {
+            coalesced++;
+            return true;
+        }
+        addPending(permission, now);
+        maxQueueDepth = Math.max(maxQueueDepth, pendingCount);
+        return false;
+    }
+    
+    private void drain() {
+        while (true) {
+            String permission;
+            long enqueuedAt;
+            int startId;
+            synchronized (this) {
+                if (pendingCount == 0) {
+                    draining = false;
+                    startId = lastStartId;
+                    permission = null;
+                    enqueuedAt = 0;
+                } else {
+                    permission = pendingPermissions[0];
+                    enqueuedAt = pendingSince[0];
+                    removeFirstPending();
+                    startId = 0;
+                }
+            }
+            
+            if (permission == null) {
+                callback.onDrained(startId);
+                return;
+            }
+            
+            boolean ok = true;
+            try {
+                callback.collect(permission);
+            } catch (RuntimeException e) {
+                // 单个收集任务失败不能中断整个队列，否则 draining 永远不会复位
+                ok = false;
+                Log.e(TAG, "收集数据失败: " + permission, e);
+            } finally {
+                long latency = System.nanoTime() - enqueuedAt;
+                synchronized (this) {
+                    completed++;
+                    if (!ok) {
+                        failed++;
+                    }
+                    lastLatencyNanos = latency;
+                    maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+                    totalLatencyNanos += latency;
+                }
+            }
+        }
+    }
+    
+    private int indexOfPending(String permission) {
+        for (int i = 0; i < pendingCount; i++) {
+            if (pendingPermissions[i].equals(permission)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private void addPending(String permission, long since) {
+        if (pendingCount == pendingPermissions.length) {
+            pendingPermissions = Arrays.copyOf(pendingPermissions, pendingCount * 2);
+            pendingSince = Arrays.copyOf(pendingSince, pendingCount * 2);
+        }
+        pendingPermissions[pendingCount] = permission;
+        pendingSince[pendingCount] = since;
+        pendingCount++;
+    }
+    
+    private void removeFirstPending() {
+        pendingCount--;
+        System.arraycopy(pendingPermissions, 1, pendingPermissions, 0, pendingCount);
+        System.arraycopy(pendingSince, 1, pendingSince, 0, pendingCount);
+        pendingPermissions[pendingCount] = null;
+    }
+    
+    /**
+     * 当前排队中的请求数
+     */
+    public synchronized int getQueueDepth() {
+        return pendingCount;
+    }
+    
+    /**
+     * 获取统计快照
+     */
+    public synchronized Stats getStats() {
+        return new Stats(pendingCount, maxQueueDepth, submitted, coalesced, completed,
+                failed, lastLatencyNanos, maxLatencyNanos, totalLatencyNanos);
+    }
+} 
\ No newline at end of file
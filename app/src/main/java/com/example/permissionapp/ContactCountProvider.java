@@ -0,0 +1,148 @@
+package com.example.permissionapp;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+/**
+ * 联系人数量提供者
+ * 缓存上次查询到的数量，通讯录变化时由 ContentObserver 标记失效，只在失效后重新查询。
+ * 查询优先使用只返回数量的 _count 投影，提供者不支持时退回到只取 _ID 的 getCount()；
+ * 两种方式都不读取联系人的任何字段内容，缓存中也只有数量
+ */
+public class ContactCountProvider {
+    
+    private static final String TAG = "ContactCountProvider";
+    
+    private static ContactCountProvider instance;
+    
+    private final ContentResolver resolver;
+    private final ContentObserver observer = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            dirty = true;
+        }
+    };
+    
+    private volatile boolean dirty = true;
+    private boolean observerRegistered = false;
+    private boolean countProjectionSupported = true;
+    private int cachedCount = -1;
+    
+    private long queries = 0;
+    private long cacheHits = 0;
+    
+    private ContactCountProvider(Context context) {
+        this.resolver = context.getApplicationContext().getContentResolver();
+    }
+    
+    /**
+     * 进程内共享的实例，缓存在服务停止后仍然保留
+     */
+    public static synchronized ContactCountProvider getInstance(Context context) {
+        if (instance == null) {
+            instance = new ContactCountProvider(context);
+        }
+        return instance;
+    }
+    
+    /**
+     * 当前联系人数量，缓存有效时不访问通讯录
+     *
+     * @return 提供者不可用时返回 -1
+     * @throws SecurityException 没有通讯录权限
+     */
+    public synchronized int getCount() {
+        if (!dirty && cachedCount >= 0) {
+            cacheHits++;
+            return cachedCount;
+        }
+        registerObserver();
+        // 先清除标记，查询期间发生的变化会重新标记
+        dirty = false;
+        int count = queryCount();
+        if (count < 0) {
+            dirty = true;
+        }
+        cachedCount = count;
+        queries++;
+        return count;
+    }
+    
+    /**
+     * 标记缓存失效，例如权限重新授予之后
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+    
+    public synchronized long getQueryCount() {
+        return queries;
+    }
+    
+    public synchronized long getCacheHitCount() {
+        return cacheHits;
+    }
+    
+    private void registerObserver() {
+        if (observerRegistered) {
+            return;
+        }
+        try {
+            resolver.registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, observer);
+            observerRegistered = true;
+        } catch (SecurityException e) {
+            // 注册失败时每次都重新查询
+            Log.w(TAG, "注册通讯录监听失败: " + e.getMessage());
+        }
+    }
+    
+    private int queryCount() {
+        if (countProjectionSupported) {
+            try {
+                Integer count = queryCountProjection();
+                if (count != null) {
+                    return count;
+                }
+            } catch (IllegalArgumentException e) {
+                // 提供者不认识 _count 列
+            }
+            countProjectionSupported = false;
+            Log.d(TAG, "通讯录不支持 _count 查询，改用 _ID 计数");
+        }
+        return queryIdCount();
+    }
+    
+    private Integer queryCountProjection() {
+        Cursor cursor = resolver.query(ContactsContract.Contacts.CONTENT_URI,
+                new String[]{ContactsContract.Contacts._COUNT}, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            int column = cursor.getColumnIndex(ContactsContract.Contacts._COUNT);
+            if (cursor.getCount() != 1 || column < 0 || !cursor.moveToFirst()) {
+                return null;
+            }
+            return cursor.getInt(column);
+        } finally {
+            cursor.close();
+        }
+    }
+    
+    private int queryIdCount() {
+        Cursor cursor = resolver.query(ContactsContract.Contacts.CONTENT_URI,
+                new String[]{ContactsContract.Contacts._ID}, null, null, null);
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+} 
\ No newline at end of file
@@ -1,23 +1,45 @@
 package com.example.permissionapp;
 
 import android.app.Service;
+import android.app.usage.StorageStats;
+import android.app.usage.StorageStatsManager;
+import android.content.ComponentName;
 import android.content.Intent;
-import android.database.Cursor;
-import android.location.Location;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
 import android.location.LocationManager;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
-import android.provider.ContactsContract;
+import android.os.Process;
 import android.util.Log;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import com.example.permissionapp.storage.DataRecord;
+import com.example.permissionapp.storage.DataType;
+import com.example.permissionapp.storage.DirectorySizer;
+import com.example.permissionapp.storage.JournalWriter;
+import com.example.permissionapp.storage.JsonRecordEncoder;
+import com.example.permissionapp.storage.LegacyJsonDecoder;
+import com.example.permissionapp.storage.RecordCodec;
+import com.example.permissionapp.storage.RecordCursor;
+import com.example.permissionapp.storage.RecordQuery;
+import com.example.permissionapp.storage.RecordStore;
+import com.example.permissionapp.storage.RetentionPolicy;
+import com.example.permissionapp.storage.Rollup;
+import com.example.permissionapp.storage.StoreWriter;
+import com.example.permissionapp.storage.TieringPolicy;
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashMap;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 数据收集服务
@@ -26,51 +48,263 @@ import java.util.Map;
 public class DataCollectionService extends Service {
     
     private static final String TAG = "DataCollectionService";
-    private static final String DATA_FILE = "collected_data.json";
+    // 启动参数：单个权限（permission + permission_granted）或一批已授权的权限
+    public static final String EXTRA_PERMISSION = "permission";
+    public static final String EXTRA_PERMISSION_GRANTED = "permission_granted";
+    public static final String EXTRA_PERMISSIONS = "permissions";
     
-    // 数据收集状态
-    private Map<String, Boolean> collectionStatus = new HashMap<>();
+    // 旧版本写入的 JSON 文件，只读不写
+    private static final String LEGACY_DATA_FILE = "collected_data.json";
+    
+    // 服务按轮次调用 appendAll 并立即写入；单条 append 在短时间窗口内合并为一次写入。
+    // 不逐次 fsync：记录带校验，存储定期做检查点，崩溃后重新打开时截掉残缺的尾部
+    private static final JournalWriter.FlushPolicy JOURNAL_FLUSH_POLICY =
+            JournalWriter.FlushPolicy.timeWindow(200, false);
+    
+    // 进程内共享的记录存储和它唯一的写入线程：服务的写入和静态清除都经写入线程排队执行，
+    // 静态读取从已发布的快照打开游标，不与写入互相等待
+    private static final Object STORE_LOCK = new Object();
+    private static RecordStore store;
+    private static StoreWriter storeWriter;
+    // 写入线程合并多次提交时每次最多写入的记录数
+    private static final int MAX_COMMIT_RECORDS = 256;
+    
+    // 位置没有变化时，最多每隔这么久写一条心跳记录
+    private static final long LOCATION_HEARTBEAT_INTERVAL_MILLIS = 6 * 60 * 60 * 1000L;
+    
+    // 服务的 meta-data：true（默认）时按文件逐个求和；false 时在 API 26 以上直接读取系统存储统计
+    private static final String META_EXACT_STORAGE_SIZE = "com.example.permissionapp.EXACT_STORAGE_SIZE";
+    // 目录缓存在进程内跨服务实例共享
+    private static final DirectorySizer DIRECTORY_SIZER =
+            new DirectorySizer(5 * 60 * 1000L, 10 * 60 * 1000L);
+    
+    // 后台收集线程与合并队列，避免在主线程上查询数据库和读写文件
+    private HandlerThread workerThread;
+    private CollectionQueue collectionQueue;
+    private boolean exactStorageSize = true;
+    
+    // 仅在工作线程上使用，重复利用避免每条记录分配
+    private final DataRecord record = new DataRecord();
+    
+    // 本轮收集产生的记录，队列清空时作为一次事务写入；仅在工作线程上使用
+    private DataRecord[] stagedRecords = new DataRecord[AppPermission.values().length];
+    private int stagedCount = 0;
+    
+    // 本轮第一个请求到达的时间，用于统计批量收集的端到端耗时
+    private final AtomicLong batchStartNanos = new AtomicLong();
+    private long maxBatchLatencyNanos = 0;
+    
+    // 逐条记录的调试日志会拼接字符串，默认关闭；adb shell setprop log.tag.DataCollectionService DEBUG 打开
+    private static final boolean LOG_RECORDS = Log.isLoggable(TAG, Log.DEBUG);
+    
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        exactStorageSize = readExactStorageSize();
+        workerThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        workerThread.start();
+        Handler workerHandler = new Handler(workerThread.getLooper());
+        collectionQueue = new CollectionQueue(workerHandler::post, new CollectionQueue.Callback() {
+            @Override
+            public void collect(String permission) {
+                collectData(permission);
+            }
+            
+            @Override
+            public void onDrained(int lastStartId) {
+                commitStagedRecords();
+                logQueueStats();
+                AppMetrics.persist(DataCollectionService.this);
+                // 只有 lastStartId 是最近一次启动时才会真正停止，之后到达的请求会重新排队
+                stopSelf(lastStartId);
+            }
+        });
+    }
     
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "数据收集服务启动");
         
+        batchStartNanos.compareAndSet(0, System.nanoTime());
+        
+        // 批量请求：数组中的权限都已由用户授权
+        String[] permissions = intent != null ? intent.getStringArrayExtra(EXTRA_PERMISSIONS) : null;
+        if (permissions != null) {
+            int merged = collectionQueue.submitAll(permissions, startId);
+            if (merged > 0) {
+                Log.d(TAG, "批量请求中有 " + merged + " 个已在队列中，已合并");
+            }
+            return START_NOT_STICKY;
+        }
+        
+        String permission = null;
+        
         // 检查用户授权状态
-        if (intent != null && intent.hasExtra("permission_granted")) {
-            String permission = intent.getStringExtra("permission");
-            boolean granted = intent.getBooleanExtra("permission_granted", false);
+        if (intent != null && intent.hasExtra(EXTRA_PERMISSION_GRANTED)) {
+            boolean granted = intent.getBooleanExtra(EXTRA_PERMISSION_GRANTED, false);
             
             if (granted) {
-                collectData(permission);
+                permission = intent.getStringExtra(EXTRA_PERMISSION);
             }
         }
         
+        // 即使没有需要收集的数据也要提交，保证队列清空时能用最新的 startId 停止服务
+        if (collectionQueue.submit(permission, startId)) {
+            Log.d(TAG, "已合并重复的收集请求: " + permission);
+        }
+        
         return START_NOT_STICKY;
     }
     
+    /**
+     * 用一次服务启动请求收集多个已授权权限的数据
+     */
+    public static void startBatch(android.content.Context context, String[] grantedPermissions) {
+        Intent intent = new Intent(context, DataCollectionService.class);
+        intent.putExtra(EXTRA_PERMISSIONS, grantedPermissions);
+        context.startService(intent);
+    }
+    
+    /**
+     * 输出收集队列的深度和耗时统计
+     */
+    private void logQueueStats() {
+        CollectionQueue.Stats stats = collectionQueue.getStats();
+        Log.d(TAG, String.format(Locale.US,
+                "收集队列已清空: 完成 %d, 合并 %d, 失败 %d, 最大队列深度 %d, 平均耗时 %.1f ms, 最大耗时 %.1f ms",
+                stats.completed, stats.coalesced, stats.failed, stats.maxQueueDepth,
+                stats.averageLatencyMillis(), stats.maxLatencyNanos / 1_000_000.0));
+        
+        synchronized (STORE_LOCK) {
+            if (store != null) {
+                JournalWriter.Stats journalStats = store.getJournalStats();
+                Log.d(TAG, String.format(Locale.US,
+                        "日志写入 %s: 记录 %d, 写入 %d 字节, 刷盘 %d 次 (每次 %.1f 条), 平均刷盘 %.2f ms, 最大刷盘 %.2f ms",
+                        store.getFlushPolicy(), journalStats.recordsAppended, journalStats.bytesWritten,
+                        journalStats.flushCount, journalStats.recordsPerFlush(),
+                        journalStats.averageFlushMillis(), journalStats.maxFlushNanos / 1_000_000.0));
+                StoreWriter.Stats writerStats = storeWriter.getStats();
+                Log.d(TAG, String.format(Locale.US,
+                        "写入线程: 提交 %d 条, 写入 %d 条 (%d 次, 每次 %.1f 条), 失败 %d 条",
+                        writerStats.submitted, writerStats.committed, writerStats.commits,
+                        writerStats.recordsPerCommit(), writerStats.failed));
+                Log.d(TAG, "存储状态: " + store.describe());
+            }
+        }
+    }
+    
+    /**
+     * 获取共享的记录存储，首次使用时打开
+     */
+    private static RecordStore getStore(android.content.Context context) throws IOException {
+        synchronized (STORE_LOCK) {
+            if (store == null) {
+                store = new RecordStore(context.getApplicationContext().getFilesDir(),
+                        JOURNAL_FLUSH_POLICY, RetentionPolicy.DEFAULT, TieringPolicy.DEFAULT,
+                        StorageKey.get(context));
+                storeWriter = new StoreWriter(store, MAX_COMMIT_RECORDS, STORE_LISTENER);
+            }
+            return store;
+        }
+    }
+    
+    private static StoreWriter getWriter(android.content.Context context) throws IOException {
+        synchronized (STORE_LOCK) {
+            getStore(context);
+            return storeWriter;
+        }
+    }
+    
+    /**
+     * 写入结果计入指标，在写入线程上调用
+     */
+    private static final StoreWriter.Listener STORE_LISTENER = new StoreWriter.Listener() {
+        @Override
+        public void onCommitted(DataRecord[] records, int count, long elapsedNanos) {
+            AppMetrics.STORE_COMMIT.record(elapsedNanos);
+            AppMetrics.RECORDS_WRITTEN.add(count);
+            long bytes = 0;
+            for (int i = 0; i < count; i++) {
+                bytes += RecordCodec.encodedSize(records[i]);
+            }
+            AppMetrics.BYTES_WRITTEN.add(bytes);
+        }
+        
+        @Override
+        public void onFailed(int count, IOException e) {
+            AppMetrics.RECORDS_DROPPED.add(count);
+            Log.e(TAG, "保存数据失败: " + e.getMessage());
+        }
+    };
+    
+    /**
+     * 打开收集记录的只读游标，调用方负责关闭
+     * 游标从最近提交的快照打开，不等待写入线程；按需分页读取，适合在后台线程上浏览大量历史记录
+     */
+    public static RecordCursor openCursor(android.content.Context context) throws IOException {
+        long start = System.nanoTime();
+        RecordCursor cursor = getStore(context).openCursor();
+        AppMetrics.READ_OPEN_CURSOR.recordSince(start);
+        return cursor;
+    }
+    
+    /**
+     * 按数据类型和时间过滤的只读查询，调用方负责关闭
+     * 结果由存储的二级索引定位，打开和读取的耗时与结果条数有关，不扫描其余历史记录
+     *
+     * @param type       只查询这一类型，null 为全部
+     * @param fromMillis 只查询不早于这个时间的记录，0 为全部
+     */
+    public static RecordQuery openQuery(android.content.Context context, DataType type, long fromMillis)
+            throws IOException {
+        long start = System.nanoTime();
+        RecordQuery query = getStore(context).query(type, fromMillis > 0 ? fromMillis : Long.MIN_VALUE, Long.MAX_VALUE);
+        AppMetrics.READ_OPEN_QUERY.recordSince(start);
+        return query;
+    }
+    
+    /**
+     * 全部记录的汇总统计（条数、时间范围、联系人数量和存储变化、位置格子数）
+     * 汇总随写入增量维护，查询不读取记录
+     */
+    public static Rollup getRollup(android.content.Context context) throws IOException {
+        return getStore(context).getRollup();
+    }
+    
     /**
      * 根据权限收集数据
      */
     private void collectData(String permission) {
-        switch (permission) {
-            case "android.permission.READ_CONTACTS":
+        AppPermission appPermission = AppPermission.fromPermission(permission);
+        if (appPermission == null) {
+            return;
+        }
+        // 请求排队期间权限可能已被撤销
+        if (!PermissionStateRegistry.getInstance(this).isGranted(appPermission)) {
+            Log.w(TAG, appPermission.displayName + "未授权，跳过收集");
+            return;
+        }
+        long start = System.nanoTime();
+        switch (appPermission) {
+            case CONTACTS:
                 collectContactsData();
                 break;
-            case "android.permission.ACCESS_FINE_LOCATION":
+            case LOCATION:
                 collectLocationData();
                 break;
-            case "android.permission.CAMERA":
+            case CAMERA:
                 // 相机权限通常不收集数据，仅用于实时功能
                 Log.d(TAG, "相机权限 - 不收集数据，仅用于实时功能");
                 break;
-            case "android.permission.READ_EXTERNAL_STORAGE":
+            case STORAGE:
                 collectStorageData();
                 break;
-            case "android.permission.RECORD_AUDIO":
+            case MICROPHONE:
                 // 麦克风权限通常不收集数据，仅用于实时功能
                 Log.d(TAG, "麦克风权限 - 不收集数据，仅用于实时功能");
                 break;
         }
+        AppMetrics.collectLatency(appPermission).recordSince(start);
     }
     
     /**
@@ -78,57 +312,40 @@ public class DataCollectionService extends Service {
      */
     private void collectContactsData() {
         try {
-            Cursor cursor = getContentResolver().query(
-                ContactsContract.Contacts.CONTENT_URI,
-                new String[]{ContactsContract.Contacts._ID},
-                null, null, null
-            );
+            ContactCountProvider provider = ContactCountProvider.getInstance(this);
+            int contactCount = provider.getCount();
             
-            if (cursor != null) {
-                int contactCount = cursor.getCount();
-                cursor.close();
-                
+            if (contactCount >= 0) {
                 // 只记录联系人数量，不收集具体信息
-                Map<String, Object> data = new HashMap<>();
-                data.put("permission", "READ_CONTACTS");
-                data.put("data_type", "contact_count");
-                data.put("value", contactCount);
-                data.put("timestamp", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date()));
-                data.put("user_consent", true);
-                
-                saveDataToFile(data);
-                Log.d(TAG, "收集通讯录数据: 联系人数量 = " + contactCount);
+                saveDataToFile(record.setContactCount(System.currentTimeMillis(), contactCount));
+                if (LOG_RECORDS) {
+                    Log.d(TAG, "收集通讯录数据: 联系人数量 = " + contactCount
+                            + " (查询 " + provider.getQueryCount() + " 次, 缓存命中 " + provider.getCacheHitCount() + " 次)");
+                }
             }
         } catch (SecurityException e) {
             Log.e(TAG, "没有通讯录权限: " + e.getMessage());
         }
     }
     
-    /**
-     * 收集位置数据（仅收集大致位置，不精确追踪）
-     */
     private void collectLocationData() {
         try {
             LocationManager locationManager = (LocationManager) getSystemService(LOCATION_SERVICE);
             
-            if (locationManager != null && 
-                checkSelfPermission(android.Manifest.permission.ACCESS_FINE_LOCATION) == android.content.pm.PackageManager.PERMISSION_GRANTED) {
+            // 权限已在 collectData 中通过 PermissionStateRegistry 检查
+            if (locationManager != null) {
                 
-                Location location = locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
+                LocationSampler sampler = LocationSampler.getInstance(LOCATION_HEARTBEAT_INTERVAL_MILLIS);
+                LocationSampler.Outcome outcome = sampler.sample(locationManager, System.currentTimeMillis(), record);
                 
-                if (location != null) {
-                    // 只记录大致位置（精确到城市级别），不精确追踪
-                    Map<String, Object> data = new HashMap<>();
-                    data.put("permission", "ACCESS_FINE_LOCATION");
-                    data.put("data_type", "approximate_location");
-                    data.put("latitude_rounded", Math.round(location.getLatitude() * 100.0) / 100.0);
-                    data.put("longitude_rounded", Math.round(location.getLongitude() * 100.0) / 100.0);
-                    data.put("accuracy", location.getAccuracy());
-                    data.put("timestamp", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date()));
-                    data.put("user_consent", true);
-                    
-                    saveDataToFile(data);
-                    Log.d(TAG, "收集位置数据: 大致位置已记录");
+                if (outcome == LocationSampler.Outcome.WRITTEN || outcome == LocationSampler.Outcome.HEARTBEAT) {
+                    saveDataToFile(record);
+                }
+                if (LOG_RECORDS) {
+                    Log.d(TAG, String.format(Locale.US,
+                            "收集位置数据: %s (写入 %d, 心跳 %d, 跳过 %d, 无定位 %d)",
+                            outcome, sampler.getWrittenCount(), sampler.getHeartbeatCount(),
+                            sampler.getSuppressedCount(), sampler.getNoFixCount()));
                 }
             }
         } catch (SecurityException e) {
@@ -136,128 +353,173 @@ public class DataCollectionService extends Service {
         }
     }
     
-    /**
-     * 收集存储数据（仅收集应用数据信息）
-     */
     private void collectStorageData() {
         try {
-            File appDir = getApplicationContext().getFilesDir();
-            long appDataSize = getDirectorySize(appDir);
-            
-            Map<String, Object> data = new HashMap<>();
-            data.put("permission", "READ_EXTERNAL_STORAGE");
-            data.put("data_type", "app_storage_info");
-            data.put("app_data_size_bytes", appDataSize);
-            data.put("app_data_size_mb", appDataSize / (1024 * 1024));
-            data.put("timestamp", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date()));
-            data.put("user_consent", true);
+            long appDataSize = -1;
+            if (!exactStorageSize && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                appDataSize = queryStorageStatsDataBytes();
+            }
+            if (appDataSize < 0) {
+                DirectorySizer.Result result = DIRECTORY_SIZER.measure(getApplicationContext().getFilesDir());
+                appDataSize = result.bytes;
+                AppMetrics.DIRECTORY_WALK.record(result.elapsedNanos);
+                if (LOG_RECORDS) {
+                    Log.d(TAG, String.format(Locale.US,
+                            "目录大小计算: %d 个文件, %d 个目录, 重新列出 %d, 缓存命中 %d, 耗时 %.2f ms%s",
+                            result.files, result.directories, result.directoriesListed, result.cacheHits,
+                            result.elapsedNanos / 1_000_000.0, result.parallel ? " (并行)" : ""));
+                }
+            }
             
-            saveDataToFile(data);
-            Log.d(TAG, "收集存储数据: 应用数据大小 = " + (appDataSize / (1024 * 1024)) + " MB");
+            saveDataToFile(record.setStorage(System.currentTimeMillis(), appDataSize));
+            if (LOG_RECORDS) {
+                Log.d(TAG, "收集存储数据: 应用数据大小 = " + (appDataSize / (1024 * 1024)) + " MB");
+            }
         } catch (Exception e) {
             Log.e(TAG, "收集存储数据失败: " + e.getMessage());
         }
     }
     
     /**
-     * 计算目录大小
+     * 读取服务 meta-data 中的存储大小计算方式，没有配置时按文件逐个求和
      */
-    private long getDirectorySize(File directory) {
-        long size = 0;
-        if (directory.exists() && directory.isDirectory()) {
-            File[] files = directory.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile()) {
-                        size += file.length();
-                    } else if (file.isDirectory()) {
-                        size += getDirectorySize(file);
-                    }
-                }
+    private boolean readExactStorageSize() {
+        try {
+            ServiceInfo info = getPackageManager().getServiceInfo(
+                    new ComponentName(this, DataCollectionService.class), PackageManager.GET_META_DATA);
+            return info.metaData == null || info.metaData.getBoolean(META_EXACT_STORAGE_SIZE, true);
+        } catch (PackageManager.NameNotFoundException e) {
+            return true;
+        }
+    }
+    
+    /**
+     * 通过系统存储统计读取应用数据大小，不遍历文件；统计范围是整个数据目录，比 files 目录大
+     *
+     * @return 无法读取时返回 -1
+     */
+    @RequiresApi(Build.VERSION_CODES.O)
+    private long queryStorageStatsDataBytes() {
+        try {
+            StorageStatsManager statsManager = getSystemService(StorageStatsManager.class);
+            if (statsManager == null) {
+                return -1;
             }
+            StorageStats stats = statsManager.queryStatsForUid(getApplicationInfo().storageUuid, Process.myUid());
+            return stats.getDataBytes();
+        } catch (IOException | SecurityException e) {
+            Log.w(TAG, "读取存储统计失败，改为遍历目录: " + e.getMessage());
+            return -1;
         }
-        return size;
     }
     
     /**
-     * 保存数据到文件
+     * 暂存一条记录，队列清空时统一写入
      */
-    private void saveDataToFile(Map<String, Object> data) {
+    private void saveDataToFile(DataRecord data) {
+        if (stagedCount == stagedRecords.length) {
+            stagedRecords = Arrays.copyOf(stagedRecords, stagedCount * 2);
+        }
+        if (stagedRecords[stagedCount] == null) {
+            stagedRecords[stagedCount] = new DataRecord();
+        }
+        stagedRecords[stagedCount++].copyFrom(data);
+    }
+    
+    /**
+     * 把本轮收集的全部记录作为一批交给写入线程（整批写入同一次事务），并统计从收到请求到提交的耗时
+     * 写入结果由 STORE_LISTENER 计入指标
+     */
+    private void commitStagedRecords() {
+        int count = stagedCount;
+        stagedCount = 0;
         try {
-            File dataFile = new File(getApplicationContext().getFilesDir(), DATA_FILE);
-            
-            // 创建JSON格式的数据
-            StringBuilder jsonData = new StringBuilder();
-            jsonData.append("{\n");
-            jsonData.append("  \"permission\": \"").append(data.get("permission")).append("\",\n");
-            jsonData.append("  \"data_type\": \"").append(data.get("data_type")).append("\",\n");
-            
-            // 添加具体数据
-            for (Map.Entry<String, Object> entry : data.entrySet()) {
-                String key = entry.getKey();
-                Object value = entry.getValue();
-                
-                if (!key.equals("permission") && !key.equals("data_type")) {
-                    if (value instanceof String) {
-                        jsonData.append("  \"").append(key).append("\": \"").append(value).append("\",\n");
-                    } else {
-                        jsonData.append("  \"").append(key).append("\": ").append(value).append(",\n");
-                    }
+            if (count > 0) {
+                getWriter(this).submitAll(stagedRecords, count);
+                if (LOG_RECORDS) {
+                    Log.d(TAG, "已提交 " + count + " 条记录");
                 }
             }
-            
-            // 移除最后一个逗号
-            if (jsonData.charAt(jsonData.length() - 2) == ',') {
-                jsonData.setLength(jsonData.length() - 2);
-                jsonData.append("\n");
-            }
-            
-            jsonData.append("}\n");
-            
-            // 写入文件
-            FileWriter writer = new FileWriter(dataFile, true); // 追加模式
-            writer.write(jsonData.toString());
-            writer.write("\n"); // 添加分隔符
-            writer.close();
-            
-            Log.d(TAG, "数据已保存到文件: " + dataFile.getAbsolutePath());
-            
         } catch (IOException e) {
+            AppMetrics.RECORDS_DROPPED.add(count);
             Log.e(TAG, "保存数据失败: " + e.getMessage());
+        } finally {
+            long start = batchStartNanos.getAndSet(0);
+            if (start != 0) {
+                long latency = System.nanoTime() - start;
+                AppMetrics.BATCH_LATENCY.record(latency);
+                maxBatchLatencyNanos = Math.max(maxBatchLatencyNanos, latency);
+                Log.d(TAG, String.format(Locale.US,
+                        "本轮收集完成: %d 条记录, 端到端耗时 %.1f ms (最大 %.1f ms)",
+                        count, latency / 1_000_000.0, maxBatchLatencyNanos / 1_000_000.0));
+            }
         }
     }
     
     /**
      * 获取收集的数据
+     * 兼容接口：通过游标逐条读取后拼接，旧版 JSON 文件的记录排在前面；
+     * 历史较多时请使用 openCursor 分页读取
      */
     public static String getCollectedData(android.content.Context context) {
+        long start = System.nanoTime();
+        long records = 0;
         try {
-            File dataFile = new File(context.getFilesDir(), DATA_FILE);
-            if (dataFile.exists()) {
-                java.util.Scanner scanner = new java.util.Scanner(dataFile);
-                StringBuilder data = new StringBuilder();
-                while (scanner.hasNextLine()) {
-                    data.append(scanner.nextLine()).append("\n");
+            StringBuilder data = new StringBuilder();
+            JsonRecordEncoder encoder = new JsonRecordEncoder(true);
+            DataRecord record = new DataRecord();
+            
+            File legacyFile = new File(context.getFilesDir(), LEGACY_DATA_FILE);
+            if (legacyFile.exists()) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new FileInputStream(legacyFile), StandardCharsets.UTF_8))) {
+                    LegacyJsonDecoder decoder = new LegacyJsonDecoder(reader);
+                    while (decoder.next(record)) {
+                        encoder.write(record, data);
+                        data.append("\n");
+                        records++;
+                    }
+                    if (decoder.getSkippedObjects() > 0) {
+                        Log.w(TAG, "旧版数据中有 " + decoder.getSkippedObjects() + " 条损坏记录已跳过");
+                    }
+                }
+            }
+            
+            try (RecordCursor cursor = openCursor(context)) {
+                while (cursor.next(record)) {
+                    encoder.write(record, data);
+                    data.append("\n");
+                    records++;
                 }
-                scanner.close();
+            }
+            
+            if (data.length() > 0) {
                 return data.toString();
             }
-        } catch (IOException e) {
+        } catch (IOException | IllegalArgumentException e) {
             Log.e(TAG, "读取数据失败: " + e.getMessage());
+        } finally {
+            AppMetrics.READ_EXPORT.recordSince(start);
+            AppMetrics.RECORDS_READ.add(records);
         }
         return "暂无收集的数据";
     }
     
     /**
      * 清除收集的数据
+     * 等待写入线程写完之前提交的记录并执行清除后返回，不要在主线程上调用
      */
     public static void clearCollectedData(android.content.Context context) {
         try {
-            File dataFile = new File(context.getFilesDir(), DATA_FILE);
-            if (dataFile.exists()) {
-                dataFile.delete();
-                Log.d(TAG, "收集的数据已清除");
+            File legacyFile = new File(context.getFilesDir(), LEGACY_DATA_FILE);
+            if (legacyFile.exists()) {
+                legacyFile.delete();
             }
+            // 排在已提交的记录之后执行，等待完成；只改写清单，段文件在后台删除
+            getWriter(context).clear();
+            // 清除后下一次位置采样需要重新写入完整记录
+            LocationSampler.resetShared();
+            Log.d(TAG, "收集的数据已清除");
         } catch (Exception e) {
             Log.e(TAG, "清除数据失败: " + e.getMessage());
         }
@@ -272,6 +534,21 @@ public class DataCollectionService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        // 排在已入队任务之后等待写入线程写完已提交的记录，然后退出线程
+        new Handler(workerThread.getLooper()).post(() -> {
+            try {
+                StoreWriter writer;
+                synchronized (STORE_LOCK) {
+                    writer = storeWriter;
+                }
+                if (writer != null) {
+                    writer.sync();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "写入缓冲数据失败: " + e.getMessage());
+            }
+        });
+        workerThread.quitSafely();
         Log.d(TAG, "数据收集服务已停止");
     }
 } 
\ No newline at end of file
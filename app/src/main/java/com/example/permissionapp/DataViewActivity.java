@@ -0,0 +1,142 @@
+package com.example.permissionapp;
+
+import android.os.Bundle;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.ProgressBar;
+import android.widget.Spinner;
+import android.widget.TextView;
+import android.widget.Toast;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import com.example.permissionapp.storage.DataType;
+import java.io.IOException;
+
+/**
+ * 收集数据的浏览页
+ * 记录从新到旧分页显示，可按数据类型和时间范围过滤。打开页面或切换条件只打开一个由存储索引定位的查询，
+ * 不读取全部记录；翻页在后台线程上读取，滚动时主线程只绑定已经格式化好的行
+ */
+public class DataViewActivity extends AppCompatActivity {
+    
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final String[] TIME_RANGE_NAMES = {"全部时间", "最近 24 小时", "最近 7 天", "最近 30 天"};
+    private static final long[] TIME_RANGE_MILLIS = {0, DAY_MILLIS, 7 * DAY_MILLIS, 30 * DAY_MILLIS};
+    private static final DataType[] TYPES = DataType.values();
+    
+    private RecordListAdapter adapter;
+    private TextView statusText;
+    private ProgressBar progressBar;
+    // 当前的过滤条件：类型下拉框的 0 为全部类型，其余为 TYPES 的下标加一
+    private int typeSelection = 0;
+    private int rangeSelection = 0;
+    
+    private final RecordListAdapter.StateListener stateListener = new RecordListAdapter.StateListener() {
+        @Override
+        public void onStateChanged(int count, boolean opening) {
+            progressBar.setVisibility(opening ? View.VISIBLE : View.GONE);
+            if (opening) {
+                statusText.setText("正在读取…");
+            } else if (count == 0) {
+                statusText.setText("没有符合条件的记录");
+            } else {
+                statusText.setText("共 " + count + " 条记录");
+            }
+        }
+        
+        @Override
+        public void onLoadFailed(IOException e) {
+            statusText.setText("读取数据失败");
+            Toast.makeText(DataViewActivity.this, "读取数据失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    };
+    
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_data_view);
+        
+        statusText = findViewById(R.id.status_text);
+        progressBar = findViewById(R.id.loading_progress);
+        
+        adapter = new RecordListAdapter(this, stateListener);
+        RecyclerView recordList = findViewById(R.id.record_list);
+        recordList.setLayoutManager(new LinearLayoutManager(this));
+        recordList.setHasFixedSize(true);
+        recordList.setAdapter(adapter);
+        
+        setupFilters();
+        runQuery();
+    }
+    
+    @Override
+    protected void onRestart() {
+        super.onRestart();
+        // 离开期间可能收集了新数据，重新打开快照；没有变化的行不会刷新
+        runQuery();
+    }
+    
+    @Override
+    protected void onDestroy() {
+        adapter.close();
+        super.onDestroy();
+    }
+    
+    private void setupFilters() {
+        String[] typeNames = new String[TYPES.length + 1];
+        typeNames[0] = "全部类型";
+        for (int i = 0; i < TYPES.length; i++) {
+            AppPermission permission = AppPermission.fromPermission(TYPES[i].permission);
+            typeNames[i + 1] = permission != null ? permission.displayName : TYPES[i].jsonName;
+        }
+        Spinner typeSpinner = findViewById(R.id.type_spinner);
+        typeSpinner.setAdapter(spinnerAdapter(typeNames));
+        typeSpinner.setOnItemSelectedListener(new FilterListener(true));
+        
+        Spinner rangeSpinner = findViewById(R.id.range_spinner);
+        rangeSpinner.setAdapter(spinnerAdapter(TIME_RANGE_NAMES));
+        rangeSpinner.setOnItemSelectedListener(new FilterListener(false));
+    }
+    
+    private ArrayAdapter<String> spinnerAdapter(String[] names) {
+        ArrayAdapter<String> spinnerAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, names);
+        spinnerAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        return spinnerAdapter;
+    }
+    
+    private void runQuery() {
+        DataType type = typeSelection == 0 ? null : TYPES[typeSelection - 1];
+        long range = TIME_RANGE_MILLIS[rangeSelection];
+        adapter.query(type, range == 0 ? 0 : System.currentTimeMillis() - range);
+    }
+    
+    /**
+     * 下拉框选中项变化时重新查询；布局完成时的首次回调选中的是当前条件，不重复查询
+     */
+    private final class FilterListener implements AdapterView.OnItemSelectedListener {
+        private final boolean type;
+        
+        FilterListener(boolean type) {
+            this.type = type;
+        }
+        
+        @Override
+        public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+            if (position == (type ? typeSelection : rangeSelection)) {
+                return;
+            }
+            if (type) {
+                typeSelection = position;
+            } else {
+                rangeSelection = position;
+            }
+            runQuery();
+        }
+        
+        @Override
+        public void onNothingSelected(AdapterView<?> parent) {
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,155 @@
+package com.example.permissionapp;
+
+import android.location.Location;
+import android.location.LocationManager;
+import com.example.permissionapp.storage.DataRecord;
+
+/**
+ * 大致位置采样器
+ * 记住上次写入的两位小数位置格，位置格没有变化时不写记录；
+ * 同一位置格持续不变时按心跳间隔写一条带 unchanged_since 的心跳记录。
+ * 只读取各提供者已缓存的定位结果，不主动请求定位，不会唤醒 GPS 或网络定位
+ */
+public class LocationSampler {
+    
+    // 按耗电从低到高排列，取其中最新的缓存定位
+    private static final String[] PROVIDERS = {
+            LocationManager.PASSIVE_PROVIDER,
+            LocationManager.NETWORK_PROVIDER,
+            LocationManager.GPS_PROVIDER
+    };
+    
+    /**
+     * 一次采样的结果
+     */
+    public enum Outcome {
+        // 位置格变化（或第一次采样），已填充记录
+        WRITTEN,
+        // 位置格未变但已到心跳间隔，已填充心跳记录
+        HEARTBEAT,
+        // 位置格未变，不写记录
+        SUPPRESSED,
+        // 所有提供者都没有缓存的定位
+        NO_FIX
+    }
+    
+    private static LocationSampler instance;
+    
+    private final long heartbeatIntervalMillis;
+    
+    private boolean hasCell = false;
+    private double lastLatitude;
+    private double lastLongitude;
+    private long cellSinceMillis;
+    private long lastWrittenMillis;
+    
+    private long written = 0;
+    private long heartbeats = 0;
+    private long suppressed = 0;
+    private long noFix = 0;
+    
+    /**
+     * @param heartbeatIntervalMillis 位置不变时两条记录之间的最长间隔
+     */
+    public LocationSampler(long heartbeatIntervalMillis) {
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+    }
+    
+    /**
+     * 进程内共享的实例，服务停止后仍然记得上次写入的位置格
+     */
+    public static synchronized LocationSampler getInstance(long heartbeatIntervalMillis) {
+        if (instance == null) {
+            instance = new LocationSampler(heartbeatIntervalMillis);
+        }
+        return instance;
+    }
+    
+    /**
+     * 清除数据后调用，下一次采样重新写入完整记录
+     */
+    public static synchronized void resetShared() {
+        if (instance != null) {
+            instance.reset();
+        }
+    }
+    
+    /**
+     * 采样一次，需要写入时把记录填充到 into
+     *
+     * @throws SecurityException 没有位置权限
+     */
+    public synchronized Outcome sample(LocationManager locationManager, long nowMillis, DataRecord into) {
+        Location location = lastKnownLocation(locationManager);
+        if (location == null) {
+            noFix++;
+            return Outcome.NO_FIX;
+        }
+        
+        // 只记录大致位置（精确到城市级别），不精确追踪
+        double latitude = Math.round(location.getLatitude() * 100.0) / 100.0;
+        double longitude = Math.round(location.getLongitude() * 100.0) / 100.0;
+        
+        if (!hasCell || latitude != lastLatitude || longitude != lastLongitude) {
+            hasCell = true;
+            lastLatitude = latitude;
+            lastLongitude = longitude;
+            cellSinceMillis = nowMillis;
+            lastWrittenMillis = nowMillis;
+            written++;
+            into.setLocation(nowMillis, latitude, longitude, location.getAccuracy());
+            return Outcome.WRITTEN;
+        }
+        
+        if (nowMillis - lastWrittenMillis >= heartbeatIntervalMillis) {
+            lastWrittenMillis = nowMillis;
+            heartbeats++;
+            into.setLocation(nowMillis, latitude, longitude, location.getAccuracy())
+                    .setUnchangedSince(cellSinceMillis);
+            return Outcome.HEARTBEAT;
+        }
+        
+        suppressed++;
+        return Outcome.SUPPRESSED;
+    }
+    
+    public synchronized void reset() {
+        hasCell = false;
+    }
+    
+    public synchronized long getWrittenCount() {
+        return written;
+    }
+    
+    public synchronized long getHeartbeatCount() {
+        return heartbeats;
+    }
+    
+    public synchronized long getSuppressedCount() {
+        return suppressed;
+    }
+    
+    public synchronized long getNoFixCount() {
+        return noFix;
+    }
+    
+    /**
+     * 依次询问各提供者的缓存定位，取时间最新的一个
+     */
+    private static Location lastKnownLocation(LocationManager locationManager) {
+        Location best = null;
+        for (String provider : PROVIDERS) {
+            Location location;
+            try {
+                location = locationManager.getLastKnownLocation(provider);
+            } catch (IllegalArgumentException e) {
+                // 设备上不存在该提供者
+                continue;
+            }
+            if (location != null && (best == null || location.getTime() > best.getTime())) {
+                best = location;
+            }
+        }
+        return best;
+    }
+} 
\ No newline at end of file
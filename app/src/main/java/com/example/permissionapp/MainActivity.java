@@ -1,55 +1,135 @@
 package com.example.permissionapp;
 
-import android.Manifest;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
 import android.provider.Settings;
+import android.util.Log;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
-import androidx.core.content.ContextCompat;
-import java.util.HashMap;
-import java.util.Map;
+import com.example.permissionapp.storage.DataType;
+import com.example.permissionapp.storage.Rollup;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
     
+    private static final String TAG = "MainActivity";
+    
     // 权限常量
     private static final int PERMISSION_REQUEST_CODE = 100;
-    private static final String[] PERMISSIONS = {
-        Manifest.permission.READ_CONTACTS,
-        Manifest.permission.ACCESS_FINE_LOCATION,
-        Manifest.permission.CAMERA,
-        Manifest.permission.READ_EXTERNAL_STORAGE,
-        Manifest.permission.RECORD_AUDIO
-    };
     
-    // 权限说明
-    private static final Map<String, String> PERMISSION_DESCRIPTIONS = new HashMap<String, String>() {{
-        put(Manifest.permission.READ_CONTACTS, "通讯录权限 - 用于同步联系人到云端");
-        put(Manifest.permission.ACCESS_FINE_LOCATION, "位置权限 - 用于提供基于位置的服务");
-        put(Manifest.permission.CAMERA, "相机权限 - 用于扫描二维码和拍照");
-        put(Manifest.permission.READ_EXTERNAL_STORAGE, "存储权限 - 用于保存应用数据");
-        put(Manifest.permission.RECORD_AUDIO, "麦克风权限 - 用于语音通话和语音输入");
-    }};
+    // 权限状态，与数据收集服务共享
+    private PermissionStateRegistry permissionRegistry;
+    private final PermissionStateRegistry.Listener permissionListener = this::updatePermissionButtons;
+    
+    // 按 AppPermission 序号缓存的权限按钮
+    private final Button[] permissionButtons = new Button[AppPermission.values().length];
+    
+    // 启动计时；首帧只做可见内容，点击事件等在首帧之后的空闲时间完成
+    private StartupTrace startupTrace;
+    private boolean deferredInitPending = true;
+    private final MessageQueue.IdleHandler deferredInit = () -> {
+        runDeferredInit();
+        return false;
+    };
     
-    // 权限状态
-    private Map<String, Boolean> permissionStatus = new HashMap<>();
+    // 打开存储和读取汇总在后台线程上完成，第一次查看数据时创建
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private HandlerThread loaderThread;
+    private Handler loaderHandler;
+    private boolean collectedDataLoading = false;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        startupTrace = new StartupTrace();
         super.onCreate(savedInstanceState);
+        
+        startupTrace.begin(StartupTrace.Phase.CONTENT_VIEW);
         setContentView(R.layout.activity_main);
+        startupTrace.end();
         
+        startupTrace.begin(StartupTrace.Phase.BIND_VIEWS);
         initializeViews();
-        checkCurrentPermissions();
+        startupTrace.end();
+        
+        startupTrace.begin(StartupTrace.Phase.PERMISSION_STATE);
+        permissionRegistry = PermissionStateRegistry.getInstance(this);
+        permissionRegistry.addListener(permissionListener);
+        updatePermissionButtons(~0, permissionRegistry.getSnapshot());
+        startupTrace.end();
+        
+        // 首帧绘制前记录时间，并把其余初始化排到绘制之后的空闲时间
+        View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                startupTrace.markFirstFrame();
+                Looper.myQueue().addIdleHandler(deferredInit);
+                return true;
+            }
+        });
+    }
+    
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // 用户可能在系统设置中修改了权限，只有发生变化的按钮会刷新
+        // 启动时的这次刷新放到延迟初始化中，onCreate 已经读取过一次权限状态
+        if (!deferredInitPending) {
+            permissionRegistry.refresh(this);
+        }
     }
     
+    @Override
+    protected void onDestroy() {
+        if (deferredInitPending) {
+            Looper.myQueue().removeIdleHandler(deferredInit);
+        }
+        permissionRegistry.removeListener(permissionListener);
+        if (loaderThread != null) {
+            loaderThread.quitSafely();
+        }
+        mainHandler.removeCallbacksAndMessages(null);
+        super.onDestroy();
+    }
+    
+    /**
+     * 首帧之后执行：绑定点击事件、刷新权限状态、写入启动指标
+     */
+    private void runDeferredInit() {
+        if (!deferredInitPending) {
+            return;
+        }
+        deferredInitPending = false;
+        startupTrace.begin(StartupTrace.Phase.DEFERRED_INIT);
+        setupPermissionButtonListeners();
+        setupBottomButtons();
+        permissionRegistry.refresh(this);
+        startupTrace.end();
+        startupTrace.report();
+    }
+    
+    /**
+     * 首帧需要的视图：标题、说明和权限按钮的状态
+     */
     private void initializeViews() {
         // 设置标题
         TextView titleText = findViewById(R.id.title_text);
@@ -59,33 +139,26 @@ public class MainActivity extends AppCompatActivity {
         TextView infoText = findViewById(R.id.info_text);
         infoText.setText("请仔细阅读每个权限的用途说明，然后选择是否授权。\n您可以随时在设置中撤销这些权限。");
         
-        // 权限按钮
+        // 权限按钮，点击事件在延迟初始化中绑定
         setupPermissionButtons();
-        
-        // 底部按钮
-        setupBottomButtons();
     }
     
     private void setupPermissionButtons() {
-        // 通讯录权限
-        Button contactsButton = findViewById(R.id.contacts_button);
-        contactsButton.setOnClickListener(v -> requestPermission(Manifest.permission.READ_CONTACTS, "通讯录权限"));
-        
-        // 位置权限
-        Button locationButton = findViewById(R.id.location_button);
-        locationButton.setOnClickListener(v -> requestPermission(Manifest.permission.ACCESS_FINE_LOCATION, "位置权限"));
-        
-        // 相机权限
-        Button cameraButton = findViewById(R.id.camera_button);
-        cameraButton.setOnClickListener(v -> requestPermission(Manifest.permission.CAMERA, "相机权限"));
-        
-        // 存储权限
-        Button storageButton = findViewById(R.id.storage_button);
-        storageButton.setOnClickListener(v -> requestPermission(Manifest.permission.READ_EXTERNAL_STORAGE, "存储权限"));
-        
-        // 麦克风权限
-        Button microphoneButton = findViewById(R.id.microphone_button);
-        microphoneButton.setOnClickListener(v -> requestPermission(Manifest.permission.RECORD_AUDIO, "麦克风权限"));
+        bindPermissionButton(AppPermission.CONTACTS, R.id.contacts_button);
+        bindPermissionButton(AppPermission.LOCATION, R.id.location_button);
+        bindPermissionButton(AppPermission.CAMERA, R.id.camera_button);
+        bindPermissionButton(AppPermission.STORAGE, R.id.storage_button);
+        bindPermissionButton(AppPermission.MICROPHONE, R.id.microphone_button);
+    }
+    
+    private void bindPermissionButton(AppPermission permission, int buttonId) {
+        permissionButtons[permission.ordinal()] = findViewById(buttonId);
+    }
+    
+    private void setupPermissionButtonListeners() {
+        for (AppPermission permission : AppPermission.values()) {
+            permissionButtons[permission.ordinal()].setOnClickListener(v -> requestPermission(permission));
+        }
     }
     
     private void setupBottomButtons() {
@@ -106,54 +179,36 @@ public class MainActivity extends AppCompatActivity {
         viewDataButton.setOnClickListener(v -> showCollectedData());
     }
     
-    private void checkCurrentPermissions() {
-        for (String permission : PERMISSIONS) {
-            boolean granted = ContextCompat.checkSelfPermission(this, permission) == PackageManager.PERMISSION_GRANTED;
-            permissionStatus.put(permission, granted);
-            updatePermissionButton(permission, granted);
-        }
-    }
-    
-    private void updatePermissionButton(String permission, boolean granted) {
-        int buttonId = getButtonIdForPermission(permission);
-        if (buttonId != 0) {
-            Button button = findViewById(buttonId);
+    /**
+     * 只刷新 changedMask 中的权限按钮
+     */
+    private void updatePermissionButtons(int changedMask, PermissionStateRegistry.Snapshot snapshot) {
+        for (AppPermission permission : AppPermission.values()) {
+            if ((changedMask & permission.mask()) == 0) {
+                continue;
+            }
+            boolean granted = snapshot.isGranted(permission);
+            Button button = permissionButtons[permission.ordinal()];
             button.setText(granted ? "已授权" : "未授权");
             button.setBackgroundColor(granted ? getResources().getColor(android.R.color.holo_green_light) : 
                                               getResources().getColor(android.R.color.holo_red_light));
         }
     }
     
-    private int getButtonIdForPermission(String permission) {
-        switch (permission) {
-            case Manifest.permission.READ_CONTACTS:
-                return R.id.contacts_button;
-            case Manifest.permission.ACCESS_FINE_LOCATION:
-                return R.id.location_button;
-            case Manifest.permission.CAMERA:
-                return R.id.camera_button;
-            case Manifest.permission.READ_EXTERNAL_STORAGE:
-                return R.id.storage_button;
-            case Manifest.permission.RECORD_AUDIO:
-                return R.id.microphone_button;
-            default:
-                return 0;
-        }
-    }
-    
-    private void requestPermission(String permission, String permissionName) {
+    private void requestPermission(AppPermission permission) {
         // 检查是否已有权限
-        if (ContextCompat.checkSelfPermission(this, permission) == PackageManager.PERMISSION_GRANTED) {
-            showPermissionDialog(permission, permissionName, "您已经授权了" + permissionName + "。\n\n您可以在设置中撤销此权限。");
+        if (permissionRegistry.isGranted(permission)) {
+            showPermissionDialog(permission.displayName, "您已经授权了" + permission.displayName + "。\n\n您可以在设置中撤销此权限。");
             return;
         }
         
         // 显示权限说明对话框
-        showPermissionExplanationDialog(permission, permissionName);
+        showPermissionExplanationDialog(permission);
     }
     
-    private void showPermissionExplanationDialog(String permission, String permissionName) {
-        String description = PERMISSION_DESCRIPTIONS.get(permission);
+    private void showPermissionExplanationDialog(AppPermission permission) {
+        String permissionName = permission.displayName;
+        String description = permission.description;
         
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle(permissionName + "说明")
@@ -165,10 +220,10 @@ public class MainActivity extends AppCompatActivity {
                           "是否授权此权限？")
                .setPositiveButton("授权", (dialog, which) -> {
                    // 请求系统权限
-                   ActivityCompat.requestPermissions(this, new String[]{permission}, PERMISSION_REQUEST_CODE);
+                   ActivityCompat.requestPermissions(this, new String[]{permission.permission}, PERMISSION_REQUEST_CODE);
                })
                .setNegativeButton("拒绝", (dialog, which) -> {
-                   showPermissionDialog(permission, permissionName, "您已拒绝" + permissionName + "。\n\n相关功能将无法使用。\n您可以稍后在设置中重新授权。");
+                   showPermissionDialog(permissionName, "您已拒绝" + permissionName + "。\n\n相关功能将无法使用。\n您可以稍后在设置中重新授权。");
                })
                .setNeutralButton("稍后询问", (dialog, which) -> {
                    Toast.makeText(this, "我们稍后会再次询问此权限", Toast.LENGTH_SHORT).show();
@@ -176,7 +231,7 @@ public class MainActivity extends AppCompatActivity {
                .show();
     }
     
-    private void showPermissionDialog(String permission, String permissionName, String message) {
+    private void showPermissionDialog(String permissionName, String message) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle(permissionName)
                .setMessage(message)
@@ -196,7 +251,7 @@ public class MainActivity extends AppCompatActivity {
                           "• 您的麦克风\n\n" +
                           "您可以随时在设置中撤销这些权限。")
                .setPositiveButton("确定", (dialog, which) -> {
-                   ActivityCompat.requestPermissions(this, PERMISSIONS, PERMISSION_REQUEST_CODE);
+                   ActivityCompat.requestPermissions(this, AppPermission.allPermissions(), PERMISSION_REQUEST_CODE);
                })
                .setNegativeButton("取消", null)
                .show();
@@ -227,22 +282,59 @@ public class MainActivity extends AppCompatActivity {
         startActivity(intent);
     }
     
+    /**
+     * 第一次读取汇总时要打开存储（恢复、解密、整理文件），调试版本还要读取指标摘要文件，
+     * 都在后台线程上读取，读完后显示对话框
+     */
     private void showCollectedData() {
+        if (collectedDataLoading) {
+            return;
+        }
+        collectedDataLoading = true;
+        boolean debuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        if (loaderThread == null) {
+            loaderThread = new HandlerThread("MainActivity", Process.THREAD_PRIORITY_BACKGROUND);
+            loaderThread.start();
+            loaderHandler = new Handler(loaderThread.getLooper());
+        }
+        loaderHandler.post(() -> {
+            StringBuilder summary = new StringBuilder();
+            appendDataSummary(summary);
+            // 调试版本附带性能指标
+            StringBuilder metrics = debuggable ? new StringBuilder() : null;
+            if (metrics != null) {
+                AppMetrics.appendDebugInfo(getApplicationContext(), metrics);
+            }
+            mainHandler.post(() -> {
+                collectedDataLoading = false;
+                if (!isFinishing() && !isDestroyed()) {
+                    showCollectedData(summary, metrics);
+                }
+            });
+        });
+    }
+    
+    /**
+     * @param metrics 调试版本的性能指标，其他版本为 null
+     */
+    private void showCollectedData(CharSequence summary, CharSequence metrics) {
         StringBuilder data = new StringBuilder();
         data.append("=== 收集的数据 ===\n\n");
         
-        for (String permission : PERMISSIONS) {
-            String permissionName = getPermissionDisplayName(permission);
-            boolean granted = permissionStatus.getOrDefault(permission, false);
-            data.append(permissionName).append(": ").append(granted ? "已授权" : "未授权").append("\n");
+        PermissionStateRegistry.Snapshot snapshot = permissionRegistry.getSnapshot();
+        for (AppPermission permission : AppPermission.values()) {
+            boolean granted = snapshot.isGranted(permission);
+            data.append(permission.displayName).append(": ").append(granted ? "已授权" : "未授权").append("\n");
             
             if (granted) {
-                data.append("  用途: ").append(PERMISSION_DESCRIPTIONS.get(permission)).append("\n");
+                data.append("  用途: ").append(permission.description).append("\n");
                 data.append("  数据保留: 根据用途而定\n");
             }
             data.append("\n");
         }
         
+        data.append(summary);
+        
         data.append("=== 隐私保护 ===\n\n");
         data.append("• 所有数据都经过加密存储\n");
         data.append("• 不会分享给第三方\n");
@@ -250,28 +342,67 @@ public class MainActivity extends AppCompatActivity {
         data.append("• 数据保留时间有限\n");
         data.append("• 符合GDPR等隐私法规\n");
         
+        if (metrics != null) {
+            data.append("\n=== 调试: 性能指标 ===\n\n");
+            data.append(metrics);
+        }
+        
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         builder.setTitle("收集的数据")
                .setMessage(data.toString())
                .setPositiveButton("确定", null)
+               .setNeutralButton("浏览记录", (dialog, which) -> {
+                   // 逐条记录在单独的页面分页显示
+                   startActivity(new Intent(this, DataViewActivity.class));
+               })
                .show();
     }
     
-    private String getPermissionDisplayName(String permission) {
-        switch (permission) {
-            case Manifest.permission.READ_CONTACTS:
-                return "通讯录权限";
-            case Manifest.permission.ACCESS_FINE_LOCATION:
-                return "位置权限";
-            case Manifest.permission.CAMERA:
-                return "相机权限";
-            case Manifest.permission.READ_EXTERNAL_STORAGE:
-                return "存储权限";
-            case Manifest.permission.RECORD_AUDIO:
-                return "麦克风权限";
-            default:
-                return permission;
+    /**
+     * 已收集数据的汇总，来自增量维护的汇总统计，不读取历史记录；在后台线程上调用
+     */
+    private void appendDataSummary(StringBuilder data) {
+        Rollup rollup;
+        try {
+            rollup = DataCollectionService.getRollup(this);
+        } catch (IOException e) {
+            Log.e(TAG, "读取数据摘要失败: " + e.getMessage());
+            data.append("=== 数据摘要 ===\n\n读取数据摘要失败: ").append(e.getMessage()).append("\n\n");
+            return;
+        }
+        data.append("=== 数据摘要 ===\n\n");
+        if (rollup.getTotalCount() == 0) {
+            data.append("暂无收集的数据\n\n");
+            return;
         }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.getDefault());
+        for (DataType type : DataType.values()) {
+            long count = rollup.getCount(type);
+            if (count == 0) {
+                continue;
+            }
+            AppPermission permission = AppPermission.fromPermission(type.permission);
+            data.append(permission != null ? permission.displayName : type.jsonName)
+                .append(": ").append(count).append(" 条记录\n");
+            data.append("  时间: ").append(format.format(new Date(rollup.getFirstTimestamp(type))))
+                .append(" 至 ").append(format.format(new Date(rollup.getLastTimestamp(type)))).append("\n");
+            switch (type) {
+                case CONTACT_COUNT:
+                    data.append("  联系人数量: 最少 ").append(rollup.getContactMin())
+                        .append(", 最多 ").append(rollup.getContactMax())
+                        .append(", 最新 ").append(rollup.getContactLast()).append("\n");
+                    break;
+                case APPROXIMATE_LOCATION:
+                    data.append("  不同位置（约 1 公里）: ").append(rollup.getDistinctLocationCells())
+                        .append(rollup.isLocationCellsTruncated() ? "+" : "").append(" 处\n");
+                    break;
+                case APP_STORAGE_INFO:
+                    data.append(String.format(Locale.US, "  应用数据: 最新 %.1f MB, 变化 %+.1f MB\n",
+                            rollup.getStorageLast() / (1024.0 * 1024), rollup.getStorageGrowth() / (1024.0 * 1024)));
+                    break;
+            }
+        }
+        data.append("\n");
     }
     
     @Override
@@ -279,19 +410,29 @@ public class MainActivity extends AppCompatActivity {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         
         if (requestCode == PERMISSION_REQUEST_CODE) {
+            // 按钮由监听刷新
+            permissionRegistry.update(permissions, grantResults);
+            
+            String[] granted = new String[permissions.length];
+            int grantedCount = 0;
             for (int i = 0; i < permissions.length; i++) {
-                String permission = permissions[i];
-                boolean granted = grantResults[i] == PackageManager.PERMISSION_GRANTED;
-                permissionStatus.put(permission, granted);
-                updatePermissionButton(permission, granted);
-                
-                String permissionName = getPermissionDisplayName(permission);
-                if (granted) {
+                AppPermission permission = AppPermission.fromPermission(permissions[i]);
+                if (permission == null) {
+                    continue;
+                }
+                String permissionName = permission.displayName;
+                if (grantResults[i] == PackageManager.PERMISSION_GRANTED) {
+                    granted[grantedCount++] = permissions[i];
                     Toast.makeText(this, permissionName + "已授权", Toast.LENGTH_SHORT).show();
                 } else {
                     Toast.makeText(this, permissionName + "被拒绝", Toast.LENGTH_SHORT).show();
                 }
             }
+            
+            // "全部授权"时所有已授权的权限只启动一次服务，在同一轮中收集并写入
+            if (grantedCount > 0) {
+                DataCollectionService.startBatch(this, Arrays.copyOf(granted, grantedCount));
+            }
         }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,136 @@
+package com.example.permissionapp;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 进程内共享的权限状态
+ * 以 AppPermission 序号为位的位图保存授权状态，界面和服务读取同一份状态；
+ * 只在 refresh（界面 onResume）和权限请求结果回调时更新，变化时只通知发生变化的位
+ */
+public class PermissionStateRegistry {
+    
+    /**
+     * 权限状态变化监听，在调用 refresh/update 的线程上回调
+     */
+    public interface Listener {
+        /**
+         * @param changedMask 状态发生变化的权限位
+         */
+        void onPermissionsChanged(int changedMask, Snapshot snapshot);
+    }
+    
+    /**
+     * 某一时刻的权限状态，不可变
+     */
+    public static final class Snapshot {
+        public final int grantedMask;
+        
+        Snapshot(int grantedMask) {
+            this.grantedMask = grantedMask;
+        }
+        
+        public boolean isGranted(AppPermission permission) {
+            return (grantedMask & permission.mask()) != 0;
+        }
+        
+        public int grantedCount() {
+            return Integer.bitCount(grantedMask);
+        }
+    }
+    
+    private static PermissionStateRegistry instance;
+    
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot snapshot = new Snapshot(0);
+    
+    private PermissionStateRegistry() {
+    }
+    
+    /**
+     * 进程内共享的实例，第一次获取时检查一次全部权限
+     */
+    public static synchronized PermissionStateRegistry getInstance(Context context) {
+        if (instance == null) {
+            instance = new PermissionStateRegistry();
+            instance.refresh(context);
+        }
+        return instance;
+    }
+    
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    public boolean isGranted(AppPermission permission) {
+        return snapshot.isGranted(permission);
+    }
+    
+    /**
+     * 重新检查全部权限，用户可能在系统设置中修改过
+     *
+     * @return 状态发生变化的权限位
+     */
+    public int refresh(Context context) {
+        int granted = 0;
+        for (int i = 0; i < AppPermission.count(); i++) {
+            AppPermission permission = AppPermission.fromOrdinal(i);
+            if (context.checkSelfPermission(permission.permission) == PackageManager.PERMISSION_GRANTED) {
+                granted |= permission.mask();
+            }
+        }
+        return publish(granted, ~0);
+    }
+    
+    /**
+     * 按权限请求结果更新，结果中没有的权限保持原状态
+     *
+     * @return 状态发生变化的权限位
+     */
+    public int update(String[] permissions, int[] grantResults) {
+        int granted = 0;
+        int touched = 0;
+        for (int i = 0; i < permissions.length && i < grantResults.length; i++) {
+            AppPermission permission = AppPermission.fromPermission(permissions[i]);
+            if (permission == null) {
+                continue;
+            }
+            touched |= permission.mask();
+            if (grantResults[i] == PackageManager.PERMISSION_GRANTED) {
+                granted |= permission.mask();
+            }
+        }
+        return publish(granted, touched);
+    }
+    
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * 用 granted 中 touched 范围内的位替换当前状态，有变化时通知监听
+     */
+    private int publish(int granted, int touched) {
+        Snapshot next;
+        int changed;
+        synchronized (this) {
+            int current = snapshot.grantedMask;
+            int mask = (current & ~touched) | (granted & touched);
+            changed = current ^ mask;
+            if (changed == 0) {
+                return 0;
+            }
+            next = new Snapshot(mask);
+            snapshot = next;
+        }
+        for (Listener listener : listeners) {
+            listener.onPermissionsChanged(changed, next);
+        }
+        return changed;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,265 @@
+package com.example.permissionapp;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import androidx.recyclerview.widget.RecyclerView;
+import com.example.permissionapp.storage.DataType;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 数据浏览列表的适配器
+ * 只缓存最近用到的几页，其余的行在绑定时按页向 RecordPager 请求，读到之前显示占位，记录再多内存占用也不变。
+ * 切换过滤条件或刷新时，旧内容一直显示到同一页的新内容读到，新旧内容经 DiffUtil 比较后只更新变化的行
+ */
+final class RecordListAdapter extends RecyclerView.Adapter<RecordListAdapter.Holder> implements RecordPager.Listener {
+    
+    private static final int PAGE_SIZE = RecordPager.PAGE_SIZE;
+    private static final int MAX_CACHED_PAGES = 12;
+    // 绑定到离页边这么近的行时预读相邻的一页
+    private static final int PREFETCH_DISTANCE = 10;
+    
+    /**
+     * 列表状态变化，在主线程上调用
+     */
+    interface StateListener {
+        /**
+         * @param opening 新查询还没有打开
+         */
+        void onStateChanged(int count, boolean opening);
+        
+        void onLoadFailed(IOException e);
+    }
+    
+    private final RecordPager pager;
+    private final StateListener stateListener;
+    // 按访问顺序淘汰最久没有用到的页
+    private final Map<Integer, RecordRow[]> pages = new LinkedHashMap<Integer, RecordRow[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, RecordRow[]> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    // 上一次查询的页，同一页的新内容读到之前继续显示
+    private final Map<Integer, RecordRow[]> previousPages = new HashMap<>();
+    private final Set<Integer> pending = new HashSet<>();
+    private int count = 0;
+    private boolean opening = false;
+    private int lastBound = 0;
+    
+    RecordListAdapter(Context context, StateListener stateListener) {
+        this.pager = new RecordPager(context, this);
+        this.stateListener = stateListener;
+    }
+    
+    /**
+     * 按新的过滤条件查询，当前内容保留到新内容读到
+     *
+     * @param type       null 为全部类型
+     * @param fromMillis 0 为全部时间
+     */
+    void query(DataType type, long fromMillis) {
+        previousPages.putAll(pages);
+        pages.clear();
+        pending.clear();
+        opening = true;
+        pager.open(type, fromMillis);
+        notifyState();
+    }
+    
+    /**
+     * 关闭后台读取，在 Activity 销毁时调用
+     */
+    void close() {
+        pager.close();
+    }
+    
+    @Override
+    public Holder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_record, parent, false);
+        return new Holder(view);
+    }
+    
+    @Override
+    public void onBindViewHolder(Holder holder, int position) {
+        lastBound = position;
+        holder.bind(rowAt(position));
+        if (opening) {
+            return;
+        }
+        int page = position / PAGE_SIZE;
+        int offset = position % PAGE_SIZE;
+        ensurePage(page);
+        if (offset >= PAGE_SIZE - PREFETCH_DISTANCE && (page + 1) * PAGE_SIZE < count) {
+            ensurePage(page + 1);
+        } else if (offset < PREFETCH_DISTANCE && page > 0) {
+            ensurePage(page - 1);
+        }
+    }
+    
+    @Override
+    public int getItemCount() {
+        return count;
+    }
+    
+    // ---- RecordPager.Listener ----
+    
+    @Override
+    public void onQueryOpened(int count) {
+        opening = false;
+        setCount(count);
+        // 当前位置附近的旧内容留到新页读到再比较，其余的旧内容改为占位，滚动到时再读
+        int anchor = Math.max(0, Math.min(lastBound, count - 1)) / PAGE_SIZE;
+        Iterator<Map.Entry<Integer, RecordRow[]>> it = previousPages.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, RecordRow[]> entry = it.next();
+            int page = entry.getKey();
+            if (Math.abs(page - anchor) > 1) {
+                it.remove();
+                notifyRowsChanged(page, entry.getValue().length);
+            }
+        }
+        for (int page = Math.max(0, anchor - 1); page <= anchor + 1 && page * PAGE_SIZE < count; page++) {
+            ensurePage(page);
+        }
+        notifyState();
+    }
+    
+    @Override
+    public void onPageLoaded(int page, RecordRow[] rows, DiffUtil.DiffResult diff) {
+        pending.remove(page);
+        previousPages.remove(page);
+        pages.put(page, rows);
+        int start = page * PAGE_SIZE;
+        if (diff != null) {
+            diff.dispatchUpdatesTo(new OffsetCallback(start));
+        } else {
+            notifyRowsChanged(page, rows.length);
+        }
+    }
+    
+    @Override
+    public void onQueryFailed(IOException e) {
+        opening = false;
+        notifyState();
+        stateListener.onLoadFailed(e);
+    }
+    
+    // ----
+    
+    private RecordRow rowAt(int position) {
+        int page = position / PAGE_SIZE;
+        RecordRow[] rows = pages.get(page);
+        if (rows == null) {
+            rows = previousPages.get(page);
+        }
+        int offset = position % PAGE_SIZE;
+        return rows != null && offset < rows.length ? rows[offset] : null;
+    }
+    
+    private void ensurePage(int page) {
+        if (pages.containsKey(page) || !pending.add(page)) {
+            return;
+        }
+        // 传入当前显示的内容，只取仍在列表范围内的行
+        RecordRow[] previous = previousPages.get(page);
+        if (previous != null) {
+            int visible = Math.max(0, Math.min(previous.length, count - page * PAGE_SIZE));
+            if (visible < previous.length) {
+                previous = Arrays.copyOf(previous, visible);
+            }
+        }
+        pager.requestPage(page, previous);
+    }
+    
+    private void setCount(int newCount) {
+        int oldCount = count;
+        count = newCount;
+        if (newCount > oldCount) {
+            notifyItemRangeInserted(oldCount, newCount - oldCount);
+        } else if (newCount < oldCount) {
+            notifyItemRangeRemoved(newCount, oldCount - newCount);
+        }
+    }
+    
+    /**
+     * 一页中仍在列表范围内的行需要重新绑定
+     */
+    private void notifyRowsChanged(int page, int rows) {
+        int start = page * PAGE_SIZE;
+        int changed = Math.min(rows, count - start);
+        if (changed > 0) {
+            notifyItemRangeChanged(start, changed);
+        }
+    }
+    
+    private void notifyState() {
+        stateListener.onStateChanged(count, opening);
+    }
+    
+    /**
+     * 把一页内的变化换算为列表中的位置
+     */
+    private final class OffsetCallback implements ListUpdateCallback {
+        private final int start;
+        
+        OffsetCallback(int start) {
+            this.start = start;
+        }
+        
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(start + position, count);
+        }
+        
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(start + position, count);
+        }
+        
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            notifyItemMoved(start + fromPosition, start + toPosition);
+        }
+        
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            notifyItemRangeChanged(start + position, count, payload);
+        }
+    }
+    
+    static final class Holder extends RecyclerView.ViewHolder {
+        private final TextView title;
+        private final TextView detail;
+        
+        Holder(View itemView) {
+            super(itemView);
+            title = itemView.findViewById(R.id.record_title);
+            detail = itemView.findViewById(R.id.record_detail);
+        }
+        
+        /**
+         * @param row null 时显示占位
+         */
+        void bind(RecordRow row) {
+            if (row == null) {
+                title.setText("加载中…");
+                detail.setText("");
+            } else {
+                title.setText(row.title);
+                detail.setText(row.detail);
+            }
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,214 @@
+package com.example.permissionapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import androidx.recyclerview.widget.DiffUtil;
+import com.example.permissionapp.storage.DataRecord;
+import com.example.permissionapp.storage.DataType;
+import com.example.permissionapp.storage.RecordQuery;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * 数据浏览页的后台分页读取
+ * 每次查询从存储最近发布的快照打开一个 RecordQuery，之后的翻页都读这个快照，浏览期间新写入的记录不会让列表错位。
+ * 列表从新到旧排列，第 p 行是查询结果中倒数第 p 条；时间范围和类型都由存储的二级索引定位，
+ * 打开查询和翻页只读取显示的记录，不扫描历史。
+ * 读取和格式化都在后台线程上，结果回到主线程交给 Listener；打开新查询或关闭之后，旧查询的结果不再回调
+ */
+final class RecordPager {
+    
+    private static final String TAG = "RecordPager";
+    
+    static final int PAGE_SIZE = 50;
+    
+    /**
+     * 当前查询的结果，在主线程上调用
+     */
+    interface Listener {
+        /** 查询已打开，count 为符合条件的记录数 */
+        void onQueryOpened(int count);
+        
+        /**
+         * 一页记录已读取
+         *
+         * @param diff 与请求时传入的旧内容比较的结果；没有旧内容或行数不同时为 null
+         */
+        void onPageLoaded(int page, RecordRow[] rows, DiffUtil.DiffResult diff);
+        
+        void onQueryFailed(IOException e);
+    }
+    
+    private final Context context;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final HandlerThread thread;
+    private final Handler handler;
+    // 最近一次查询的代号，只在主线程上读写
+    private int generation = 0;
+    
+    // 以下只在后台线程上使用
+    private Query query;
+    private final DataRecord record = new DataRecord();
+    private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+    
+    /**
+     * 一次查询和它的代号，只在后台线程上使用
+     */
+    private static final class Query {
+        final int generation;
+        final RecordQuery records;
+        final int count;
+        
+        Query(int generation, RecordQuery records) {
+            this.generation = generation;
+            this.records = records;
+            this.count = (int) Math.min(records.getCount(), Integer.MAX_VALUE);
+        }
+        
+        /** 第 row 行（从新到旧）在查询结果中的位置（从旧到新） */
+        long position(int row) {
+            return records.getCount() - 1 - row;
+        }
+    }
+    
+    RecordPager(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+        this.thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+    
+    /**
+     * 打开新查询，之前的查询在后台关闭；在主线程上调用
+     *
+     * @param type       只显示这一类型，null 为全部
+     * @param fromMillis 只显示不早于这个时间的记录，0 为全部
+     */
+    void open(DataType type, long fromMillis) {
+        int generation = ++this.generation;
+        handler.post(() -> {
+            closeQuery();
+            try {
+                query = new Query(generation, DataCollectionService.openQuery(context, type, fromMillis));
+                int count = query.count;
+                deliver(generation, () -> listener.onQueryOpened(count));
+            } catch (IOException e) {
+                Log.e(TAG, "打开记录失败: " + e.getMessage());
+                deliver(generation, () -> listener.onQueryFailed(e));
+            }
+        });
+    }
+    
+    /**
+     * 读取一页，previous 为这一页当前显示的内容，行数相同时在后台与新内容比较
+     */
+    void requestPage(int page, RecordRow[] previous) {
+        int generation = this.generation;
+        handler.post(() -> {
+            Query q = query;
+            if (q == null || q.generation != generation) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                RecordRow[] rows = readPage(q, page);
+                DiffUtil.DiffResult diff = null;
+                if (previous != null && previous.length == rows.length) {
+                    diff = DiffUtil.calculateDiff(new PageDiff(previous, rows), false);
+                }
+                AppMetrics.READ_PAGE.recordSince(start);
+                AppMetrics.RECORDS_READ.add(rows.length);
+                DiffUtil.DiffResult result = diff;
+                deliver(generation, () -> listener.onPageLoaded(page, rows, result));
+            } catch (IOException e) {
+                Log.e(TAG, "读取记录失败: " + e.getMessage());
+                deliver(generation, () -> listener.onQueryFailed(e));
+            }
+        });
+    }
+    
+    /**
+     * 关闭查询并停止后台线程，之后不再回调
+     */
+    void close() {
+        generation++;
+        handler.removeCallbacksAndMessages(null);
+        handler.post(this::closeQuery);
+        thread.quitSafely();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+    
+    /**
+     * 回到主线程，查询已被替换或关闭时丢弃
+     */
+    private void deliver(int generation, Runnable callback) {
+        mainHandler.post(() -> {
+            if (generation == this.generation) {
+                callback.run();
+            }
+        });
+    }
+    
+    private RecordRow[] readPage(Query q, int page) throws IOException {
+        int from = page * PAGE_SIZE;
+        int to = Math.min(from + PAGE_SIZE, q.count);
+        RecordRow[] rows = new RecordRow[Math.max(0, to - from)];
+        for (int i = 0; i < rows.length; i++) {
+            q.records.read(q.position(from + i), record);
+            rows[i] = RecordRow.from(record, format);
+        }
+        return rows;
+    }
+    
+    private void closeQuery() {
+        if (query == null) {
+            return;
+        }
+        try {
+            query.records.close();
+        } catch (IOException e) {
+            Log.w(TAG, "关闭查询失败: " + e.getMessage());
+        }
+        query = null;
+    }
+    
+    /**
+     * 同一页的新旧内容
+     */
+    private static final class PageDiff extends DiffUtil.Callback {
+        private final RecordRow[] oldRows;
+        private final RecordRow[] newRows;
+        
+        PageDiff(RecordRow[] oldRows, RecordRow[] newRows) {
+            this.oldRows = oldRows;
+            this.newRows = newRows;
+        }
+        
+        @Override
+        public int getOldListSize() {
+            return oldRows.length;
+        }
+        
+        @Override
+        public int getNewListSize() {
+            return newRows.length;
+        }
+        
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return oldRows[oldPosition].isSameRecord(newRows[newPosition]);
+        }
+        
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return oldRows[oldPosition].equals(newRows[newPosition]);
+        }
+    }
+} 
\ No newline at end of file
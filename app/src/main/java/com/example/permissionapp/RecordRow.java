@@ -0,0 +1,77 @@
+package com.example.permissionapp;
+
+import com.example.permissionapp.storage.DataRecord;
+import com.example.permissionapp.storage.DataType;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * 数据浏览列表中的一行，在后台线程上从记录格式化后不再修改
+ * 同一条记录由类型和时间戳识别，内容相同由显示的文字决定，供 DiffUtil 比较
+ */
+final class RecordRow {
+    
+    final DataType type;
+    final long timestampMillis;
+    final String title;
+    final String detail;
+    
+    private RecordRow(DataType type, long timestampMillis, String title, String detail) {
+        this.type = type;
+        this.timestampMillis = timestampMillis;
+        this.title = title;
+        this.detail = detail;
+    }
+    
+    /**
+     * @param format 只在调用线程上使用的时间格式
+     */
+    static RecordRow from(DataRecord record, SimpleDateFormat format) {
+        DataType type = record.getType();
+        AppPermission permission = AppPermission.fromPermission(type.permission);
+        String title = (permission != null ? permission.displayName : type.jsonName)
+                + "  " + format.format(new Date(record.getTimestampMillis()));
+        String detail;
+        switch (type) {
+            case CONTACT_COUNT:
+                detail = "联系人数量: " + record.getContactCount();
+                break;
+            case APPROXIMATE_LOCATION:
+                detail = String.format(Locale.US, "位置: %.4f, %.4f（精度 %.0f 米）",
+                        record.getLatitude(), record.getLongitude(), record.getAccuracy());
+                if (record.isHeartbeat()) {
+                    detail += "\n自 " + format.format(new Date(record.getUnchangedSinceMillis())) + " 起未变化";
+                }
+                break;
+            case APP_STORAGE_INFO:
+                detail = String.format(Locale.US, "应用数据: %.1f MB", record.getSizeBytes() / (1024.0 * 1024));
+                break;
+            default:
+                detail = "";
+                break;
+        }
+        return new RecordRow(type, record.getTimestampMillis(), title, detail);
+    }
+    
+    boolean isSameRecord(RecordRow other) {
+        return type == other.type && timestampMillis == other.timestampMillis;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RecordRow)) {
+            return false;
+        }
+        RecordRow other = (RecordRow) o;
+        return isSameRecord(other) && title.equals(other.title) && detail.equals(other.detail);
+    }
+    
+    @Override
+    public int hashCode() {
+        return 31 * (31 * type.hashCode() + Long.hashCode(timestampMillis)) + detail.hashCode();
+    }
+} 
\ No newline at end of file
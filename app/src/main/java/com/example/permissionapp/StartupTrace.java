@@ -0,0 +1,102 @@
+package com.example.permissionapp;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import java.util.Locale;
+
+/**
+ * 启动阶段的计时和 systrace 区段
+ * 各阶段在 Perfetto/systrace 中显示为 MainActivity.* 区段，同时记录耗时，
+ * 首帧之后在空闲时写入 AppMetrics，避免指标本身拖慢首帧
+ */
+final class StartupTrace {
+    
+    private static final String TAG = "StartupTrace";
+    
+    /**
+     * 启动阶段，按发生顺序排列
+     */
+    enum Phase {
+        CONTENT_VIEW("MainActivity.setContentView"),
+        BIND_VIEWS("MainActivity.bindViews"),
+        PERMISSION_STATE("MainActivity.permissionState"),
+        DEFERRED_INIT("MainActivity.deferredInit");
+        
+        final String sectionName;
+        final String metricName;
+        
+        Phase(String sectionName) {
+            this.sectionName = sectionName;
+            this.metricName = "startup." + name().toLowerCase(Locale.US);
+        }
+    }
+    
+    // 进程内第一个 Activity 才算冷启动，之后的重建不计算进程启动到首帧的时间
+    private static boolean coldStartPending = true;
+    
+    private final boolean coldStart;
+    private final long createNanos;
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private Phase current;
+    private long phaseStartNanos;
+    private long firstFrameNanos = -1;
+    private long processToFirstFrameMillis = -1;
+    
+    /**
+     * 在 onCreate 开始时创建，仅在主线程上使用
+     */
+    StartupTrace() {
+        createNanos = System.nanoTime();
+        coldStart = coldStartPending;
+        coldStartPending = false;
+    }
+    
+    void begin(Phase phase) {
+        Trace.beginSection(phase.sectionName);
+        current = phase;
+        phaseStartNanos = System.nanoTime();
+    }
+    
+    void end() {
+        phaseNanos[current.ordinal()] = System.nanoTime() - phaseStartNanos;
+        Trace.endSection();
+    }
+    
+    /**
+     * 首帧即将绘制时调用
+     */
+    void markFirstFrame() {
+        if (firstFrameNanos >= 0) {
+            return;
+        }
+        firstFrameNanos = System.nanoTime() - createNanos;
+        if (coldStart) {
+            processToFirstFrameMillis = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+        }
+    }
+    
+    /**
+     * 把各阶段耗时写入指标并输出一行日志，在空闲时调用
+     */
+    void report() {
+        for (Phase phase : Phase.values()) {
+            AppMetrics.REGISTRY.histogram(phase.metricName).record(phaseNanos[phase.ordinal()]);
+        }
+        if (firstFrameNanos >= 0) {
+            AppMetrics.REGISTRY.histogram("startup.activity_first_frame").record(firstFrameNanos);
+        }
+        if (processToFirstFrameMillis >= 0) {
+            AppMetrics.REGISTRY.histogram("startup.process_first_frame").record(processToFirstFrameMillis * 1_000_000L);
+        }
+        Log.i(TAG, String.format(Locale.US,
+                "启动耗时: setContentView %.1f ms, 绑定视图 %.1f ms, 权限状态 %.1f ms, 首帧 %.1f ms, 进程启动到首帧 %s, 延迟初始化 %.1f ms",
+                phaseNanos[Phase.CONTENT_VIEW.ordinal()] / 1_000_000.0,
+                phaseNanos[Phase.BIND_VIEWS.ordinal()] / 1_000_000.0,
+                phaseNanos[Phase.PERMISSION_STATE.ordinal()] / 1_000_000.0,
+                firstFrameNanos / 1_000_000.0,
+                processToFirstFrameMillis >= 0 ? processToFirstFrameMillis + " ms" : "(非冷启动)",
+                phaseNanos[Phase.DEFERRED_INIT.ordinal()] / 1_000_000.0));
+    }
+} 
\ No newline at end of file
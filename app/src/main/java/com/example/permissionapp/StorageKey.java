@@ -0,0 +1,153 @@
+package com.example.permissionapp;
+
+import android.content.Context;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyPermanentlyInvalidatedException;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+import com.example.permissionapp.storage.ChunkCipher;
+import com.example.permissionapp.storage.RecordStore;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 记录存储的数据密钥
+ * 数据密钥是普通的 AES-256 密钥，用 Android Keystore 中不可导出的包装密钥加密后保存在应用私有目录；
+ * 进程内只解包一次并缓存。每块数据都经 Keystore 加解密会走跨进程调用，
+ * 解包后的数据密钥由 Cipher 直接使用 CPU 的 AES 指令
+ */
+final class StorageKey {
+    
+    private static final String TAG = "StorageKey";
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String WRAPPING_KEY_ALIAS = "record_store_wrapping_key";
+    private static final String WRAPPED_KEY_FILE = "record_store_key.bin";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int DATA_KEY_SIZE = 32;
+    
+    private static SecretKey cached;
+    
+    private StorageKey() {
+    }
+    
+    /**
+     * 获取数据密钥，第一次调用时解包（没有时生成）
+     * 包装密钥丢失（例如应用数据被恢复到另一台设备）、已永久失效或解包时认证失败时旧数据已无法解密，删除后重新生成；
+     * 其他读文件或 Keystore 的错误可能是暂时的，直接抛出，下次打开存储时重试
+     */
+    static synchronized SecretKey get(Context context) throws IOException {
+        if (cached != null) {
+            return cached;
+        }
+        File filesDir = context.getApplicationContext().getFilesDir();
+        File wrappedFile = new File(filesDir, WRAPPED_KEY_FILE);
+        try {
+            KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+            keyStore.load(null);
+            SecretKey wrappingKey = (SecretKey) keyStore.getKey(WRAPPING_KEY_ALIAS, null);
+            if (wrappingKey != null && wrappedFile.exists()) {
+                try {
+                    cached = unwrap(wrappingKey, wrappedFile);
+                    return cached;
+                } catch (AEADBadTagException | KeyPermanentlyInvalidatedException e) {
+                    Log.w(TAG, "数据密钥无法解密，清除已加密的记录", e);
+                }
+            }
+            if (wrappedFile.exists()) {
+                // 第一次启用加密时没有密钥文件，之前的明文记录保留，由存储改写为加密格式
+                deleteStore(filesDir);
+            }
+            if (wrappingKey == null) {
+                wrappingKey = generateWrappingKey();
+            }
+            byte[] raw = new byte[DATA_KEY_SIZE];
+            new SecureRandom().nextBytes(raw);
+            wrap(wrappingKey, raw, wrappedFile);
+            cached = new SecretKeySpec(raw, "AES");
+            return cached;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("cannot load storage key", e);
+        }
+    }
+    
+    private static SecretKey generateWrappingKey() throws GeneralSecurityException {
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(WRAPPING_KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+    
+    /**
+     * 文件内容：IV 长度、IV、密文长度、密文；IV 由 Keystore 生成
+     */
+    private static void wrap(SecretKey wrappingKey, byte[] raw, File file) throws IOException, GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, wrappingKey);
+        byte[] wrapped = cipher.doFinal(raw);
+        byte[] iv = cipher.getIV();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(fos)) {
+            out.writeByte(iv.length);
+            out.write(iv);
+            out.writeShort(wrapped.length);
+            out.write(wrapped);
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("cannot create " + file);
+        }
+    }
+    
+    private static SecretKey unwrap(SecretKey wrappingKey, File file) throws IOException, GeneralSecurityException {
+        byte[] iv;
+        byte[] wrapped;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            iv = new byte[in.readUnsignedByte()];
+            in.readFully(iv);
+            wrapped = new byte[in.readUnsignedShort()];
+            in.readFully(wrapped);
+        }
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, wrappingKey, new GCMParameterSpec(ChunkCipher.TAG_SIZE * 8, iv));
+        byte[] raw = cipher.doFinal(wrapped);
+        if (raw.length != DATA_KEY_SIZE) {
+            throw new IOException("bad data key length " + raw.length);
+        }
+        return new SecretKeySpec(raw, "AES");
+    }
+    
+    /**
+     * 没有可用的数据密钥时，之前加密的记录无法读取，整个存储目录清空后重新开始
+     */
+    private static void deleteStore(File filesDir) {
+        File[] files = new File(filesDir, RecordStore.DIRECTORY).listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                Log.w(TAG, "无法删除 " + file.getName());
+            }
+        }
+    }
+} 
\ No newline at end of file
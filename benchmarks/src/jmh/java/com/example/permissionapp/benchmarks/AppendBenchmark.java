@@ -0,0 +1,89 @@
+package com.example.permissionapp.benchmarks;
+
+import com.example.permissionapp.storage.DataRecord;
+import com.example.permissionapp.storage.JournalWriter;
+import com.example.permissionapp.storage.RecordStore;
+import com.example.permissionapp.storage.RetentionPolicy;
+import com.example.permissionapp.storage.StoreWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 追加和刷盘延迟：每次操作写入一批记录并提交一次
+ * appendAll 是服务按轮次提交的路径，appendEach 是逐条 append 后再 flush 的对照，
+ * writerSubmitAll 经写入线程提交并等待发布，提交的记录进对象池中的队列项，sync 请求每次新建一个队列项和计数器；
+ * gc 分析器的 gc.alloc.rate.norm 除以 batchSize 即每条记录的分配字节数
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AppendBenchmark {
+    
+    @Param({"1", "8", "64", "512"})
+    public int batchSize;
+    
+    @Param({"false", "true"})
+    public boolean fsync;
+    
+    private File directory;
+    private RecordStore store;
+    private StoreWriter writer;
+    private DataRecord[] batch;
+    private long sequence = 0;
+    
+    @Setup
+    public void setUp() throws IOException {
+        directory = BenchmarkFiles.createTempDirectory("append-bench");
+        // 只在显式提交时写文件；按总大小保留，避免长时间运行占满磁盘
+        JournalWriter.FlushPolicy policy = JournalWriter.FlushPolicy.sizeWindow(1024 * 1024, fsync);
+        RetentionPolicy retention = new RetentionPolicy(Long.MAX_VALUE, 32L * 1024 * 1024, Long.MAX_VALUE);
+        store = new RecordStore(directory, policy, retention);
+        writer = new StoreWriter(store, 512, null);
+        batch = new DataRecord[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            batch[i] = new DataRecord();
+        }
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException {
+        writer.close();
+        store.close();
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+    
+    @Benchmark
+    public void appendAll() throws IOException {
+        for (int i = 0; i < batchSize; i++) {
+            BenchmarkFiles.fill(batch[i], sequence++);
+        }
+        store.appendAll(batch, batchSize);
+    }
+    
+    @Benchmark
+    public void appendEach() throws IOException {
+        for (int i = 0; i < batchSize; i++) {
+            store.append(BenchmarkFiles.fill(batch[i], sequence++));
+        }
+        store.flush();
+    }
+    
+    @Benchmark
+    public long writerSubmitAll() throws IOException {
+        for (int i = 0; i < batchSize; i++) {
+            BenchmarkFiles.fill(batch[i], sequence++);
+        }
+        writer.submitAll(batch, batchSize);
+        return writer.sync();
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,138 @@
+package com.example.permissionapp.benchmarks;
+
+import com.example.permissionapp.storage.DataRecord;
+import com.example.permissionapp.storage.DataType;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试共用的临时文件和样本记录
+ */
+final class BenchmarkFiles {
+    
+    private static final DataType[] TYPES = DataType.values();
+    
+    private BenchmarkFiles() {
+    }
+    
+    static File createTempDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+    
+    /**
+     * 删除整个目录树，显式栈代替递归
+     */
+    static void deleteRecursively(File root) {
+        if (root == null) {
+            return;
+        }
+        List<File> directories = new ArrayList<>();
+        ArrayDeque<File> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            File dir = stack.pop();
+            directories.add(dir);
+            File[] files = dir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    stack.push(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        for (int i = directories.size() - 1; i >= 0; i--) {
+            directories.get(i).delete();
+        }
+    }
+    
+    /**
+     * 目录树中所有文件的总字节数
+     */
+    static long sizeOf(File root) {
+        long total = 0;
+        ArrayDeque<File> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            File[] files = stack.pop().listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    stack.push(file);
+                } else {
+                    total += file.length();
+                }
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * 生成合成目录树：每个叶目录 filesPerDirectory 个文件，目录按 fanOut 分叉
+     * 文件用 setLength 生成稀疏文件，只占元数据
+     *
+     * @return 全部文件的总大小
+     */
+    static long createTree(File root, int fileCount, int filesPerDirectory, int fanOut) throws IOException {
+        long total = 0;
+        int directories = (fileCount + filesPerDirectory - 1) / filesPerDirectory;
+        int created = 0;
+        for (int d = 0; d < directories; d++) {
+            // 把目录序号按 fanOut 进制拆成路径，形成多层目录
+            StringBuilder path = new StringBuilder();
+            int n = d;
+            do {
+                path.append('/').append("d").append(n % fanOut);
+                n /= fanOut;
+            } while (n > 0);
+            File dir = new File(root, path.toString());
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("cannot create " + dir);
+            }
+            for (int f = 0; f < filesPerDirectory && created < fileCount; f++, created++) {
+                long size = 512 + (created % 16) * 1024;
+                try (RandomAccessFile raf = new RandomAccessFile(new File(dir, "f" + f), "rw")) {
+                    raf.setLength(size);
+                }
+                total += size;
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * 按序号轮流生成三种类型的记录
+     */
+    static DataRecord fill(DataRecord record, DataType type, long sequence) {
+        long timestamp = timestampOf(sequence);
+        switch (type) {
+            case CONTACT_COUNT:
+                return record.setContactCount(timestamp, (int) (sequence % 5000));
+            case APPROXIMATE_LOCATION:
+                return record.setLocation(timestamp, 31.23 + (sequence % 100) / 100.0, 121.47, 12.5f);
+            default:
+                return record.setStorage(timestamp, 1024L * 1024 * (sequence % 512));
+        }
+    }
+    
+    /**
+     * 第 sequence 条样本记录的时间戳，每秒一条
+     */
+    static long timestampOf(long sequence) {
+        return 1_700_000_000_000L + sequence * 1000;
+    }
+    
+    static DataRecord fill(DataRecord record, long sequence) {
+        return fill(record, TYPES[(int) (sequence % TYPES.length)], sequence);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,144 @@
+package com.example.permissionapp.benchmarks;
+
+import com.example.permissionapp.storage.BlockCodec;
+import com.example.permissionapp.storage.DataRecord;
+import com.example.permissionapp.storage.JournalWriter;
+import com.example.permissionapp.storage.RecordCursor;
+import com.example.permissionapp.storage.RecordStore;
+import com.example.permissionapp.storage.RetentionPolicy;
+import com.example.permissionapp.storage.TieringPolicy;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 冷数据压缩：同一批记录分别以未压缩段和按块压缩段保存，比较完整遍历（解压吞吐）和随机读取
+ * 两个存储目录的字节数作为遍历基准的附加计数（hotBytes、coldBytes）写入结果文件，用于跟踪压缩率；
+ * 随机读取每次只需解压一块，块大小决定单次读取的代价
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColdSegmentBenchmark {
+    
+    private static final long SEGMENT_BYTES = 1024 * 1024;
+    
+    @Param({"100000"})
+    public int records;
+    
+    @Param({"4096", "16384", "65536"})
+    public int blockBytes;
+    
+    private File hotDirectory;
+    private File coldDirectory;
+    private RecordStore hot;
+    private RecordStore cold;
+    
+    @State(Scope.Thread)
+    public static class ReaderState {
+        final DataRecord record = new DataRecord();
+        long seed = 1;
+        
+        long nextRandom(long bound) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            return ((seed >>> 1) % bound);
+        }
+    }
+    
+    /**
+     * 两个存储在磁盘上占用的字节数，每轮开始时统计
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class SizeCounters {
+        public long hotBytes;
+        public long coldBytes;
+        
+        @Setup(Level.Iteration)
+        public void measure(ColdSegmentBenchmark benchmark) {
+            hotBytes = BenchmarkFiles.sizeOf(benchmark.hotDirectory);
+            coldBytes = BenchmarkFiles.sizeOf(benchmark.coldDirectory);
+        }
+    }
+    
+    @Setup
+    public void setUp() throws IOException {
+        hotDirectory = BenchmarkFiles.createTempDirectory("hot-bench");
+        coldDirectory = BenchmarkFiles.createTempDirectory("cold-bench");
+        // 样本记录的时间戳都在过去，冷却时间为 0 时除活动段外的所有段都会被压缩
+        hot = open(hotDirectory, TieringPolicy.DISABLED);
+        cold = open(coldDirectory, new TieringPolicy(0, blockBytes, BlockCodec.DEFLATE));
+        DataRecord record = new DataRecord();
+        for (int i = 0; i < records; i++) {
+            BenchmarkFiles.fill(record, i);
+            hot.append(record);
+            cold.append(record);
+        }
+        hot.flush();
+        cold.flush();
+        while (cold.compressColdSegment(System.currentTimeMillis())) {
+            // 逐段压缩
+        }
+    }
+    
+    private RecordStore open(File directory, TieringPolicy tiering) throws IOException {
+        return new RecordStore(directory, JournalWriter.FlushPolicy.sizeWindow(256 * 1024, false),
+                RetentionPolicy.UNLIMITED, tiering, SEGMENT_BYTES, Long.MAX_VALUE);
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException {
+        hot.close();
+        cold.close();
+        BenchmarkFiles.deleteRecursively(hotDirectory);
+        BenchmarkFiles.deleteRecursively(coldDirectory);
+    }
+    
+    @Benchmark
+    public long hotScan(ReaderState state, SizeCounters sizes) throws IOException {
+        return scan(hot, state);
+    }
+    
+    @Benchmark
+    public long coldScan(ReaderState state, SizeCounters sizes) throws IOException {
+        return scan(cold, state);
+    }
+    
+    @Benchmark
+    public long hotRandomRead(ReaderState state) throws IOException {
+        return randomRead(hot, state);
+    }
+    
+    @Benchmark
+    public long coldRandomRead(ReaderState state) throws IOException {
+        return randomRead(cold, state);
+    }
+    
+    private static long scan(RecordStore store, ReaderState state) throws IOException {
+        long sum = 0;
+        try (RecordCursor cursor = store.openCursor()) {
+            while (cursor.next(state.record)) {
+                sum += state.record.getTimestampMillis();
+            }
+        }
+        return sum;
+    }
+    
+    private long randomRead(RecordStore store, ReaderState state) throws IOException {
+        try (RecordCursor cursor = store.openCursor()) {
+            cursor.read(state.nextRandom(records), state.record);
+            return state.record.getTimestampMillis();
+        }
+    }
+} 
\ No newline at end of file
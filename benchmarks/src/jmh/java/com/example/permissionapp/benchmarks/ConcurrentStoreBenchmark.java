@@ -0,0 +1,120 @@
+package com.example.permissionapp.benchmarks;
+
+import com.example.permissionapp.storage.DataRecord;
+import com.example.permissionapp.storage.JournalWriter;
+import com.example.permissionapp.storage.RecordCursor;
+import com.example.permissionapp.storage.RecordStore;
+import com.example.permissionapp.storage.RetentionPolicy;
+import com.example.permissionapp.storage.StoreWriter;
+import com.example.permissionapp.storage.TieringPolicy;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 并发吞吐：多个生产者线程经 StoreWriter 提交记录，同时多个读取线程从快照打开游标读取最新的记录
+ * 只测量吞吐；快照一致性和记录不丢失、不乱序的校验见 core 的 ConcurrentStoreTest
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class ConcurrentStoreBenchmark {
+    
+    private static final int PRODUCERS = 4;
+    private static final int READERS = 4;
+    private static final int LATEST = 256;
+    // 生产者最多领先写入线程这么多条，避免队列无限增长
+    private static final long MAX_BACKLOG = 64 * 1024;
+    
+    @Param({"1", "16"})
+    public int batchSize;
+    
+    private File directory;
+    private RecordStore store;
+    private StoreWriter writer;
+    private final AtomicInteger producerIds = new AtomicInteger();
+    
+    @State(Scope.Thread)
+    public static class ProducerState {
+        int id = -1;
+        int next = 0;
+        DataRecord[] batch;
+    }
+    
+    @State(Scope.Thread)
+    public static class ReaderState {
+        final DataRecord[] latest = new DataRecord[LATEST];
+        
+        public ReaderState() {
+            for (int i = 0; i < LATEST; i++) {
+                latest[i] = new DataRecord();
+            }
+        }
+    }
+    
+    @Setup
+    public void setUp() throws IOException {
+        directory = BenchmarkFiles.createTempDirectory("concurrent-bench");
+        store = new RecordStore(directory, JournalWriter.FlushPolicy.sizeWindow(256 * 1024, false),
+                RetentionPolicy.UNLIMITED, TieringPolicy.DISABLED, 1024 * 1024, Long.MAX_VALUE);
+        writer = new StoreWriter(store, 512, null);
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException {
+        try {
+            writer.sync();
+        } finally {
+            writer.close();
+            store.close();
+            BenchmarkFiles.deleteRecursively(directory);
+        }
+    }
+    
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(PRODUCERS)
+    public void produce(ProducerState state) {
+        if (state.id < 0) {
+            state.id = producerIds.getAndIncrement();
+            state.batch = new DataRecord[batchSize];
+            for (int i = 0; i < batchSize; i++) {
+                state.batch[i] = new DataRecord();
+            }
+        }
+        StoreWriter.Stats stats = writer.getStats();
+        while (stats.submitted - stats.committed - stats.failed > MAX_BACKLOG) {
+            Thread.yield();
+            stats = writer.getStats();
+        }
+        for (int i = 0; i < batchSize; i++) {
+            state.batch[i].setContactCount(state.id, state.next++);
+        }
+        writer.submitAll(state.batch, batchSize);
+    }
+    
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(READERS)
+    public long read(ReaderState state) throws IOException {
+        try (RecordCursor cursor = store.openCursor()) {
+            return cursor.readLatest(state.latest);
+        }
+    }
+} 
\ No newline at end of file
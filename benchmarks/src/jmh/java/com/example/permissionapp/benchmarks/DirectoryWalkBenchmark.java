@@ -0,0 +1,72 @@
+package com.example.permissionapp.benchmarks;
+
+import com.example.permissionapp.storage.DirectorySizer;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 合成目录树上的目录大小计算
+ * uncached 是不带缓存的完整遍历，cold 是新建 DirectorySizer 的第一次计算，
+ * warm 是目录未变化时的重复计算（只读取每个目录的 lastModified）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class DirectoryWalkBenchmark {
+    
+    private static final int FILES_PER_DIRECTORY = 100;
+    private static final int FAN_OUT = 16;
+    
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int fileCount;
+    
+    private File root;
+    private long expectedBytes;
+    private DirectorySizer warmSizer;
+    
+    @Setup
+    public void setUp() throws IOException {
+        root = BenchmarkFiles.createTempDirectory("walk-bench");
+        expectedBytes = BenchmarkFiles.createTree(root, fileCount, FILES_PER_DIRECTORY, FAN_OUT);
+        // 热目录窗口为 0：刚生成的文件不视为正在写入
+        warmSizer = new DirectorySizer(Long.MAX_VALUE, 0);
+        long measured = warmSizer.measure(root).bytes;
+        if (measured != expectedBytes) {
+            throw new IllegalStateException("measured " + measured + ", expected " + expectedBytes);
+        }
+    }
+    
+    @TearDown
+    public void tearDown() {
+        BenchmarkFiles.deleteRecursively(root);
+    }
+    
+    @Benchmark
+    public long uncached() {
+        return DirectorySizer.sizeOf(root);
+    }
+    
+    @Benchmark
+    public long cold() {
+        return new DirectorySizer(Long.MAX_VALUE, 0).measure(root).bytes;
+    }
+    
+    @Benchmark
+    public long warm() {
+        return warmSizer.measure(root).bytes;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,131 @@
+package com.example.permissionapp.benchmarks;
+
+import com.example.permissionapp.storage.BlockCodec;
+import com.example.permissionapp.storage.DataRecord;
+import com.example.permissionapp.storage.JournalWriter;
+import com.example.permissionapp.storage.RecordCursor;
+import com.example.permissionapp.storage.RecordStore;
+import com.example.permissionapp.storage.RetentionPolicy;
+import com.example.permissionapp.storage.TieringPolicy;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 加密存储的开销：同样的写入和读取分别在明文存储和加密存储上执行
+ * 两边已封存的段都改写为按块压缩格式（明文存储冷却时间为 0），读取的差别只在每块的解密。
+ * 目标：加密后批量追加、完整遍历和随机读取的耗时都不超过明文的 1.25 倍，
+ * jmh 任务结束后由 checkEncryptionOverhead 按结果文件比较，超过时构建失败
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EncryptionBenchmark {
+    
+    private static final long SEGMENT_BYTES = 1024 * 1024;
+    private static final int BATCH_SIZE = 64;
+    
+    @Param({"100000"})
+    public int records;
+    
+    @Param({"false", "true"})
+    public boolean encrypted;
+    
+    private File readDirectory;
+    private File appendDirectory;
+    private RecordStore readStore;
+    private RecordStore appendStore;
+    
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final DataRecord record = new DataRecord();
+        final DataRecord[] batch = new DataRecord[BATCH_SIZE];
+        long sequence = 0;
+        long seed = 1;
+        
+        public ThreadState() {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                batch[i] = new DataRecord();
+            }
+        }
+        
+        long nextRandom(long bound) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            return ((seed >>> 1) % bound);
+        }
+    }
+    
+    @Setup
+    public void setUp() throws IOException {
+        // 固定的测试密钥；应用中数据密钥由 Android Keystore 包装保存
+        SecretKey key = encrypted ? new SecretKeySpec(new byte[32], "AES") : null;
+        readDirectory = BenchmarkFiles.createTempDirectory("encryption-read-bench");
+        appendDirectory = BenchmarkFiles.createTempDirectory("encryption-append-bench");
+        readStore = open(readDirectory, new TieringPolicy(0, TieringPolicy.DEFAULT.blockBytes, BlockCodec.DEFLATE),
+                key, RetentionPolicy.UNLIMITED);
+        DataRecord record = new DataRecord();
+        for (int i = 0; i < records; i++) {
+            readStore.append(BenchmarkFiles.fill(record, i));
+        }
+        readStore.flush();
+        while (readStore.compressColdSegment(System.currentTimeMillis())) {
+            // 逐段改写
+        }
+        
+        // 按总大小保留，避免长时间运行占满磁盘
+        appendStore = open(appendDirectory, TieringPolicy.DEFAULT, key,
+                new RetentionPolicy(Long.MAX_VALUE, 32L * 1024 * 1024, Long.MAX_VALUE));
+    }
+    
+    private static RecordStore open(File directory, TieringPolicy tiering, SecretKey key,
+                                    RetentionPolicy retention) throws IOException {
+        return new RecordStore(directory, JournalWriter.FlushPolicy.sizeWindow(256 * 1024, false),
+                retention, tiering, key, SEGMENT_BYTES, Long.MAX_VALUE);
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException {
+        readStore.close();
+        appendStore.close();
+        BenchmarkFiles.deleteRecursively(readDirectory);
+        BenchmarkFiles.deleteRecursively(appendDirectory);
+    }
+    
+    @Benchmark
+    public void appendBatch(ThreadState state) throws IOException {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            BenchmarkFiles.fill(state.batch[i], state.sequence++);
+        }
+        appendStore.appendAll(state.batch, BATCH_SIZE);
+    }
+    
+    @Benchmark
+    public long scan(ThreadState state) throws IOException {
+        long sum = 0;
+        try (RecordCursor cursor = readStore.openCursor()) {
+            while (cursor.next(state.record)) {
+                sum += state.record.getTimestampMillis();
+            }
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public long randomRead(ThreadState state) throws IOException {
+        try (RecordCursor cursor = readStore.openCursor()) {
+            cursor.read(state.nextRandom(records), state.record);
+            return state.record.getTimestampMillis();
+        }
+    }
+} 
\ No newline at end of file
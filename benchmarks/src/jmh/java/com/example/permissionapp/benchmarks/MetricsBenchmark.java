@@ -0,0 +1,63 @@
+package com.example.permissionapp.benchmarks;
+
+import com.example.permissionapp.metrics.LatencyHistogram;
+import com.example.permissionapp.metrics.MetricsRegistry;
+import com.example.permissionapp.metrics.MetricsSnapshot;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * 指标记录的开销：4 个线程同时写同一个计数器和直方图
+ * 记录路径应当不分配内存，gc.alloc.rate.norm 应接近 0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+public class MetricsBenchmark {
+    
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private LongAdder counter;
+    private LatencyHistogram histogram;
+    
+    @State(Scope.Thread)
+    public static class SampleState {
+        long value = 1;
+        
+        long next() {
+            // 覆盖从微秒到秒的多个桶
+            value = value * 6364136223846793005L + 1442695040888963407L;
+            return (value >>> 1) % 1_000_000_000L;
+        }
+    }
+    
+    @Setup
+    public void setUp() {
+        counter = registry.counter("bench.counter");
+        histogram = registry.histogram("bench.latency");
+    }
+    
+    @Benchmark
+    public void counterIncrement() {
+        counter.increment();
+    }
+    
+    @Benchmark
+    public void histogramRecord(SampleState state) {
+        histogram.record(state.next());
+    }
+    
+    @Benchmark
+    @Threads(1)
+    public MetricsSnapshot snapshot() {
+        return registry.snapshot();
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,136 @@
+package com.example.permissionapp.benchmarks;
+
+import com.example.permissionapp.storage.DataRecord;
+import com.example.permissionapp.storage.DataType;
+import com.example.permissionapp.storage.JournalWriter;
+import com.example.permissionapp.storage.RecordCursor;
+import com.example.permissionapp.storage.RecordQuery;
+import com.example.permissionapp.storage.RecordStore;
+import com.example.permissionapp.storage.RetentionPolicy;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 按类型和时间过滤的历史查询：二级索引查询与从新到旧逐条扫描的对比
+ * 存储类型的记录每 100 条一条，其余为联系人和位置；每次操作都重新打开查询或游标，读取最新的一页结果
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryBenchmark {
+    
+    private static final int PAGE_SIZE = 50;
+    private static final int RARE_EVERY = 100;
+    private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+    
+    @Param({"100000", "1000000"})
+    public int records;
+    
+    private File directory;
+    private RecordStore store;
+    
+    @State(Scope.Thread)
+    public static class QueryState {
+        final DataRecord record = new DataRecord();
+        long seed = 1;
+        
+        long nextRandom(long bound) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            return ((seed >>> 1) % bound);
+        }
+    }
+    
+    @Setup
+    public void setUp() throws IOException {
+        directory = BenchmarkFiles.createTempDirectory("query-bench");
+        store = new RecordStore(directory, JournalWriter.FlushPolicy.sizeWindow(256 * 1024, false),
+                RetentionPolicy.UNLIMITED);
+        DataRecord record = new DataRecord();
+        for (int i = 0; i < records; i++) {
+            DataType type = i % RARE_EVERY == 0 ? DataType.APP_STORAGE_INFO
+                    : i % 2 == 0 ? DataType.CONTACT_COUNT : DataType.APPROXIMATE_LOCATION;
+            store.append(BenchmarkFiles.fill(record, type, i));
+        }
+        store.flush();
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+    
+    @Benchmark
+    public long openQuery() throws IOException {
+        try (RecordQuery query = store.query(DataType.APP_STORAGE_INFO, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            return query.getCount();
+        }
+    }
+    
+    @Benchmark
+    public long rareTypeLatestPage(QueryState state) throws IOException {
+        long sum = 0;
+        try (RecordQuery query = store.query(DataType.APP_STORAGE_INFO, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            long end = query.getCount();
+            for (long position = end - 1; position >= Math.max(0, end - PAGE_SIZE); position--) {
+                query.read(position, state.record);
+                sum += state.record.getTimestampMillis();
+            }
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public long rareTypeLatestPageByScan(QueryState state) throws IOException {
+        long sum = 0;
+        int found = 0;
+        try (RecordCursor cursor = store.openCursor()) {
+            cursor.setReverse(true);
+            while (found < PAGE_SIZE && cursor.next(state.record)) {
+                if (state.record.getType() == DataType.APP_STORAGE_INFO) {
+                    sum += state.record.getTimestampMillis();
+                    found++;
+                }
+            }
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public long rareTypeInHour(QueryState state) throws IOException {
+        long from = BenchmarkFiles.timestampOf(state.nextRandom(records));
+        long sum = 0;
+        try (RecordQuery query = store.query(DataType.APP_STORAGE_INFO, from, from + HOUR_MILLIS)) {
+            for (long position = 0; position < query.getCount(); position++) {
+                query.read(position, state.record);
+                sum += state.record.getTimestampMillis();
+            }
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public long rareTypeInHourByScan(QueryState state) throws IOException {
+        long from = BenchmarkFiles.timestampOf(state.nextRandom(records));
+        long sum = 0;
+        try (RecordCursor cursor = store.openCursor()) {
+            cursor.seekToTimestamp(from);
+            while (cursor.next(state.record) && state.record.getTimestampMillis() < from + HOUR_MILLIS) {
+                if (state.record.getType() == DataType.APP_STORAGE_INFO) {
+                    sum += state.record.getTimestampMillis();
+                }
+            }
+        }
+        return sum;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,169 @@
+package com.example.permissionapp.benchmarks;
+
+import com.example.permissionapp.storage.DataRecord;
+import com.example.permissionapp.storage.JournalWriter;
+import com.example.permissionapp.storage.JsonRecordEncoder;
+import com.example.permissionapp.storage.RecordCursor;
+import com.example.permissionapp.storage.RecordStore;
+import com.example.permissionapp.storage.RetentionPolicy;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 大量历史记录的读取：完整正向/反向遍历、随机分页、按时间查找、最新记录和 JSON 导出
+ * 每次操作都重新打开游标，包含映射段文件的开销；openCursor 单独测量打开本身
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReadBenchmark {
+    
+    private static final int PAGE_SIZE = 50;
+    
+    @Param({"10000", "1000000"})
+    public int records;
+    
+    private File directory;
+    private RecordStore store;
+    
+    @State(Scope.Thread)
+    public static class ReaderState {
+        final DataRecord record = new DataRecord();
+        final DataRecord[] page = new DataRecord[PAGE_SIZE];
+        final JsonRecordEncoder encoder = new JsonRecordEncoder(false);
+        final CountingAppendable sink = new CountingAppendable();
+        long seed = 1;
+        
+        @Setup
+        public void setUp() {
+            for (int i = 0; i < page.length; i++) {
+                page[i] = new DataRecord();
+            }
+        }
+        
+        long nextRandom(long bound) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            return ((seed >>> 1) % bound);
+        }
+    }
+    
+    @Setup
+    public void setUp() throws IOException {
+        directory = BenchmarkFiles.createTempDirectory("read-bench");
+        store = new RecordStore(directory, JournalWriter.FlushPolicy.sizeWindow(256 * 1024, false),
+                RetentionPolicy.UNLIMITED);
+        DataRecord record = new DataRecord();
+        for (int i = 0; i < records; i++) {
+            store.append(BenchmarkFiles.fill(record, i));
+        }
+        store.flush();
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+    
+    @Benchmark
+    public long fullScan(ReaderState state) throws IOException {
+        long sum = 0;
+        try (RecordCursor cursor = store.openCursor()) {
+            while (cursor.next(state.record)) {
+                sum += state.record.getTimestampMillis();
+            }
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public long reverseScan(ReaderState state) throws IOException {
+        long sum = 0;
+        try (RecordCursor cursor = store.openCursor()) {
+            cursor.setReverse(true);
+            while (cursor.next(state.record)) {
+                sum += state.record.getTimestampMillis();
+            }
+        }
+        return sum;
+    }
+    
+    @Benchmark
+    public int randomPage(ReaderState state) throws IOException {
+        try (RecordCursor cursor = store.openCursor()) {
+            cursor.setReverse(true);
+            long page = state.nextRandom(cursor.getPageCount(PAGE_SIZE));
+            return cursor.readPage(page, state.page);
+        }
+    }
+    
+    @Benchmark
+    public long openCursor() throws IOException {
+        try (RecordCursor cursor = store.openCursor()) {
+            return cursor.getCount();
+        }
+    }
+    
+    @Benchmark
+    public long seekByTimestamp(ReaderState state) throws IOException {
+        try (RecordCursor cursor = store.openCursor()) {
+            long timestamp = BenchmarkFiles.timestampOf(state.nextRandom(records));
+            long ordinal = cursor.findFirstAtOrAfter(timestamp);
+            cursor.read(ordinal, state.record);
+            return state.record.getTimestampMillis();
+        }
+    }
+    
+    @Benchmark
+    public int latestPage(ReaderState state) throws IOException {
+        try (RecordCursor cursor = store.openCursor()) {
+            return cursor.readLatest(state.page);
+        }
+    }
+    
+    @Benchmark
+    public long exportJson(ReaderState state) throws IOException {
+        state.sink.count = 0;
+        try (RecordCursor cursor = store.openCursor()) {
+            while (cursor.next(state.record)) {
+                state.encoder.write(state.record, state.sink);
+            }
+        }
+        return state.sink.count;
+    }
+    
+    /**
+     * 只计数的输出，避免导出结果本身占用内存
+     */
+    static final class CountingAppendable implements Appendable {
+        long count;
+        
+        @Override
+        public Appendable append(CharSequence csq) {
+            count += csq.length();
+            return this;
+        }
+        
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            count += end - start;
+            return this;
+        }
+        
+        @Override
+        public Appendable append(char c) {
+            count++;
+            return this;
+        }
+    }
+} 
\ No newline at end of file
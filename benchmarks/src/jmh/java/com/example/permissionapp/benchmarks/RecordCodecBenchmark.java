@@ -0,0 +1,64 @@
+package com.example.permissionapp.benchmarks;
+
+import com.example.permissionapp.storage.DataRecord;
+import com.example.permissionapp.storage.DataType;
+import com.example.permissionapp.storage.JsonRecordEncoder;
+import com.example.permissionapp.storage.RecordCodec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 记录序列化吞吐量：二进制编解码，以及查看/导出时的 JSON 编码
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RecordCodecBenchmark {
+    
+    @Param({"CONTACT_COUNT", "APPROXIMATE_LOCATION", "APP_STORAGE_INFO"})
+    public DataType type;
+    
+    private final DataRecord record = new DataRecord();
+    private final DataRecord decoded = new DataRecord();
+    private final ByteBuffer buffer = ByteBuffer.allocate(RecordCodec.MAX_RECORD_SIZE);
+    private ByteBuffer encoded;
+    private final JsonRecordEncoder jsonEncoder = new JsonRecordEncoder(false);
+    private final StringBuilder json = new StringBuilder(512);
+    
+    @Setup
+    public void setUp() {
+        BenchmarkFiles.fill(record, type, 42);
+        encoded = ByteBuffer.allocate(RecordCodec.MAX_RECORD_SIZE);
+        RecordCodec.encode(record, encoded);
+        encoded.flip();
+    }
+    
+    @Benchmark
+    public int encode() {
+        buffer.clear();
+        return RecordCodec.encode(record, buffer);
+    }
+    
+    @Benchmark
+    public DataRecord decode() {
+        encoded.rewind();
+        RecordCodec.decode(encoded, decoded);
+        return decoded;
+    }
+    
+    @Benchmark
+    public int encodeJson() throws IOException {
+        json.setLength(0);
+        jsonEncoder.write(record, json);
+        return json.length();
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,95 @@
+package com.example.permissionapp.benchmarks;
+
+import com.example.permissionapp.storage.DataRecord;
+import com.example.permissionapp.storage.JournalWriter;
+import com.example.permissionapp.storage.RecordStore;
+import com.example.permissionapp.storage.RetentionPolicy;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 崩溃后重新打开的耗时：活动段末尾有一条残缺记录，检查点停在最后一次周期检查点的位置
+ * checkpoint=true 时只校验检查点之后的部分，耗时不随段大小增长；false 时删掉检查点，从段头开始校验作为对照
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RecoveryBenchmark {
+    
+    // 残缺记录：长度前缀声明的字节数比实际写入的多
+    private static final byte[] TORN_TAIL = {0, 24, 1, 0, 0, 1, (byte) 0x8B};
+    
+    @Param({"10000", "1000000"})
+    public int records;
+    
+    @Param({"true", "false"})
+    public boolean checkpoint;
+    
+    private File directory;
+    private File dataFile;
+    private File checkpointFile;
+    private byte[] checkpointBytes;
+    
+    @Setup
+    public void setUp() throws IOException {
+        directory = BenchmarkFiles.createTempDirectory("recovery-bench");
+        RecordStore store = open();
+        DataRecord record = new DataRecord();
+        for (int i = 0; i < records; i++) {
+            store.append(BenchmarkFiles.fill(record, i));
+        }
+        store.flush();
+        File segments = new File(directory, RecordStore.DIRECTORY);
+        dataFile = new File(segments, "segment-00000001.bin");
+        checkpointFile = new File(segments, "segment-00000001.ckp");
+        // 正常关闭会在末尾写检查点，先保存最后一次周期检查点，关闭后放回去
+        checkpointBytes = checkpointFile.exists() ? Files.readAllBytes(checkpointFile.toPath()) : null;
+        store.close();
+    }
+    
+    /**
+     * 每次重新打开都会截掉残缺尾部并在关闭时写检查点，这里恢复成崩溃时的样子
+     */
+    @Setup(Level.Invocation)
+    public void simulateCrash() throws IOException {
+        if (checkpoint && checkpointBytes != null) {
+            Files.write(checkpointFile.toPath(), checkpointBytes);
+        } else {
+            checkpointFile.delete();
+        }
+        try (FileOutputStream out = new FileOutputStream(dataFile, true)) {
+            out.write(TORN_TAIL);
+        }
+    }
+    
+    @TearDown
+    public void tearDown() {
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+    
+    @Benchmark
+    public String reopen() throws IOException {
+        try (RecordStore store = open()) {
+            return store.describe();
+        }
+    }
+    
+    private RecordStore open() throws IOException {
+        // 段足够大，全部记录都在活动段内
+        return new RecordStore(directory, JournalWriter.FlushPolicy.sizeWindow(256 * 1024, false),
+                RetentionPolicy.UNLIMITED, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+} 
\ No newline at end of file
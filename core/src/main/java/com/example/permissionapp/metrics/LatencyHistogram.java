@@ -0,0 +1,151 @@
+package com.example.permissionapp.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定分桶的延迟直方图，无锁记录
+ * 第 i 个桶统计 [2^(i-1), 2^i) 微秒的样本，桶 0 是不足 1 微秒的样本；
+ * 分位数按桶的上界估算，误差不超过 2 倍，足够发现数量级上的退化
+ */
+public class LatencyHistogram {
+    
+    /** 最后一个桶收纳约 18 分钟以上的样本 */
+    public static final int BUCKET_COUNT = 32;
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    
+    /**
+     * 记录一次耗时，负数按 0 处理
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        sumNanos.add(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+    
+    /**
+     * 记录从 startNanos（System.nanoTime）到现在的耗时
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+    
+    static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+    
+    /**
+     * 桶 i 的上界，单位纳秒
+     */
+    static long bucketUpperNanos(int bucket) {
+        return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) * 1000;
+    }
+    
+    /**
+     * 当前数据的副本；并发记录时各字段之间可能相差几个样本
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = buckets.get(i);
+        }
+        return new Snapshot(copy, count.sum(), sumNanos.sum(), maxNanos.get());
+    }
+    
+    /**
+     * 不可变的直方图数据，可以相加、相减和持久化
+     */
+    public static class Snapshot {
+        public static final Snapshot EMPTY = new Snapshot(new long[BUCKET_COUNT], 0, 0, 0);
+        
+        private final long[] buckets;
+        public final long count;
+        public final long sumNanos;
+        public final long maxNanos;
+        
+        Snapshot(long[] buckets, long count, long sumNanos, long maxNanos) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+        }
+        
+        public long bucketCount(int bucket) {
+            return buckets[bucket];
+        }
+        
+        /** 平均耗时，单位毫秒 */
+        public double averageMillis() {
+            return count == 0 ? 0 : sumNanos / (double) count / 1_000_000.0;
+        }
+        
+        /**
+         * 估算分位数，返回样本所在桶的上界（不超过最大值），单位纳秒
+         *
+         * @param quantile 0 到 1 之间，例如 0.99
+         */
+        public long percentileNanos(double quantile) {
+            long total = 0;
+            for (long c : buckets) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            if (rank < 1) {
+                rank = 1;
+            }
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperNanos(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+        
+        public double percentileMillis(double quantile) {
+            return percentileNanos(quantile) / 1_000_000.0;
+        }
+        
+        /**
+         * 合并两份数据，用于累计多个进程的统计
+         */
+        public Snapshot plus(Snapshot other) {
+            long[] sum = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                sum[i] = buckets[i] + other.buckets[i];
+            }
+            return new Snapshot(sum, count + other.count, sumNanos + other.sumNanos,
+                    Math.max(maxNanos, other.maxNanos));
+        }
+        
+        /**
+         * 减去较早的一份数据，得到两次快照之间新增的样本
+         * 最大值无法相减，沿用当前值
+         */
+        public Snapshot minus(Snapshot earlier) {
+            long[] diff = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                diff[i] = Math.max(0, buckets[i] - earlier.buckets[i]);
+            }
+            return new Snapshot(diff, Math.max(0, count - earlier.count),
+                    Math.max(0, sumNanos - earlier.sumNanos), maxNanos);
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,165 @@
+package com.example.permissionapp.metrics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 某一时刻全部指标的不可变副本
+ */
+public class MetricsSnapshot {
+    
+    public static final MetricsSnapshot EMPTY = new MetricsSnapshot(
+            Collections.<String, Long>emptyMap(), Collections.<String, LatencyHistogram.Snapshot>emptyMap());
+    
+    private final Map<String, Long> counters;
+    private final Map<String, LatencyHistogram.Snapshot> histograms;
+    
+    MetricsSnapshot(Map<String, Long> counters, Map<String, LatencyHistogram.Snapshot> histograms) {
+        this.counters = Collections.unmodifiableMap(counters);
+        this.histograms = Collections.unmodifiableMap(histograms);
+    }
+    
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+    
+    public Map<String, LatencyHistogram.Snapshot> getHistograms() {
+        return histograms;
+    }
+    
+    public long getCounter(String name) {
+        Long value = counters.get(name);
+        return value == null ? 0 : value;
+    }
+    
+    public LatencyHistogram.Snapshot getHistogram(String name) {
+        LatencyHistogram.Snapshot histogram = histograms.get(name);
+        return histogram == null ? LatencyHistogram.Snapshot.EMPTY : histogram;
+    }
+    
+    public boolean isEmpty() {
+        return counters.isEmpty() && histograms.isEmpty();
+    }
+    
+    /**
+     * 按名称合并两份快照
+     */
+    public MetricsSnapshot plus(MetricsSnapshot other) {
+        Map<String, Long> counterSum = new TreeMap<>(counters);
+        for (Map.Entry<String, Long> entry : other.counters.entrySet()) {
+            counterSum.put(entry.getKey(), getCounter(entry.getKey()) + entry.getValue());
+        }
+        Map<String, LatencyHistogram.Snapshot> histogramSum = new TreeMap<>(histograms);
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : other.histograms.entrySet()) {
+            histogramSum.put(entry.getKey(), getHistogram(entry.getKey()).plus(entry.getValue()));
+        }
+        return new MetricsSnapshot(counterSum, histogramSum);
+    }
+    
+    /**
+     * 减去较早的快照，得到两次快照之间的增量；没有变化的指标不保留
+     */
+    public MetricsSnapshot minus(MetricsSnapshot earlier) {
+        Map<String, Long> counterDiff = new TreeMap<>();
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            long diff = entry.getValue() - earlier.getCounter(entry.getKey());
+            if (diff != 0) {
+                counterDiff.put(entry.getKey(), diff);
+            }
+        }
+        Map<String, LatencyHistogram.Snapshot> histogramDiff = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : histograms.entrySet()) {
+            LatencyHistogram.Snapshot diff = entry.getValue().minus(earlier.getHistogram(entry.getKey()));
+            if (diff.count > 0) {
+                histogramDiff.put(entry.getKey(), diff);
+            }
+        }
+        return new MetricsSnapshot(counterDiff, histogramDiff);
+    }
+    
+    /**
+     * 紧凑的二进制格式：直方图只写非空的桶
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeShort(counters.size());
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+        out.writeShort(histograms.size());
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : histograms.entrySet()) {
+            LatencyHistogram.Snapshot histogram = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeLong(histogram.count);
+            out.writeLong(histogram.sumNanos);
+            out.writeLong(histogram.maxNanos);
+            int used = 0;
+            for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+                if (histogram.bucketCount(i) != 0) {
+                    used++;
+                }
+            }
+            out.writeByte(used);
+            for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+                if (histogram.bucketCount(i) != 0) {
+                    out.writeByte(i);
+                    out.writeLong(histogram.bucketCount(i));
+                }
+            }
+        }
+    }
+    
+    public static MetricsSnapshot read(DataInput in) throws IOException {
+        Map<String, Long> counters = new TreeMap<>();
+        int counterCount = in.readUnsignedShort();
+        for (int i = 0; i < counterCount; i++) {
+            counters.put(in.readUTF(), in.readLong());
+        }
+        Map<String, LatencyHistogram.Snapshot> histograms = new TreeMap<>();
+        int histogramCount = in.readUnsignedShort();
+        for (int i = 0; i < histogramCount; i++) {
+            String name = in.readUTF();
+            long count = in.readLong();
+            long sumNanos = in.readLong();
+            long maxNanos = in.readLong();
+            long[] buckets = new long[LatencyHistogram.BUCKET_COUNT];
+            int used = in.readUnsignedByte();
+            for (int j = 0; j < used; j++) {
+                int bucket = in.readUnsignedByte();
+                if (bucket >= LatencyHistogram.BUCKET_COUNT) {
+                    throw new IOException("bad histogram bucket " + bucket);
+                }
+                buckets[bucket] = in.readLong();
+            }
+            histograms.put(name, new LatencyHistogram.Snapshot(buckets, count, sumNanos, maxNanos));
+        }
+        return new MetricsSnapshot(counters, histograms);
+    }
+    
+    /**
+     * 每个指标一行的文本，用于日志和调试界面
+     */
+    public void appendTo(StringBuilder out) {
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : histograms.entrySet()) {
+            LatencyHistogram.Snapshot histogram = entry.getValue();
+            out.append(String.format(Locale.US, "%s: n=%d, 平均 %.2f ms, p50 %.2f ms, p99 %.2f ms, 最大 %.2f ms\n",
+                    entry.getKey(), histogram.count, histogram.averageMillis(), histogram.percentileMillis(0.5),
+                    histogram.percentileMillis(0.99), histogram.maxNanos / 1_000_000.0));
+        }
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            out.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        appendTo(out);
+        return out.toString();
+    }
+} 
\ No newline at end of file
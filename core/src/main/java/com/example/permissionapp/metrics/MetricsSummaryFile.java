@@ -0,0 +1,135 @@
+package com.example.permissionapp.metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按版本累计的指标摘要文件
+ * 每个版本一条记录，最多保留 maxReleases 个版本，升级后可以和上一个版本对比发现性能退化
+ */
+public class MetricsSummaryFile {
+    
+    private static final int SUMMARY_MAGIC = 0x50524D53; // "PRMS"
+    private static final int SUMMARY_VERSION = 1;
+    
+    private final File file;
+    private final int maxReleases;
+    
+    /**
+     * 一个版本的累计指标
+     */
+    public static class Release {
+        public final String version;
+        public final long firstSeenMillis;
+        public final long lastUpdatedMillis;
+        public final MetricsSnapshot metrics;
+        
+        Release(String version, long firstSeenMillis, long lastUpdatedMillis, MetricsSnapshot metrics) {
+            this.version = version;
+            this.firstSeenMillis = firstSeenMillis;
+            this.lastUpdatedMillis = lastUpdatedMillis;
+            this.metrics = metrics;
+        }
+    }
+    
+    public MetricsSummaryFile(File file, int maxReleases) {
+        if (maxReleases <= 0) {
+            throw new IllegalArgumentException("maxReleases must be positive");
+        }
+        this.file = file;
+        this.maxReleases = maxReleases;
+    }
+    
+    /**
+     * 读取全部版本，按首次出现的时间从旧到新排列；文件不存在时返回空列表
+     */
+    public synchronized List<Release> load() throws IOException {
+        List<Release> releases = new ArrayList<>();
+        if (!file.exists()) {
+            return releases;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != SUMMARY_MAGIC) {
+                throw new IOException("bad metrics summary: " + file);
+            }
+            int version = in.readUnsignedByte();
+            if (version > SUMMARY_VERSION) {
+                throw new IOException("unsupported metrics summary version " + version);
+            }
+            int n = in.readUnsignedShort();
+            for (int i = 0; i < n; i++) {
+                String release = in.readUTF();
+                long firstSeen = in.readLong();
+                long lastUpdated = in.readLong();
+                releases.add(new Release(release, firstSeen, lastUpdated, MetricsSnapshot.read(in)));
+            }
+        }
+        return releases;
+    }
+    
+    /**
+     * 把一段增量累加到指定版本，新版本追加在末尾，超出数量时丢弃最旧的版本
+     * 文件损坏时从空摘要重新开始
+     */
+    public synchronized void accumulate(String version, MetricsSnapshot delta, long nowMillis) throws IOException {
+        List<Release> releases;
+        try {
+            releases = load();
+        } catch (IOException e) {
+            releases = new ArrayList<>();
+        }
+        boolean found = false;
+        for (int i = 0; i < releases.size(); i++) {
+            Release release = releases.get(i);
+            if (release.version.equals(version)) {
+                releases.set(i, new Release(version, release.firstSeenMillis, nowMillis,
+                        release.metrics.plus(delta)));
+                found = true;
+                break;
+            }
+        }
+        if (!found) {
+            releases.add(new Release(version, nowMillis, nowMillis, MetricsSnapshot.EMPTY.plus(delta)));
+        }
+        while (releases.size() > maxReleases) {
+            releases.remove(0);
+        }
+        write(releases);
+    }
+    
+    /**
+     * 先写临时文件再改名，崩溃时只会看到旧摘要或新摘要
+     */
+    private void write(List<Release> releases) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(SUMMARY_MAGIC);
+            out.writeByte(SUMMARY_VERSION);
+            out.writeShort(releases.size());
+            for (Release release : releases) {
+                out.writeUTF(release.version);
+                out.writeLong(release.firstSeenMillis);
+                out.writeLong(release.lastUpdatedMillis);
+                release.metrics.write(out);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("cannot replace metrics summary " + file);
+        }
+    }
+    
+    public synchronized void delete() {
+        file.delete();
+    }
+} 
\ No newline at end of file
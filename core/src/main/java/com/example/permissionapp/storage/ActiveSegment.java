@@ -0,0 +1,50 @@
+package com.example.permissionapp.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 活动段：追加记录并提供当前内容的只读视图
+ * 明文存储用 SegmentWriter，加密存储用 EncryptedSegmentWriter
+ */
+interface ActiveSegment extends Closeable {
+    
+    SegmentInfo getInfo();
+    
+    JournalWriter getJournal();
+    
+    void append(DataRecord record) throws IOException;
+    
+    /**
+     * 追加一批记录并立即写入，整批作为一次写入
+     */
+    void appendBatch(DataRecord[] records, int count) throws IOException;
+    
+    void flush() throws IOException;
+    
+    /**
+     * 已写入记录的只读视图，条数在调用时确定，返回的对象可以在任意线程上打开；调用前应先 flush
+     */
+    StoreSnapshot.SegmentOpener snapshot();
+    
+    /**
+     * 打开时恢复校验的字节数
+     */
+    long getRecoveryScannedBytes();
+    
+    /**
+     * 打开时截掉的残缺尾部字节数
+     */
+    long getRecoveryTruncatedBytes();
+    
+    /**
+     * 切换段时封存：内容落盘后关闭
+     */
+    void seal() throws IOException;
+    
+    /**
+     * 正常关闭
+     */
+    @Override
+    void close() throws IOException;
+} 
\ No newline at end of file
@@ -0,0 +1,47 @@
+package com.example.permissionapp.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 冷数据块的压缩算法
+ * 编号写入压缩段的文件头，读取时按编号创建对应的实现；实例持有压缩器状态，只供一个读写者使用
+ */
+public interface BlockCodec extends Closeable {
+    
+    /** java.util.zip 的 raw deflate */
+    int DEFLATE = 1;
+    
+    int id();
+    
+    /**
+     * 压缩 input[0, length)，结果写入 output
+     *
+     * @return 压缩后的长度；output 放不下时返回 -1
+     */
+    int compress(byte[] input, int length, byte[] output);
+    
+    /**
+     * 把 input[0, length) 解压到 output[0, rawLength)
+     *
+     * @throws IOException 数据损坏或解压后的长度不等于 rawLength
+     */
+    void decompress(byte[] input, int length, byte[] output, int rawLength) throws IOException;
+    
+    @Override
+    void close();
+    
+    /**
+     * 按编号创建实现
+     *
+     * @throws IOException 不支持的编号
+     */
+    static BlockCodec create(int id) throws IOException {
+        switch (id) {
+            case DEFLATE:
+                return new DeflateBlockCodec();
+            default:
+                throw new IOException("unsupported block codec " + id);
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,93 @@
+package com.example.permissionapp.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * 按块 AES-GCM 加解密
+ * 每块输出为 IV + 密文 + 认证标签；段编号和块位置作为附加认证数据，块被挪动或替换时解密失败。
+ * IV 每块随机生成而不是由位置推出：恢复时截掉的位置会被重新写入，固定 IV 会与旧内容重复。
+ * 不是线程安全的，每个写入器和读取器各用一个实例；Cipher 在第一次使用时创建
+ */
+public final class ChunkCipher {
+    
+    public static final int IV_SIZE = 12;
+    public static final int TAG_SIZE = 16;
+    /** 每块相对明文增加的字节数 */
+    public static final int OVERHEAD = IV_SIZE + TAG_SIZE;
+    
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final SecureRandom RANDOM = new SecureRandom();
+    
+    private final SecretKey key;
+    private final byte[] iv = new byte[IV_SIZE];
+    private final ByteBuffer aad = ByteBuffer.allocate(16);
+    private Cipher cipher;
+    
+    public ChunkCipher(SecretKey key) {
+        this.key = key;
+    }
+    
+    /**
+     * 加密 plain 中剩余的字节，写入 out 的当前位置
+     *
+     * @param context  所属文件的标识（段编号）
+     * @param position 块在文件中的位置
+     * @return 写入的字节数，即明文长度加 OVERHEAD
+     */
+    int encrypt(ByteBuffer plain, ByteBuffer out, long context, long position) throws IOException {
+        RANDOM.nextBytes(iv);
+        try {
+            Cipher c = cipher();
+            c.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, iv));
+            c.updateAAD(aad(context, position));
+            out.put(iv);
+            return IV_SIZE + c.doFinal(plain, out);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("encryption failed", e);
+        }
+    }
+    
+    /**
+     * 解密 in 中剩余的字节（IV + 密文 + 标签），明文写入 out 的当前位置
+     *
+     * @return 明文字节数
+     * @throws IOException 认证失败（内容损坏、不完整或密钥不对）
+     */
+    int decrypt(ByteBuffer in, ByteBuffer out, long context, long position) throws IOException {
+        if (in.remaining() < OVERHEAD) {
+            throw new IOException("chunk too short at " + position);
+        }
+        in.get(iv);
+        try {
+            Cipher c = cipher();
+            c.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, iv));
+            c.updateAAD(aad(context, position));
+            return c.doFinal(in, out);
+        } catch (AEADBadTagException e) {
+            throw new IOException("chunk authentication failed at " + position, e);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("decryption failed", e);
+        }
+    }
+    
+    private Cipher cipher() throws GeneralSecurityException {
+        if (cipher == null) {
+            cipher = Cipher.getInstance(TRANSFORMATION);
+        }
+        return cipher;
+    }
+    
+    private ByteBuffer aad(long context, long position) {
+        aad.clear();
+        aad.putLong(context).putLong(position);
+        aad.flip();
+        return aad;
+    }
+} 
\ No newline at end of file
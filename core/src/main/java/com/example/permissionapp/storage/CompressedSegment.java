@@ -0,0 +1,307 @@
+package com.example.permissionapp.storage;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 按块压缩的冷数据段
+ * 文件布局：文件头（魔数、版本、压缩算法、标志）| 压缩块 ... | 块索引 | 文件尾。
+ * 每块是若干条完整的二进制记录（与未压缩段相同的编码）压缩后的结果，可以单独解压；
+ * 块索引记录每块的偏移、压缩前后的长度和记录数，随机读取只需解压一块。
+ * 加密的段在压缩之后对每块单独做 AES-GCM（块序号作为附加认证数据），随机读取也只解密一块
+ */
+final class CompressedSegment implements SegmentSource {
+    
+    private static final int MAGIC = 0x50524D43; // "PRMC"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 7;
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final int BLOCK_ENTRY_SIZE = 20;
+    private static final int FOOTER_SIZE = 24;
+    
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final BlockCodec codec;
+    private final ChunkCipher cipher;
+    private final long context;
+    private final long count;
+    
+    // 块索引；firstOrdinals 多一个元素，最后一个为记录总数
+    private final long[] blockOffsets;
+    private final int[] storedLengths;
+    private final int[] rawLengths;
+    private final long[] firstOrdinals;
+    
+    // 当前解压的块，以及块内每条记录的起始位置
+    private byte[] stored = new byte[0];
+    private byte[] compressed = new byte[0];
+    private byte[] raw = new byte[0];
+    private ByteBuffer block;
+    private int currentBlock = -1;
+    private int[] recordStarts = new int[0];
+    
+    /**
+     * @param cipher  段加密时用于解密的实例，明文段可以为 null
+     * @param context 段编号，加密时作为附加认证数据
+     */
+    CompressedSegment(File coldFile, ChunkCipher cipher, long context) throws IOException {
+        file = new RandomAccessFile(coldFile, "r");
+        try {
+            channel = file.getChannel();
+            long size = channel.size();
+            if (size < HEADER_SIZE + FOOTER_SIZE) {
+                throw new EOFException("compressed segment too short: " + coldFile);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(header, 0);
+            int version = header.get(4);
+            if (header.getInt(0) != MAGIC || version > VERSION) {
+                throw new IOException("bad compressed segment: " + coldFile);
+            }
+            boolean encrypted = version >= 2 && (header.get(6) & FLAG_ENCRYPTED) != 0;
+            if (encrypted && cipher == null) {
+                throw new IOException("segment is encrypted but no key was given: " + coldFile);
+            }
+            this.cipher = encrypted ? cipher : null;
+            this.context = context;
+            codec = BlockCodec.create(header.get(5) & 0xFF);
+            
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+            readFully(footer, size - FOOTER_SIZE);
+            int blocks = footer.getInt(0);
+            count = footer.getLong(4);
+            long indexOffset = footer.getLong(12);
+            if (footer.getInt(20) != MAGIC || blocks < 0
+                    || indexOffset + (long) blocks * BLOCK_ENTRY_SIZE != size - FOOTER_SIZE) {
+                throw new IOException("bad compressed segment footer: " + coldFile);
+            }
+            
+            ByteBuffer index = ByteBuffer.allocate(blocks * BLOCK_ENTRY_SIZE);
+            readFully(index, indexOffset);
+            index.flip();
+            blockOffsets = new long[blocks];
+            storedLengths = new int[blocks];
+            rawLengths = new int[blocks];
+            firstOrdinals = new long[blocks + 1];
+            for (int i = 0; i < blocks; i++) {
+                blockOffsets[i] = index.getLong();
+                storedLengths[i] = index.getInt();
+                rawLengths[i] = index.getInt();
+                firstOrdinals[i + 1] = firstOrdinals[i] + index.getInt();
+            }
+            if (firstOrdinals[blocks] != count) {
+                throw new IOException("block record counts do not match segment: " + coldFile);
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+    
+    @Override
+    public long getCount() {
+        return count;
+    }
+    
+    @Override
+    public void read(long ordinal, DataRecord into) throws IOException {
+        position(ordinal);
+        if (!RecordCodec.decode(block, into)) {
+            throw new EOFException("truncated record in block " + currentBlock);
+        }
+    }
+    
+    @Override
+    public long timestampOf(long ordinal) throws IOException {
+        position(ordinal);
+        return RecordCodec.peekTimestamp(block);
+    }
+    
+    /**
+     * 解压记录所在的块（已是当前块时不重复解压），并定位到这条记录
+     */
+    private void position(long ordinal) throws IOException {
+        int b = blockOf(ordinal);
+        if (b != currentBlock) {
+            loadBlock(b);
+        }
+        block.position(recordStarts[(int) (ordinal - firstOrdinals[b])]);
+    }
+    
+    private int blockOf(long ordinal) {
+        if (currentBlock >= 0 && ordinal >= firstOrdinals[currentBlock] && ordinal < firstOrdinals[currentBlock + 1]) {
+            return currentBlock;
+        }
+        int lo = 0;
+        int hi = blockOffsets.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (firstOrdinals[mid] <= ordinal) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+    
+    private void loadBlock(int b) throws IOException {
+        int storedLength = storedLengths[b];
+        int rawLength = rawLengths[b];
+        if (stored.length < storedLength) {
+            stored = new byte[storedLength];
+        }
+        if (raw.length < rawLength) {
+            raw = new byte[rawLength];
+            block = null;
+        }
+        readFully(ByteBuffer.wrap(stored, 0, storedLength), blockOffsets[b]);
+        currentBlock = -1;
+        byte[] input = stored;
+        int compressedLength = storedLength;
+        if (cipher != null) {
+            if (compressed.length < storedLength) {
+                compressed = new byte[storedLength];
+            }
+            compressedLength = cipher.decrypt(ByteBuffer.wrap(stored, 0, storedLength),
+                    ByteBuffer.wrap(compressed), context, b);
+            input = compressed;
+        }
+        codec.decompress(input, compressedLength, raw, rawLength);
+        if (block == null) {
+            block = ByteBuffer.wrap(raw);
+        }
+        block.clear();
+        block.limit(rawLength);
+        
+        int records = (int) (firstOrdinals[b + 1] - firstOrdinals[b]);
+        if (recordStarts.length < records) {
+            recordStarts = new int[records];
+        }
+        int offset = 0;
+        for (int i = 0; i < records; i++) {
+            block.position(offset);
+            int size = RecordCodec.peekRecordSize(block);
+            if (size < 0 || offset + size > rawLength) {
+                throw new IOException("corrupt block " + b);
+            }
+            recordStarts[i] = offset;
+            offset += size;
+        }
+        currentBlock = b;
+    }
+    
+    /**
+     * 压缩前后的总字节数，用于统计压缩率
+     */
+    long getRawBytes() {
+        long total = 0;
+        for (int length : rawLengths) {
+            total += length;
+        }
+        return total;
+    }
+    
+    int getBlockCount() {
+        return blockOffsets.length;
+    }
+    
+    private void readFully(ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, position);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            position += n;
+        }
+    }
+    
+    @Override
+    public void close() {
+        codec.close();
+        try {
+            file.close();
+        } catch (IOException e) {
+            // 只读文件，关闭失败不影响数据
+        }
+    }
+    
+    /**
+     * 把一个段的全部记录按块压缩写入 target（先写临时文件再改名）
+     *
+     * @param cipher  不为 null 时每块压缩后再加密
+     * @param context 段编号，加密时作为附加认证数据
+     * @return 压缩后的文件大小
+     */
+    static long write(SegmentSource source, File target, TieringPolicy policy,
+                      ChunkCipher cipher, long context) throws IOException {
+        File tmp = new File(target.getPath() + ".tmp");
+        long count = source.getCount();
+        byte[] raw = new byte[policy.blockBytes + RecordCodec.MAX_RECORD_SIZE];
+        ByteBuffer rawBuffer = ByteBuffer.wrap(raw);
+        byte[] compressed = new byte[raw.length + raw.length / 8 + 64];
+        ByteBuffer sealed = cipher != null ? ByteBuffer.allocate(compressed.length + ChunkCipher.OVERHEAD) : null;
+        ByteBuffer index = ByteBuffer.allocate(16 * BLOCK_ENTRY_SIZE);
+        int blocks = 0;
+        DataRecord record = new DataRecord();
+        try (BlockCodec codec = BlockCodec.create(policy.codecId);
+             FileOutputStream out = new FileOutputStream(tmp)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).put((byte) VERSION).put((byte) codec.id())
+                    .put((byte) (cipher != null ? FLAG_ENCRYPTED : 0));
+            out.write(header.array());
+            long offset = HEADER_SIZE;
+            long ordinal = 0;
+            while (ordinal < count) {
+                rawBuffer.clear();
+                int records = 0;
+                while (ordinal < count && rawBuffer.position() < policy.blockBytes) {
+                    source.read(ordinal++, record);
+                    RecordCodec.encode(record, rawBuffer);
+                    records++;
+                }
+                int rawLength = rawBuffer.position();
+                int compressedLength = codec.compress(raw, rawLength, compressed);
+                if (compressedLength < 0) {
+                    throw new IOException("block does not fit compression buffer");
+                }
+                int storedLength = compressedLength;
+                if (cipher != null) {
+                    sealed.clear();
+                    storedLength = cipher.encrypt(ByteBuffer.wrap(compressed, 0, compressedLength), sealed, context, blocks);
+                    out.write(sealed.array(), 0, storedLength);
+                } else {
+                    out.write(compressed, 0, compressedLength);
+                }
+                if (index.remaining() < BLOCK_ENTRY_SIZE) {
+                    ByteBuffer grown = ByteBuffer.allocate(index.capacity() * 2);
+                    index.flip();
+                    grown.put(index);
+                    index = grown;
+                }
+                index.putLong(offset).putInt(storedLength).putInt(rawLength).putInt(records);
+                offset += storedLength;
+                blocks++;
+            }
+            out.write(index.array(), 0, index.position());
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+            footer.putInt(blocks).putLong(count).putLong(offset).putInt(MAGIC);
+            out.write(footer.array());
+            out.flush();
+            out.getFD().sync();
+        } catch (IOException | RuntimeException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            throw new IOException("cannot create " + target);
+        }
+        return target.length();
+    }
+} 
\ No newline at end of file
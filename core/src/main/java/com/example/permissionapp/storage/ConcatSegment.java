@@ -0,0 +1,50 @@
+package com.example.permissionapp.storage;
+
+import java.io.IOException;
+
+/**
+ * 两个相邻段按顺序拼接成的只读段，合并压缩或加密的段时作为改写的输入
+ */
+final class ConcatSegment implements SegmentSource {
+    
+    private final SegmentSource first;
+    private final SegmentSource second;
+    private final long firstCount;
+    
+    /**
+     * 关闭时一并关闭两个段
+     */
+    ConcatSegment(SegmentSource first, SegmentSource second) {
+        this.first = first;
+        this.second = second;
+        this.firstCount = first.getCount();
+    }
+    
+    @Override
+    public long getCount() {
+        return firstCount + second.getCount();
+    }
+    
+    @Override
+    public void read(long ordinal, DataRecord into) throws IOException {
+        if (ordinal < firstCount) {
+            first.read(ordinal, into);
+        } else {
+            second.read(ordinal - firstCount, into);
+        }
+    }
+    
+    @Override
+    public long timestampOf(long ordinal) throws IOException {
+        return ordinal < firstCount ? first.timestampOf(ordinal) : second.timestampOf(ordinal - firstCount);
+    }
+    
+    @Override
+    public void close() {
+        try {
+            first.close();
+        } finally {
+            second.close();
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,45 @@
+package com.example.permissionapp.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * CRC32C（Castagnoli 多项式）
+ * java.util.zip.CRC32C 要到 API 26 才有，这里用查表实现；记录只有几十字节，单表足够
+ */
+final class Crc32c {
+    
+    private static final int POLYNOMIAL = 0x82F63B78; // 反射形式
+    private static final int[] TABLE = new int[256];
+    
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+    
+    private Crc32c() {
+    }
+    
+    /**
+     * 计算 buffer 中 [from, to) 的校验值，按绝对位置读取，不移动 position
+     */
+    static int compute(ByteBuffer buffer, int from, int to) {
+        int crc = 0xFFFFFFFF;
+        for (int i = from; i < to; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ buffer.get(i)) & 0xFF];
+        }
+        return ~crc;
+    }
+    
+    static int compute(byte[] bytes, int offset, int length) {
+        int crc = 0xFFFFFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ bytes[i]) & 0xFF];
+        }
+        return ~crc;
+    }
+} 
\ No newline at end of file
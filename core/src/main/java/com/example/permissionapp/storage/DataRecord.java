@@ -0,0 +1,172 @@
+package com.example.permissionapp.storage;
+
+/**
+ * 一条收集记录
+ * 按数据类型使用固定字段，时间戳保存为毫秒数，对象可以清空后重复使用
+ */
+public class DataRecord {
+    
+    private DataType type;
+    private long timestampMillis;
+    private boolean userConsent;
+    
+    // 通讯录：联系人数量
+    private int contactCount;
+    
+    // 位置：保留两位小数的经纬度和精度
+    private double latitude;
+    private double longitude;
+    private float accuracy;
+    // 位置心跳：该位置自这个时间起没有变化，普通记录为 0
+    private long unchangedSinceMillis;
+    
+    // 存储：应用数据大小
+    private long sizeBytes;
+    
+    public DataRecord clear() {
+        type = null;
+        timestampMillis = 0;
+        userConsent = false;
+        contactCount = 0;
+        latitude = 0;
+        longitude = 0;
+        accuracy = 0;
+        unchangedSinceMillis = 0;
+        sizeBytes = 0;
+        return this;
+    }
+    
+    public DataRecord copyFrom(DataRecord other) {
+        type = other.type;
+        timestampMillis = other.timestampMillis;
+        userConsent = other.userConsent;
+        contactCount = other.contactCount;
+        latitude = other.latitude;
+        longitude = other.longitude;
+        accuracy = other.accuracy;
+        unchangedSinceMillis = other.unchangedSinceMillis;
+        sizeBytes = other.sizeBytes;
+        return this;
+    }
+    
+    public DataRecord setContactCount(long timestampMillis, int contactCount) {
+        clear();
+        this.type = DataType.CONTACT_COUNT;
+        this.timestampMillis = timestampMillis;
+        this.userConsent = true;
+        this.contactCount = contactCount;
+        return this;
+    }
+    
+    public DataRecord setLocation(long timestampMillis, double latitude, double longitude, float accuracy) {
+        clear();
+        this.type = DataType.APPROXIMATE_LOCATION;
+        this.timestampMillis = timestampMillis;
+        this.userConsent = true;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracy = accuracy;
+        return this;
+    }
+    
+    /**
+     * 把位置记录标记为心跳，表示位置自 sinceMillis 起没有变化
+     */
+    public DataRecord setUnchangedSince(long sinceMillis) {
+        this.unchangedSinceMillis = sinceMillis;
+        return this;
+    }
+    
+    public DataRecord setStorage(long timestampMillis, long sizeBytes) {
+        clear();
+        this.type = DataType.APP_STORAGE_INFO;
+        this.timestampMillis = timestampMillis;
+        this.userConsent = true;
+        this.sizeBytes = sizeBytes;
+        return this;
+    }
+    
+    DataRecord setType(DataType type) {
+        this.type = type;
+        return this;
+    }
+    
+    DataRecord setTimestampMillis(long timestampMillis) {
+        this.timestampMillis = timestampMillis;
+        return this;
+    }
+    
+    DataRecord setUserConsent(boolean userConsent) {
+        this.userConsent = userConsent;
+        return this;
+    }
+    
+    DataRecord setContactCount(int contactCount) {
+        this.contactCount = contactCount;
+        return this;
+    }
+    
+    DataRecord setLatitude(double latitude) {
+        this.latitude = latitude;
+        return this;
+    }
+    
+    DataRecord setLongitude(double longitude) {
+        this.longitude = longitude;
+        return this;
+    }
+    
+    DataRecord setAccuracy(float accuracy) {
+        this.accuracy = accuracy;
+        return this;
+    }
+    
+    DataRecord setSizeBytes(long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+        return this;
+    }
+    
+    public DataType getType() {
+        return type;
+    }
+    
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+    
+    public boolean isUserConsent() {
+        return userConsent;
+    }
+    
+    public int getContactCount() {
+        return contactCount;
+    }
+    
+    public double getLatitude() {
+        return latitude;
+    }
+    
+    public double getLongitude() {
+        return longitude;
+    }
+    
+    public float getAccuracy() {
+        return accuracy;
+    }
+    
+    public long getUnchangedSinceMillis() {
+        return unchangedSinceMillis;
+    }
+    
+    public boolean isHeartbeat() {
+        return unchangedSinceMillis != 0;
+    }
+    
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+    
+    public long getSizeMegabytes() {
+        return sizeBytes / (1024 * 1024);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.example.permissionapp.storage;
+
+/**
+ * 收集的数据类型
+ * code 写入二进制记录，name 与旧版 JSON 中的 data_type 保持一致
+ */
+public enum DataType {
+    CONTACT_COUNT(1, "READ_CONTACTS", "contact_count"),
+    APPROXIMATE_LOCATION(2, "ACCESS_FINE_LOCATION", "approximate_location"),
+    APP_STORAGE_INFO(3, "READ_EXTERNAL_STORAGE", "app_storage_info");
+    
+    private static final DataType[] BY_CODE = new DataType[4];
+    
+    static {
+        for (DataType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+    
+    public final int code;
+    public final String permission;
+    public final String jsonName;
+    
+    DataType(int code, String permission, String jsonName) {
+        this.code = code;
+        this.permission = permission;
+        this.jsonName = jsonName;
+    }
+    
+    /**
+     * 按记录中的类型编码查找，未知编码返回 null
+     */
+    public static DataType fromCode(int code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+    
+    /**
+     * 按旧版 JSON 中的 data_type 查找，未知名称返回 null
+     */
+    public static DataType fromJsonName(String name) {
+        for (DataType type : values()) {
+            if (type.jsonName.equals(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+} 
\ No newline at end of file
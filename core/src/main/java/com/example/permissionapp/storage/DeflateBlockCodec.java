@@ -0,0 +1,69 @@
+package com.example.permissionapp.storage;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate 块压缩，不带 zlib 头和校验（块长度另行记录）
+ * 压缩器和解压器按需创建并重复使用
+ */
+final class DeflateBlockCodec implements BlockCodec {
+    
+    private Deflater deflater;
+    private Inflater inflater;
+    
+    @Override
+    public int id() {
+        return DEFLATE;
+    }
+    
+    @Override
+    public int compress(byte[] input, int length, byte[] output) {
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        }
+        deflater.reset();
+        deflater.setInput(input, 0, length);
+        deflater.finish();
+        int n = deflater.deflate(output, 0, output.length);
+        return deflater.finished() ? n : -1;
+    }
+    
+    @Override
+    public void decompress(byte[] input, int length, byte[] output, int rawLength) throws IOException {
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        inflater.reset();
+        inflater.setInput(input, 0, length);
+        try {
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                int read = inflater.inflate(output, n, rawLength - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != rawLength) {
+                throw new IOException("block inflated to " + n + " bytes, expected " + rawLength);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt block: " + e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public void close() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,276 @@
+package com.example.permissionapp.storage;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 目录大小计算
+ * 迭代遍历代替递归；按路径缓存每个目录的直接文件大小和子目录列表，
+ * 目录的 lastModified 未变时不再 listFiles 和逐个读取文件长度，重复计算的开销约等于变化目录的数量。
+ * 目录的 lastModified 只在增删改名子项时变化，原地追加写的文件不会改变它，所以：
+ * 含有近期修改过的文件的目录视为“热”目录，每次都重新列出；其他缓存条目超过最长有效期后也会重新列出
+ */
+public class DirectorySizer {
+    
+    // 上次统计的文件数超过该值时，对顶层子目录并行计算
+    private static final int PARALLEL_FILE_THRESHOLD = 10_000;
+    private static final int PARALLEL_MAX_DEPTH = 2;
+    
+    /**
+     * 单个目录的缓存条目
+     */
+    private static final class DirEntry {
+        final long lastModified;
+        final long directBytes;
+        final int directFiles;
+        final String[] childDirs;
+        final long listedAt;
+        final boolean hot;
+        
+        DirEntry(long lastModified, long directBytes, int directFiles, String[] childDirs, long listedAt, boolean hot) {
+            this.lastModified = lastModified;
+            this.directBytes = directBytes;
+            this.directFiles = directFiles;
+            this.childDirs = childDirs;
+            this.listedAt = listedAt;
+            this.hot = hot;
+        }
+    }
+    
+    /**
+     * 一次计算的结果
+     */
+    public static class Result {
+        public final long bytes;
+        public final long files;
+        public final long directories;
+        public final long directoriesListed;
+        public final long cacheHits;
+        public final long elapsedNanos;
+        public final boolean parallel;
+        
+        Result(long bytes, long files, long directories, long directoriesListed, long cacheHits,
+               long elapsedNanos, boolean parallel) {
+            this.bytes = bytes;
+            this.files = files;
+            this.directories = directories;
+            this.directoriesListed = directoriesListed;
+            this.cacheHits = cacheHits;
+            this.elapsedNanos = elapsedNanos;
+            this.parallel = parallel;
+        }
+    }
+    
+    /**
+     * 累计统计
+     */
+    public static class Stats {
+        public final long measurements;
+        public final long filesVisited;
+        public final long directoriesListed;
+        public final long cacheHits;
+        
+        Stats(long measurements, long filesVisited, long directoriesListed, long cacheHits) {
+            this.measurements = measurements;
+            this.filesVisited = filesVisited;
+            this.directoriesListed = directoriesListed;
+            this.cacheHits = cacheHits;
+        }
+    }
+    
+    private final ConcurrentHashMap<String, DirEntry> cache = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> lastFileCounts = new ConcurrentHashMap<>();
+    private final long maxEntryAgeMillis;
+    private final long hotWindowMillis;
+    private final ForkJoinPool pool;
+    
+    private final AtomicLong measurements = new AtomicLong();
+    private final AtomicLong filesVisited = new AtomicLong();
+    private final AtomicLong directoriesListed = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    
+    /**
+     * @param maxEntryAgeMillis 缓存条目的最长有效期
+     * @param hotWindowMillis   目录中有文件在这段时间内修改过时视为热目录，不使用缓存
+     */
+    public DirectorySizer(long maxEntryAgeMillis, long hotWindowMillis) {
+        this(maxEntryAgeMillis, hotWindowMillis, ForkJoinPool.commonPool());
+    }
+    
+    public DirectorySizer(long maxEntryAgeMillis, long hotWindowMillis, ForkJoinPool pool) {
+        this.maxEntryAgeMillis = maxEntryAgeMillis;
+        this.hotWindowMillis = hotWindowMillis;
+        this.pool = pool;
+    }
+    
+    /**
+     * 计算目录下所有文件的总大小
+     */
+    public Result measure(File root) {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        Long previousFiles = lastFileCounts.get(root.getPath());
+        boolean parallel = previousFiles != null && previousFiles >= PARALLEL_FILE_THRESHOLD;
+        
+        long[] totals;
+        if (!root.isDirectory()) {
+            totals = new long[4];
+        } else if (parallel) {
+            totals = pool.invoke(new WalkTask(root, 0, now));
+        } else {
+            totals = walk(root, 0, now, null);
+        }
+        
+        lastFileCounts.put(root.getPath(), totals[1]);
+        measurements.incrementAndGet();
+        return new Result(totals[0], totals[1], totals[2], totals[3], totals[2] - totals[3],
+                System.nanoTime() - start, parallel);
+    }
+    
+    /**
+     * 不使用缓存的精确计算，显式栈代替递归
+     */
+    public static long sizeOf(File root) {
+        long size = 0;
+        ArrayDeque<File> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            File[] files = stack.pop().listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (file.isFile()) {
+                    size += file.length();
+                } else if (file.isDirectory()) {
+                    stack.push(file);
+                }
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * 丢弃全部缓存
+     */
+    public void invalidate() {
+        cache.clear();
+        lastFileCounts.clear();
+    }
+    
+    public Stats getStats() {
+        return new Stats(measurements.get(), filesVisited.get(), directoriesListed.get(), cacheHits.get());
+    }
+    
+    /**
+     * 迭代遍历 root 子树
+     *
+     * @param forks 非空时，深度不超过 PARALLEL_MAX_DEPTH 的子目录作为并行任务放入其中，不在本次遍历
+     * @return {字节数, 文件数, 目录数, 实际列出的目录数}
+     */
+    private long[] walk(File root, int rootDepth, long now, List<WalkTask> forks) {
+        long[] totals = new long[4];
+        ArrayDeque<File> stack = new ArrayDeque<>();
+        ArrayDeque<Integer> depths = new ArrayDeque<>();
+        stack.push(root);
+        depths.push(rootDepth);
+        while (!stack.isEmpty()) {
+            File dir = stack.pop();
+            int depth = depths.pop();
+            DirEntry entry = entryFor(dir, now);
+            if (entry == null) {
+                continue;
+            }
+            totals[0] += entry.directBytes;
+            totals[1] += entry.directFiles;
+            totals[2]++;
+            if (entry.listedAt == now) {
+                totals[3]++;
+            }
+            for (String child : entry.childDirs) {
+                File childDir = new File(dir, child);
+                if (forks != null && depth < PARALLEL_MAX_DEPTH) {
+                    forks.add(new WalkTask(childDir, depth + 1, now));
+                } else {
+                    stack.push(childDir);
+                    depths.push(depth + 1);
+                }
+            }
+        }
+        return totals;
+    }
+    
+    /**
+     * 取目录的缓存条目，失效时重新列出
+     */
+    private DirEntry entryFor(File dir, long now) {
+        String path = dir.getPath();
+        long lastModified = dir.lastModified();
+        DirEntry cached = cache.get(path);
+        if (cached != null && !cached.hot && cached.lastModified == lastModified
+                && now - cached.listedAt <= maxEntryAgeMillis) {
+            cacheHits.incrementAndGet();
+            return cached;
+        }
+        
+        File[] children = dir.listFiles();
+        if (children == null) {
+            cache.remove(path);
+            return null;
+        }
+        directoriesListed.incrementAndGet();
+        long bytes = 0;
+        int files = 0;
+        boolean hot = false;
+        List<String> childDirs = new ArrayList<>();
+        for (File child : children) {
+            if (child.isFile()) {
+                bytes += child.length();
+                files++;
+                if (now - child.lastModified() < hotWindowMillis) {
+                    hot = true;
+                }
+            } else if (child.isDirectory()) {
+                childDirs.add(child.getName());
+            }
+        }
+        filesVisited.addAndGet(files);
+        DirEntry entry = new DirEntry(lastModified, bytes, files, childDirs.toArray(new String[0]), now, hot);
+        cache.put(path, entry);
+        return entry;
+    }
+    
+    private final class WalkTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+        
+        private final File root;
+        private final int depth;
+        private final long now;
+        
+        WalkTask(File root, int depth, long now) {
+            this.root = root;
+            this.depth = depth;
+            this.now = now;
+        }
+        
+        @Override
+        protected long[] compute() {
+            List<WalkTask> forks = new ArrayList<>();
+            long[] totals = walk(root, depth, now, forks);
+            invokeAll(forks);
+            for (WalkTask fork : forks) {
+                long[] sub = fork.join();
+                for (int i = 0; i < totals.length; i++) {
+                    totals[i] += sub[i];
+                }
+            }
+            return totals;
+        }
+    }
+} 
\ No newline at end of file
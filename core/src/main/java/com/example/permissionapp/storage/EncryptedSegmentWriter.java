@@ -0,0 +1,267 @@
+package com.example.permissionapp.storage;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * 加密存储的活动段写入器
+ * 数据文件只有文件头和加密帧，每次组提交写入一帧（见 JournalWriter.setFrameCipher），不单独保存索引。
+ * 活动段内容同时保留一份明文副本，读取活动段不需要解密；段的大小有上限，副本的内存占用也有上限。
+ * 重新打开时逐帧解密重建副本，第一帧不完整或认证失败处截断文件
+ */
+final class EncryptedSegmentWriter implements ActiveSegment {
+    
+    // 文件头与明文段不同，避免被当作明文记录读取
+    static final byte[] FILE_HEADER = {'P', 'R', 'M', 'E', 1};
+    
+    private final SegmentInfo info;
+    private final File dataFile;
+    private final JournalWriter data;
+    private final ByteBuffer encodeBuffer = ByteBuffer.allocate(RecordCodec.MAX_RECORD_SIZE);
+    
+    // 明文副本：已写入记录的编码和每条记录的起始位置；扩容时换新数组，已打开的读取器继续用旧数组
+    private byte[] plain;
+    private long[] offsets;
+    private int plainSize;
+    private int count;
+    
+    private long recoveryScannedBytes;
+    private long recoveryTruncatedBytes;
+    private boolean closed = false;
+    
+    EncryptedSegmentWriter(File directory, SegmentInfo info, JournalWriter.FlushPolicy policy,
+                           ChunkCipher cipher) throws IOException {
+        this.info = info;
+        this.dataFile = info.dataFile(directory);
+        recover(cipher);
+        this.data = new JournalWriter(dataFile, policy, FILE_HEADER);
+        this.data.setFrameCipher(cipher, info.fileNumber);
+    }
+    
+    private void recover(ChunkCipher cipher) throws IOException {
+        info.reset();
+        Frames frames = decryptFrames(dataFile, cipher, info.fileNumber, false);
+        plain = frames.plain;
+        offsets = frames.offsets;
+        plainSize = frames.plainSize;
+        count = frames.count;
+        ByteBuffer contents = ByteBuffer.wrap(plain, 0, plainSize);
+        DataRecord record = new DataRecord();
+        for (int i = 0; i < count; i++) {
+            int offset = (int) offsets[i];
+            contents.position(offset);
+            RecordCodec.decode(contents, record);
+            info.onAppend(record, contents.position() - offset);
+        }
+        recoveryScannedBytes = frames.fileLength;
+        if (frames.validLength < frames.fileLength) {
+            try (RandomAccessFile raf = new RandomAccessFile(dataFile, "rw")) {
+                raf.setLength(frames.validLength);
+                raf.getFD().sync();
+            }
+            recoveryTruncatedBytes = frames.fileLength - frames.validLength;
+        }
+    }
+    
+    @Override
+    public SegmentInfo getInfo() {
+        return info;
+    }
+    
+    @Override
+    public JournalWriter getJournal() {
+        return data;
+    }
+    
+    @Override
+    public void append(DataRecord record) throws IOException {
+        encodeBuffer.clear();
+        int size = RecordCodec.encode(record, encodeBuffer);
+        encodeBuffer.flip();
+        data.append(encodeBuffer);
+        if (plainSize + size > plain.length) {
+            byte[] grown = new byte[Math.max(plain.length * 2, plainSize + size)];
+            System.arraycopy(plain, 0, grown, 0, plainSize);
+            plain = grown;
+        }
+        if (count == offsets.length) {
+            long[] grown = new long[offsets.length * 2];
+            System.arraycopy(offsets, 0, grown, 0, count);
+            offsets = grown;
+        }
+        System.arraycopy(encodeBuffer.array(), 0, plain, plainSize, size);
+        offsets[count++] = plainSize;
+        plainSize += size;
+        info.onAppend(record, size);
+    }
+    
+    @Override
+    public void appendBatch(DataRecord[] records, int count) throws IOException {
+        synchronized (data) {
+            for (int i = 0; i < count; i++) {
+                append(records[i]);
+            }
+            data.flush();
+        }
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        data.flush();
+    }
+    
+    /**
+     * 明文副本的快照，不需要先 flush；副本只在末尾追加，已捕获的前缀不会再改变
+     */
+    @Override
+    public StoreSnapshot.SegmentOpener snapshot() {
+        byte[] contents = plain;
+        long[] starts = offsets;
+        int size = plainSize;
+        int records = count;
+        return () -> new HeapSegment(ByteBuffer.wrap(contents, 0, size), starts, records);
+    }
+    
+    @Override
+    public long getRecoveryScannedBytes() {
+        return recoveryScannedBytes;
+    }
+    
+    @Override
+    public long getRecoveryTruncatedBytes() {
+        return recoveryTruncatedBytes;
+    }
+    
+    @Override
+    public void seal() throws IOException {
+        try {
+            if (!closed) {
+                data.sync();
+            }
+        } finally {
+            close();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        data.close();
+    }
+    
+    /**
+     * 解密一个已封存的加密段，内容读入内存
+     * 文件不存在时抛出异常（段已被合并或改写）；封存前已经同步落盘，不完整或认证失败的帧说明文件已损坏，
+     * 同样抛出异常，不像恢复活动段那样截掉尾部当作有效内容
+     */
+    static HeapSegment readSealed(File dataFile, ChunkCipher cipher, long fileNumber) throws IOException {
+        if (!dataFile.exists()) {
+            throw new FileNotFoundException(dataFile.getPath());
+        }
+        Frames frames = decryptFrames(dataFile, cipher, fileNumber, true);
+        return new HeapSegment(ByteBuffer.wrap(frames.plain, 0, frames.plainSize), frames.offsets, frames.count);
+    }
+    
+    /**
+     * 逐帧解密的结果；validLength 之后是不完整或认证失败的帧
+     */
+    private static final class Frames {
+        byte[] plain = new byte[4096];
+        long[] offsets = new long[64];
+        int plainSize;
+        int count;
+        long fileLength;
+        long validLength;
+    }
+    
+    /**
+     * @param strict 为 true 时遇到不完整或认证失败的帧抛出异常，否则在此停止，之后的内容留给调用方截掉
+     */
+    private static Frames decryptFrames(File file, ChunkCipher cipher, long fileNumber, boolean strict) throws IOException {
+        Frames frames = new Frames();
+        if (!file.exists()) {
+            return frames;
+        }
+        byte[] bytes;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() > Integer.MAX_VALUE) {
+                throw new IOException("segment too large: " + file);
+            }
+            bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+        }
+        frames.fileLength = bytes.length;
+        if (bytes.length < FILE_HEADER.length) {
+            if (strict) {
+                throw new IOException("missing file header: " + file);
+            }
+            // 文件头都没写完，当作空段
+            return frames;
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        for (byte b : FILE_HEADER) {
+            if (in.get() != b) {
+                throw new IOException("not an encrypted segment: " + file);
+            }
+        }
+        
+        int position = FILE_HEADER.length;
+        DataRecord record = new DataRecord();
+        while (bytes.length - position >= JournalWriter.FRAME_LENGTH_SIZE) {
+            int plainLength = in.getInt(position);
+            int frameEnd = position + JournalWriter.FRAME_LENGTH_SIZE + ChunkCipher.OVERHEAD + plainLength;
+            if (plainLength < 0 || frameEnd > bytes.length || frameEnd < position) {
+                if (strict) {
+                    throw new IOException("partial frame at " + position + ": " + file);
+                }
+                break;
+            }
+            if (frames.plainSize + plainLength > frames.plain.length) {
+                byte[] grown = new byte[Math.max(frames.plain.length * 2, frames.plainSize + plainLength)];
+                System.arraycopy(frames.plain, 0, grown, 0, frames.plainSize);
+                frames.plain = grown;
+            }
+            in.limit(frameEnd).position(position + JournalWriter.FRAME_LENGTH_SIZE);
+            ByteBuffer out = ByteBuffer.wrap(frames.plain, frames.plainSize, plainLength);
+            try {
+                cipher.decrypt(in, out, fileNumber, position);
+            } catch (IOException e) {
+                if (strict) {
+                    throw new IOException("bad frame at " + position + ": " + file, e);
+                }
+                break;
+            } finally {
+                in.limit(bytes.length);
+            }
+            
+            // 帧已通过认证，其中的记录必定完整
+            ByteBuffer contents = ByteBuffer.wrap(frames.plain, 0, frames.plainSize + plainLength);
+            contents.position(frames.plainSize);
+            while (contents.hasRemaining()) {
+                if (frames.count == frames.offsets.length) {
+                    long[] grown = new long[frames.offsets.length * 2];
+                    System.arraycopy(frames.offsets, 0, grown, 0, frames.count);
+                    frames.offsets = grown;
+                }
+                frames.offsets[frames.count] = contents.position();
+                if (!RecordCodec.decode(contents, record)) {
+                    throw new IOException("partial record in frame at " + position + ": " + file);
+                }
+                frames.count++;
+            }
+            frames.plainSize += plainLength;
+            position = frameEnd;
+        }
+        frames.validLength = position;
+        if (strict && position != bytes.length) {
+            throw new IOException("partial frame at " + position + ": " + file);
+        }
+        return frames;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.example.permissionapp.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 已在内存中的段内容：加密活动段的明文副本，或解密后的已封存加密段
+ */
+final class HeapSegment implements SegmentSource {
+    
+    private final ByteBuffer data;
+    private final long[] offsets;
+    private final int count;
+    
+    /**
+     * @param offsets 每条记录在 data 中的起始位置，只使用前 count 个
+     */
+    HeapSegment(ByteBuffer data, long[] offsets, int count) {
+        this.data = data;
+        this.offsets = offsets;
+        this.count = count;
+    }
+    
+    @Override
+    public long getCount() {
+        return count;
+    }
+    
+    @Override
+    public void read(long ordinal, DataRecord into) throws IOException {
+        int offset = (int) offsets[(int) ordinal];
+        data.position(offset);
+        if (!RecordCodec.decode(data, into)) {
+            throw new EOFException("truncated record at offset " + offset);
+        }
+    }
+    
+    @Override
+    public long timestampOf(long ordinal) {
+        data.position((int) offsets[(int) ordinal]);
+        return RecordCodec.peekTimestamp(data);
+    }
+    
+    @Override
+    public void close() {
+    }
+} 
\ No newline at end of file
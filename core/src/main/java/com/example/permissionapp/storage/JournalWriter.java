@@ -0,0 +1,419 @@
+package com.example.permissionapp.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 追加写日志
+ * 长期持有一个 FileChannel 和一块可复用的直接缓冲区，相近时间到达的记录合并为一次写入（组提交）。
+ * 设置帧加密后，每次写入的缓冲区内容作为一帧整体加密：帧长度(u32，明文字节数) + ChunkCipher 的输出
+ */
+public class JournalWriter implements Closeable {
+    
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    static final int FRAME_LENGTH_SIZE = 4;
+    
+    /**
+     * 刷盘方式
+     */
+    public enum FlushMode {
+        /** 每条记录都立即写入 */
+        PER_RECORD,
+        /** 第一条记录进入缓冲区后等待固定时间再统一写入 */
+        TIME_WINDOW,
+        /** 缓冲区积累到指定字节数再写入 */
+        SIZE_WINDOW
+    }
+    
+    /**
+     * 刷盘策略
+     */
+    public static class FlushPolicy {
+        public final FlushMode mode;
+        public final long windowMillis;
+        public final int windowBytes;
+        public final boolean fsync;
+        
+        private FlushPolicy(FlushMode mode, long windowMillis, int windowBytes, boolean fsync) {
+            this.mode = mode;
+            this.windowMillis = windowMillis;
+            this.windowBytes = windowBytes;
+            this.fsync = fsync;
+        }
+        
+        public static FlushPolicy perRecord(boolean fsync) {
+            return new FlushPolicy(FlushMode.PER_RECORD, 0, 0, fsync);
+        }
+        
+        public static FlushPolicy timeWindow(long windowMillis, boolean fsync) {
+            if (windowMillis <= 0) {
+                throw new IllegalArgumentException("windowMillis must be positive");
+            }
+            return new FlushPolicy(FlushMode.TIME_WINDOW, windowMillis, 0, fsync);
+        }
+        
+        public static FlushPolicy sizeWindow(int windowBytes, boolean fsync) {
+            if (windowBytes <= 0) {
+                throw new IllegalArgumentException("windowBytes must be positive");
+            }
+            return new FlushPolicy(FlushMode.SIZE_WINDOW, 0, windowBytes, fsync);
+        }
+        
+        @Override
+        public String toString() {
+            switch (mode) {
+                case TIME_WINDOW:
+                    return "TIME_WINDOW(" + windowMillis + "ms, fsync=" + fsync + ")";
+                case SIZE_WINDOW:
+                    return "SIZE_WINDOW(" + windowBytes + "B, fsync=" + fsync + ")";
+                default:
+                    return "PER_RECORD(fsync=" + fsync + ")";
+            }
+        }
+    }
+    
+    /**
+     * 刷盘回调，在缓冲区写入文件（以及 fsync）之后、持有日志锁时调用
+     */
+    public interface FlushListener {
+        void onFlushed() throws IOException;
+    }
+    
+    /**
+     * 写入统计快照
+     */
+    public static class Stats {
+        public static final Stats EMPTY = new Stats(0, 0, 0, 0, 0, 0, 0);
+        
+        public final long recordsAppended;
+        public final long bytesWritten;
+        public final long flushCount;
+        public final long syncCount;
+        public final long lastFlushNanos;
+        public final long maxFlushNanos;
+        public final long totalFlushNanos;
+        
+        Stats(long recordsAppended, long bytesWritten, long flushCount, long syncCount,
+              long lastFlushNanos, long maxFlushNanos, long totalFlushNanos) {
+            this.recordsAppended = recordsAppended;
+            this.bytesWritten = bytesWritten;
+            this.flushCount = flushCount;
+            this.syncCount = syncCount;
+            this.lastFlushNanos = lastFlushNanos;
+            this.maxFlushNanos = maxFlushNanos;
+            this.totalFlushNanos = totalFlushNanos;
+        }
+        
+        /**
+         * 合并两份统计，用于累计多个文件的写入
+         */
+        public Stats plus(Stats other) {
+            return new Stats(recordsAppended + other.recordsAppended, bytesWritten + other.bytesWritten,
+                    flushCount + other.flushCount, syncCount + other.syncCount, other.lastFlushNanos,
+                    Math.max(maxFlushNanos, other.maxFlushNanos), totalFlushNanos + other.totalFlushNanos);
+        }
+        
+        /** 平均每次刷盘合并的记录数 */
+        public double recordsPerFlush() {
+            return flushCount == 0 ? 0 : recordsAppended / (double) flushCount;
+        }
+        
+        /** 平均刷盘耗时，单位毫秒 */
+        public double averageFlushMillis() {
+            return flushCount == 0 ? 0 : totalFlushNanos / (double) flushCount / 1_000_000.0;
+        }
+    }
+    
+    private final File file;
+    private final FlushPolicy policy;
+    private final FileOutputStream stream;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final byte[] header;
+    private final ScheduledExecutorService flushScheduler;
+    
+    private FlushListener flushListener;
+    private ChunkCipher frameCipher;
+    private long frameContext;
+    private ByteBuffer frameBuffer;
+    
+    // 已写入文件的字节数，加上缓冲区内的字节即为下一条记录的偏移量
+    private long fileSize;
+    private boolean flushScheduled = false;
+    private boolean closed = false;
+    private IOException pendingError;
+    
+    private long recordsAppended = 0;
+    private long bytesWritten = 0;
+    private long flushCount = 0;
+    private long syncCount = 0;
+    private long lastFlushNanos = 0;
+    private long maxFlushNanos = 0;
+    private long totalFlushNanos = 0;
+    
+    private final Runnable scheduledFlush = this::runScheduledFlush;
+    
+    public JournalWriter(File file, FlushPolicy policy) throws IOException {
+        this(file, policy, null, DEFAULT_BUFFER_SIZE);
+    }
+    
+    /**
+     * @param header 文件为空时（新建或清空后）先写入的文件头，可以为 null
+     */
+    public JournalWriter(File file, FlushPolicy policy, byte[] header) throws IOException {
+        this(file, policy, header, DEFAULT_BUFFER_SIZE);
+    }
+    
+    public JournalWriter(File file, FlushPolicy policy, byte[] header, int bufferSize) throws IOException {
+        this.file = file;
+        this.policy = policy;
+        this.header = header;
+        this.stream = new FileOutputStream(file, true);
+        this.channel = stream.getChannel();
+        this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, policy.windowBytes));
+        try {
+            this.fileSize = channel.size();
+            writeHeaderIfEmpty();
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+        if (policy.mode == FlushMode.TIME_WINDOW) {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "journal-flush");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            this.flushScheduler = scheduler;
+        } else {
+            this.flushScheduler = null;
+        }
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    public FlushPolicy getPolicy() {
+        return policy;
+    }
+    
+    public synchronized void setFlushListener(FlushListener listener) {
+        this.flushListener = listener;
+    }
+    
+    /**
+     * 之后的每次写入都加密为一帧，加密开销按批次而不是按记录计算
+     * 设置后 append 返回的偏移量不再对应文件位置，调用方需要自己记录明文中的位置
+     *
+     * @param context 写入每帧附加认证数据的文件标识
+     */
+    public synchronized void setFrameCipher(ChunkCipher cipher, long context) {
+        this.frameCipher = cipher;
+        this.frameContext = context;
+        this.frameBuffer = ByteBuffer.allocateDirect(FRAME_LENGTH_SIZE + buffer.capacity() + ChunkCipher.OVERHEAD);
+    }
+    
+    /**
+     * 逻辑长度：已写入文件的字节加上缓冲区中尚未写入的字节
+     */
+    public synchronized long size() {
+        return fileSize + buffer.position();
+    }
+    
+    /**
+     * 追加一条记录，是否立即落盘由刷盘策略决定
+     *
+     * @return 记录在文件中的起始偏移量
+     */
+    public long append(byte[] record) throws IOException {
+        return append(record, 0, record.length);
+    }
+    
+    public synchronized long append(byte[] record, int offset, int length) throws IOException {
+        return append(ByteBuffer.wrap(record, offset, length));
+    }
+    
+    /**
+     * 追加缓冲区中剩余的全部字节作为一条记录
+     *
+     * @return 记录在文件中的起始偏移量
+     */
+    public synchronized long append(ByteBuffer record) throws IOException {
+        ensureOpen();
+        int length = record.remaining();
+        if (length > buffer.remaining()) {
+            flushLocked();
+        }
+        long offset = fileSize + buffer.position();
+        if (length > buffer.capacity()) {
+            if (frameCipher != null) {
+                throw new IllegalArgumentException("record larger than frame buffer: " + length);
+            }
+            // 超过缓冲区的大记录直接写入
+            writeFully(record);
+        } else {
+            buffer.put(record);
+        }
+        recordsAppended++;
+        afterAppend();
+        return offset;
+    }
+    
+    private void afterAppend() throws IOException {
+        switch (policy.mode) {
+            case PER_RECORD:
+                flushLocked();
+                break;
+            case SIZE_WINDOW:
+                if (buffer.position() >= policy.windowBytes) {
+                    flushLocked();
+                }
+                break;
+            case TIME_WINDOW:
+                if (buffer.position() > 0 && !flushScheduled) {
+                    flushScheduled = true;
+                    flushScheduler.schedule(scheduledFlush, policy.windowMillis, TimeUnit.MILLISECONDS);
+                }
+                break;
+        }
+    }
+    
+    private void runScheduledFlush() {
+        synchronized (this) {
+            flushScheduled = false;
+            if (closed) {
+                return;
+            }
+            try {
+                flushLocked();
+            } catch (IOException e) {
+                // 定时刷盘没有调用方，错误留到下一次 append/flush 抛出
+                pendingError = e;
+            }
+        }
+    }
+    
+    /**
+     * 立即把缓冲区写入文件，按策略决定是否 fsync
+     */
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        flushLocked();
+    }
+    
+    /**
+     * 写入缓冲区并 fsync，不论刷盘策略是否要求；用于检查点和封存段
+     */
+    public synchronized void sync() throws IOException {
+        ensureOpen();
+        flushLocked();
+        channel.force(false);
+        syncCount++;
+    }
+    
+    private void flushLocked() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        buffer.flip();
+        try {
+            if (frameCipher != null) {
+                writeFrame(buffer);
+            } else {
+                writeFully(buffer);
+            }
+        } finally {
+            buffer.clear();
+        }
+        if (policy.fsync) {
+            channel.force(false);
+            syncCount++;
+        }
+        if (flushListener != null) {
+            flushListener.onFlushed();
+        }
+        long elapsed = System.nanoTime() - start;
+        flushCount++;
+        lastFlushNanos = elapsed;
+        maxFlushNanos = Math.max(maxFlushNanos, elapsed);
+        totalFlushNanos += elapsed;
+    }
+    
+    private void writeFrame(ByteBuffer plain) throws IOException {
+        frameBuffer.clear();
+        frameBuffer.putInt(plain.remaining());
+        frameCipher.encrypt(plain, frameBuffer, frameContext, fileSize);
+        frameBuffer.flip();
+        writeFully(frameBuffer);
+    }
+    
+    private void writeHeaderIfEmpty() throws IOException {
+        if (header != null && channel.size() == 0) {
+            writeFully(ByteBuffer.wrap(header));
+        }
+    }
+    
+    private void writeFully(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            int n = channel.write(src);
+            bytesWritten += n;
+            fileSize += n;
+        }
+    }
+    
+    /**
+     * 丢弃缓冲区并清空文件
+     */
+    public synchronized void truncate() throws IOException {
+        ensureOpen();
+        buffer.clear();
+        channel.truncate(0);
+        fileSize = 0;
+        writeHeaderIfEmpty();
+        if (policy.fsync) {
+            channel.force(false);
+        }
+    }
+    
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("journal closed: " + file);
+        }
+        if (pendingError != null) {
+            IOException e = pendingError;
+            pendingError = null;
+            throw e;
+        }
+    }
+    
+    public synchronized Stats getStats() {
+        return new Stats(recordsAppended, bytesWritten, flushCount, syncCount,
+                lastFlushNanos, maxFlushNanos, totalFlushNanos);
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flushLocked();
+        } finally {
+            closed = true;
+            if (flushScheduler != null) {
+                flushScheduler.shutdownNow();
+            }
+            stream.close();
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,157 @@
+package com.example.permissionapp.storage;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * 流式 JSON 编码器
+ * 只在查看或导出时把记录转换为 JSON，直接写入目标 Appendable，不构造中间字符串
+ * 每个实例持有自己的日期格式化器，不能跨线程共享
+ */
+public class JsonRecordEncoder {
+    
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private final boolean pretty;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+    private final Date date = new Date();
+    private boolean firstField;
+    
+    /**
+     * @param pretty true 时输出与旧版文件一致的两空格缩进格式，false 时每条记录一行（JSON Lines）
+     */
+    public JsonRecordEncoder(boolean pretty) {
+        this.pretty = pretty;
+    }
+    
+    /**
+     * 写出一条记录，末尾带换行
+     */
+    public void write(DataRecord record, Appendable out) throws IOException {
+        DataType type = record.getType();
+        out.append('{');
+        firstField = true;
+        writeString(out, "permission", type.permission);
+        writeString(out, "data_type", type.jsonName);
+        switch (type) {
+            case CONTACT_COUNT:
+                writeNumber(out, "value", record.getContactCount());
+                break;
+            case APPROXIMATE_LOCATION:
+                writeNumber(out, "latitude_rounded", record.getLatitude());
+                writeNumber(out, "longitude_rounded", record.getLongitude());
+                writeNumber(out, "accuracy", record.getAccuracy());
+                if (record.isHeartbeat()) {
+                    writeString(out, "unchanged_since", formatTimestamp(record.getUnchangedSinceMillis()));
+                }
+                break;
+            case APP_STORAGE_INFO:
+                writeNumber(out, "app_data_size_bytes", record.getSizeBytes());
+                writeNumber(out, "app_data_size_mb", record.getSizeMegabytes());
+                break;
+        }
+        writeString(out, "timestamp", formatTimestamp(record.getTimestampMillis()));
+        writeNumber(out, "timestamp_millis", record.getTimestampMillis());
+        beginField(out, "user_consent");
+        out.append(record.isUserConsent() ? "true" : "false");
+        if (pretty) {
+            out.append('\n');
+        }
+        out.append("}\n");
+    }
+    
+    /**
+     * 按本地时区格式化时间戳，只在输出时调用
+     */
+    public String formatTimestamp(long timestampMillis) {
+        date.setTime(timestampMillis);
+        return dateFormat.format(date);
+    }
+    
+    private void beginField(Appendable out, String key) throws IOException {
+        if (!firstField) {
+            out.append(',');
+        }
+        firstField = false;
+        if (pretty) {
+            out.append("\n  ");
+        }
+        writeEscaped(out, key);
+        out.append(pretty ? ": " : ":");
+    }
+    
+    private void writeString(Appendable out, String key, String value) throws IOException {
+        beginField(out, key);
+        writeEscaped(out, value);
+    }
+    
+    private void writeNumber(Appendable out, String key, long value) throws IOException {
+        beginField(out, key);
+        out.append(Long.toString(value));
+    }
+    
+    private void writeNumber(Appendable out, String key, float value) throws IOException {
+        beginField(out, key);
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            out.append("null");
+        } else {
+            out.append(Float.toString(value));
+        }
+    }
+    
+    private void writeNumber(Appendable out, String key, double value) throws IOException {
+        beginField(out, key);
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            // JSON 不支持 NaN/Infinity
+            out.append("null");
+        } else {
+            out.append(Double.toString(value));
+        }
+    }
+    
+    /**
+     * 按 RFC 8259 转义并加引号输出字符串
+     */
+    static void writeEscaped(Appendable out, CharSequence value) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        out.append("\\u")
+                           .append(HEX[(c >> 12) & 0xF])
+                           .append(HEX[(c >> 8) & 0xF])
+                           .append(HEX[(c >> 4) & 0xF])
+                           .append(HEX[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,217 @@
+package com.example.permissionapp.storage;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 旧版 collected_data.json 解码器
+ * 旧文件是多个手写拼接的平铺 JSON 对象，字符串没有转义，可能存在损坏的对象，
+ * 解码时逐个对象读取，遇到无法解析的对象跳过并计数
+ */
+public class LegacyJsonDecoder {
+    
+    private final Reader reader;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+    private final Map<String, Object> fields = new HashMap<>();
+    private final StringBuilder token = new StringBuilder();
+    private int peeked = -2;
+    private int skippedObjects = 0;
+    
+    public LegacyJsonDecoder(Reader reader) {
+        this.reader = reader;
+    }
+    
+    /**
+     * 读取下一条记录
+     *
+     * @return 读到记录返回 true，文件结束返回 false
+     */
+    public boolean next(DataRecord into) throws IOException {
+        while (true) {
+            int c = skipWhitespace();
+            if (c == -1) {
+                return false;
+            }
+            if (c != '{') {
+                read();
+                continue;
+            }
+            read();
+            fields.clear();
+            if (parseObjectBody() && toRecord(into)) {
+                return true;
+            }
+            skippedObjects++;
+        }
+    }
+    
+    /**
+     * 因格式损坏或类型未知而跳过的对象数
+     */
+    public int getSkippedObjects() {
+        return skippedObjects;
+    }
+    
+    private boolean parseObjectBody() throws IOException {
+        while (true) {
+            int c = skipWhitespace();
+            if (c == '}') {
+                read();
+                return true;
+            }
+            if (c == ',') {
+                read();
+                continue;
+            }
+            if (c != '"') {
+                return recover();
+            }
+            read();
+            String key = readString();
+            if (key == null || skipWhitespace() != ':') {
+                return recover();
+            }
+            read();
+            Object value = readValue();
+            if (value == null) {
+                return recover();
+            }
+            fields.put(key, value);
+        }
+    }
+    
+    /**
+     * 丢弃到当前对象结束或下一个对象开始
+     */
+    private boolean recover() throws IOException {
+        int c;
+        while ((c = peek()) != -1) {
+            if (c == '{') {
+                return false;
+            }
+            read();
+            if (c == '}') {
+                return false;
+            }
+        }
+        return false;
+    }
+    
+    private Object readValue() throws IOException {
+        int c = skipWhitespace();
+        if (c == '"') {
+            read();
+            return readString();
+        }
+        token.setLength(0);
+        while ((c = peek()) != -1 && c != ',' && c != '}' && c != '\n' && c != '\r') {
+            token.append((char) read());
+        }
+        String raw = token.toString().trim();
+        if (raw.equals("true")) {
+            return Boolean.TRUE;
+        }
+        if (raw.equals("false")) {
+            return Boolean.FALSE;
+        }
+        try {
+            return Double.parseDouble(raw);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 读取字符串剩余部分（开头的引号已读），旧版没有转义，遇到换行视为损坏
+     */
+    private String readString() throws IOException {
+        token.setLength(0);
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '"') {
+                return token.toString();
+            }
+            if (c == '\n') {
+                return null;
+            }
+            if (c == '\\') {
+                int escaped = read();
+                if (escaped == -1) {
+                    return null;
+                }
+                token.append(escaped == 'n' ? '\n' : escaped == 't' ? '\t' : (char) escaped);
+                continue;
+            }
+            token.append((char) c);
+        }
+        return null;
+    }
+    
+    private boolean toRecord(DataRecord into) {
+        Object dataType = fields.get("data_type");
+        DataType type = dataType instanceof String ? DataType.fromJsonName((String) dataType) : null;
+        if (type == null) {
+            return false;
+        }
+        into.clear();
+        into.setType(type);
+        into.setTimestampMillis(parseTimestamp(fields.get("timestamp")));
+        into.setUserConsent(Boolean.TRUE.equals(fields.get("user_consent")));
+        switch (type) {
+            case CONTACT_COUNT:
+                into.setContactCount((int) number("value"));
+                break;
+            case APPROXIMATE_LOCATION:
+                into.setLatitude(number("latitude_rounded"));
+                into.setLongitude(number("longitude_rounded"));
+                into.setAccuracy((float) number("accuracy"));
+                break;
+            case APP_STORAGE_INFO:
+                into.setSizeBytes((long) number("app_data_size_bytes"));
+                break;
+        }
+        return true;
+    }
+    
+    private double number(String key) {
+        Object value = fields.get(key);
+        return value instanceof Double ? (Double) value : 0;
+    }
+    
+    private long parseTimestamp(Object value) {
+        if (value instanceof String) {
+            try {
+                return dateFormat.parse((String) value).getTime();
+            } catch (ParseException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+    
+    private int skipWhitespace() throws IOException {
+        int c;
+        while ((c = peek()) != -1 && Character.isWhitespace(c)) {
+            read();
+        }
+        return c;
+    }
+    
+    private int peek() throws IOException {
+        if (peeked == -2) {
+            peeked = reader.read();
+        }
+        return peeked;
+    }
+    
+    private int read() throws IOException {
+        int c = peek();
+        peeked = -2;
+        return c;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,58 @@
+package com.example.permissionapp.storage;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 多生产者、单消费者的无锁队列（侵入式链表，元素自身就是节点，入队不分配对象）
+ * 生产者只对尾指针做一次 getAndSet，再把前一个节点接上，不会互相等待；
+ * 头指针只由消费者线程移动。入队到接上前一个节点之间有极短的窗口，此时消费者暂时看不到这个元素，
+ * 调用方需要在入队之后再检查消费者是否在等待（见 StoreWriter）。
+ * 取出的元素留作头部哨兵，直到下一次取出成功之后才能再次入队
+ */
+final class MpscQueue<T extends MpscQueue.Node> {
+    
+    static class Node {
+        volatile Node next;
+    }
+    
+    // 头节点是已取出的哨兵
+    private Node head;
+    private final AtomicReference<Node> tail;
+    
+    MpscQueue() {
+        Node stub = new Node();
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+    
+    /**
+     * 任意线程调用
+     */
+    void offer(T node) {
+        node.next = null;
+        Node previous = tail.getAndSet(node);
+        previous.next = node;
+    }
+    
+    /**
+     * 只在消费者线程上调用
+     *
+     * @return 队列为空（或下一个元素还没有接上）时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    T poll() {
+        Node next = head.next;
+        if (next == null) {
+            return null;
+        }
+        head = next;
+        return (T) next;
+    }
+    
+    /**
+     * 只在消费者线程上调用；有元素已入队但尚未接上时也返回 false
+     */
+    boolean isEmpty() {
+        return head.next == null && tail.get() == head;
+    }
+} 
\ No newline at end of file
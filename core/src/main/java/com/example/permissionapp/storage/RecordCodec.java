@@ -0,0 +1,270 @@
+package com.example.permissionapp.storage;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 二进制记录格式
+ *
+ * 文件头: magic "PRMD" + 格式版本(1 字节)
+ * 记录:   长度(u16，不含自身) + 类型编码(u8) + 时间戳毫秒(i64) + 标志位(u8) + 字段列表 [+ CRC32C(u32)]
+ * 字段:   标签(u8，高 5 位为字段ID，低 3 位为值类型) + 定长值
+ *
+ * 解码时跳过未知字段，新增字段不需要提升格式版本。
+ * 版本 2 起每条记录设置校验标志，末尾 4 字节是从长度前缀到字段列表结束的 CRC32C，
+ * 崩溃留下的残缺或错乱记录在解码时被识别；版本 1 的记录没有校验，仍可读取
+ */
+public final class RecordCodec {
+    
+    public static final int FORMAT_VERSION = 2;
+    public static final int HEADER_SIZE = 5;
+    private static final byte[] MAGIC = {'P', 'R', 'M', 'D'};
+    
+    /** 单条记录编码后的最大长度 */
+    public static final int MAX_RECORD_SIZE = 64;
+    
+    private static final int LENGTH_SIZE = 2;
+    private static final int CHECKSUM_SIZE = 4;
+    private static final int FLAG_USER_CONSENT = 1;
+    private static final int FLAG_CHECKSUM = 2;
+    
+    // 值类型
+    private static final int WIRE_I32 = 0;
+    private static final int WIRE_I64 = 1;
+    private static final int WIRE_F32 = 2;
+    private static final int WIRE_F64 = 3;
+    
+    // 字段ID
+    private static final int FIELD_CONTACT_COUNT = 1;
+    private static final int FIELD_LATITUDE = 2;
+    private static final int FIELD_LONGITUDE = 3;
+    private static final int FIELD_ACCURACY = 4;
+    private static final int FIELD_SIZE_BYTES = 5;
+    private static final int FIELD_UNCHANGED_SINCE = 6;
+    
+    private RecordCodec() {
+    }
+    
+    /**
+     * 写入文件头
+     */
+    public static byte[] fileHeader() {
+        byte[] header = new byte[HEADER_SIZE];
+        System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+        header[MAGIC.length] = FORMAT_VERSION;
+        return header;
+    }
+    
+    /**
+     * 校验文件头并返回格式版本
+     *
+     * @throws IllegalArgumentException 不是记录文件或版本过新
+     */
+    public static int readFileHeader(ByteBuffer in) {
+        if (in.remaining() < HEADER_SIZE) {
+            throw new IllegalArgumentException("file too short for header");
+        }
+        for (byte b : MAGIC) {
+            if (in.get() != b) {
+                throw new IllegalArgumentException("bad magic");
+            }
+        }
+        int version = in.get() & 0xFF;
+        if (version > FORMAT_VERSION) {
+            throw new IllegalArgumentException("unsupported format version " + version);
+        }
+        return version;
+    }
+    
+    /**
+     * 把记录编码到 out 的当前位置，不分配对象
+     *
+     * @return 写入的字节数
+     */
+    public static int encode(DataRecord record, ByteBuffer out) {
+        ByteOrder order = out.order();
+        out.order(ByteOrder.BIG_ENDIAN);
+        int start = out.position();
+        out.position(start + LENGTH_SIZE);
+        out.put((byte) record.getType().code);
+        out.putLong(record.getTimestampMillis());
+        out.put((byte) (FLAG_CHECKSUM | (record.isUserConsent() ? FLAG_USER_CONSENT : 0)));
+        switch (record.getType()) {
+            case CONTACT_COUNT:
+                out.put(tag(FIELD_CONTACT_COUNT, WIRE_I32));
+                out.putInt(record.getContactCount());
+                break;
+            case APPROXIMATE_LOCATION:
+                out.put(tag(FIELD_LATITUDE, WIRE_F64));
+                out.putDouble(record.getLatitude());
+                out.put(tag(FIELD_LONGITUDE, WIRE_F64));
+                out.putDouble(record.getLongitude());
+                out.put(tag(FIELD_ACCURACY, WIRE_F32));
+                out.putFloat(record.getAccuracy());
+                if (record.isHeartbeat()) {
+                    out.put(tag(FIELD_UNCHANGED_SINCE, WIRE_I64));
+                    out.putLong(record.getUnchangedSinceMillis());
+                }
+                break;
+            case APP_STORAGE_INFO:
+                out.put(tag(FIELD_SIZE_BYTES, WIRE_I64));
+                out.putLong(record.getSizeBytes());
+                break;
+        }
+        int bodyEnd = out.position();
+        int end = bodyEnd + CHECKSUM_SIZE;
+        out.putShort(start, (short) (end - start - LENGTH_SIZE));
+        out.putInt(Crc32c.compute(out, start, bodyEnd));
+        out.order(order);
+        return end - start;
+    }
+    
+    /**
+     * 记录编码后的字节数（含长度前缀）
+     */
+    public static int encodedSize(DataRecord record) {
+        int size = LENGTH_SIZE + 1 + 8 + 1 + CHECKSUM_SIZE;
+        switch (record.getType()) {
+            case CONTACT_COUNT:
+                return size + 1 + 4;
+            case APPROXIMATE_LOCATION:
+                return size + 1 + 8 + 1 + 8 + 1 + 4 + (record.isHeartbeat() ? 1 + 8 : 0);
+            case APP_STORAGE_INFO:
+                return size + 1 + 8;
+            default:
+                return size;
+        }
+    }
+    
+    /**
+     * 从 in 的当前位置解码一条记录到 into
+     *
+     * @return 成功解码返回 true；剩余字节不足一条完整记录时返回 false 且不移动位置
+     * @throws IllegalArgumentException 记录内容损坏或校验不符
+     */
+    public static boolean decode(ByteBuffer in, DataRecord into) {
+        int start = in.position();
+        if (in.remaining() < LENGTH_SIZE) {
+            return false;
+        }
+        ByteOrder order = in.order();
+        in.order(ByteOrder.BIG_ENDIAN);
+        try {
+            int length = in.getShort(start) & 0xFFFF;
+            if (in.remaining() < LENGTH_SIZE + length) {
+                return false;
+            }
+            int end = start + LENGTH_SIZE + length;
+            in.position(start + LENGTH_SIZE);
+            into.clear();
+            DataType type = DataType.fromCode(in.get() & 0xFF);
+            if (type == null) {
+                throw new IllegalArgumentException("unknown data type at offset " + start);
+            }
+            into.setType(type);
+            into.setTimestampMillis(in.getLong());
+            int flags = in.get() & 0xFF;
+            into.setUserConsent((flags & FLAG_USER_CONSENT) != 0);
+            if ((flags & FLAG_CHECKSUM) != 0) {
+                end -= CHECKSUM_SIZE;
+                if (end < in.position() || in.getInt(end) != Crc32c.compute(in, start, end)) {
+                    throw new IllegalArgumentException("checksum mismatch at offset " + start);
+                }
+            }
+            while (in.position() < end) {
+                int tag = in.get() & 0xFF;
+                readField(in, tag >>> 3, tag & 0x7, into);
+            }
+            if (in.position() != end) {
+                throw new IllegalArgumentException("record overruns its length at offset " + start);
+            }
+            in.position(start + LENGTH_SIZE + length);
+            return true;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated record at offset " + start);
+        } finally {
+            in.order(order);
+        }
+    }
+    
+    /**
+     * 读取 in 当前位置记录的总长度（含长度前缀），不足两个字节时返回 -1
+     */
+    public static int peekRecordSize(ByteBuffer in) {
+        if (in.remaining() < LENGTH_SIZE) {
+            return -1;
+        }
+        int p = in.position();
+        return LENGTH_SIZE + (((in.get(p) & 0xFF) << 8) | (in.get(p + 1) & 0xFF));
+    }
+    
+    /**
+     * 读取 in 当前位置记录的时间戳，不解码其余字段；调用方需确认记录完整
+     */
+    public static long peekTimestamp(ByteBuffer in) {
+        long timestamp = in.getLong(in.position() + LENGTH_SIZE + 1);
+        return in.order() == ByteOrder.BIG_ENDIAN ? timestamp : Long.reverseBytes(timestamp);
+    }
+    
+    private static void readField(ByteBuffer in, int fieldId, int wireType, DataRecord into) {
+        switch (fieldId) {
+            case FIELD_CONTACT_COUNT:
+                if (wireType == WIRE_I32) {
+                    into.setContactCount(in.getInt());
+                    return;
+                }
+                break;
+            case FIELD_LATITUDE:
+                if (wireType == WIRE_F64) {
+                    into.setLatitude(in.getDouble());
+                    return;
+                }
+                break;
+            case FIELD_LONGITUDE:
+                if (wireType == WIRE_F64) {
+                    into.setLongitude(in.getDouble());
+                    return;
+                }
+                break;
+            case FIELD_ACCURACY:
+                if (wireType == WIRE_F32) {
+                    into.setAccuracy(in.getFloat());
+                    return;
+                }
+                break;
+            case FIELD_SIZE_BYTES:
+                if (wireType == WIRE_I64) {
+                    into.setSizeBytes(in.getLong());
+                    return;
+                }
+                break;
+            case FIELD_UNCHANGED_SINCE:
+                if (wireType == WIRE_I64) {
+                    into.setUnchangedSince(in.getLong());
+                    return;
+                }
+                break;
+        }
+        skipValue(in, wireType);
+    }
+    
+    private static void skipValue(ByteBuffer in, int wireType) {
+        switch (wireType) {
+            case WIRE_I32:
+            case WIRE_F32:
+                in.position(in.position() + 4);
+                break;
+            case WIRE_I64:
+            case WIRE_F64:
+                in.position(in.position() + 8);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown wire type " + wireType);
+        }
+    }
+    
+    private static byte tag(int fieldId, int wireType) {
+        return (byte) (fieldId << 3 | wireType);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,195 @@
+package com.example.permissionapp.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 只读记录游标
+ * 跨多个段按全局序号读取记录，未压缩段以内存映射方式访问，压缩段每次只解压一块，打开时间和内存占用与历史长度无关；
+ * 支持按位置跳转、按序号随机读取、按时间二分查找、分页读取和从新到旧的反向遍历。
+ * 游标只看到打开时已写入的记录，之后被清除或过期的段仍可读到关闭为止
+ */
+public class RecordCursor implements Closeable {
+    
+    private final SegmentSource[] segments;
+    // starts[i] 为第 i 段第一条记录的全局序号，最后一个元素为记录总数
+    private final long[] starts;
+    private final long count;
+    
+    private boolean reverse = false;
+    private long position = 0;
+    private int currentSegment = 0;
+    
+    RecordCursor(List<SegmentSource> readers) {
+        this.segments = readers.toArray(new SegmentSource[0]);
+        this.starts = new long[segments.length + 1];
+        for (int i = 0; i < segments.length; i++) {
+            starts[i + 1] = starts[i] + segments[i].getCount();
+        }
+        this.count = starts[segments.length];
+    }
+    
+    /**
+     * 记录总数（打开游标时的快照）
+     */
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * true 时从最新的记录开始遍历
+     */
+    public void setReverse(boolean reverse) {
+        this.reverse = reverse;
+        this.position = 0;
+    }
+    
+    public boolean isReverse() {
+        return reverse;
+    }
+    
+    /**
+     * 跳到当前遍历顺序下的第 position 条记录（从 0 开始）
+     */
+    public void seek(long position) {
+        if (position < 0 || position > count) {
+            throw new IndexOutOfBoundsException("position " + position + " of " + count);
+        }
+        this.position = position;
+    }
+    
+    public long getPosition() {
+        return position;
+    }
+    
+    /**
+     * 读取下一条记录到 into
+     *
+     * @return 没有更多记录时返回 false
+     */
+    public boolean next(DataRecord into) throws IOException {
+        if (position >= count) {
+            return false;
+        }
+        read(reverse ? count - 1 - position : position, into);
+        position++;
+        return true;
+    }
+    
+    /**
+     * 按写入顺序的序号（0 为最旧）读取一条记录，不改变游标位置
+     */
+    public void read(long ordinal, DataRecord into) throws IOException {
+        if (ordinal < 0 || ordinal >= count) {
+            throw new IndexOutOfBoundsException("ordinal " + ordinal + " of " + count);
+        }
+        int segment = segmentOf(ordinal);
+        segments[segment].read(ordinal - starts[segment], into);
+    }
+    
+    /**
+     * 读取最新的 latest.length 条记录，从新到旧写入 latest，不改变游标位置
+     *
+     * @return 实际读取的记录数
+     */
+    public int readLatest(DataRecord[] latest) throws IOException {
+        int n = (int) Math.min(latest.length, count);
+        for (int i = 0; i < n; i++) {
+            read(count - 1 - i, latest[i]);
+        }
+        return n;
+    }
+    
+    /**
+     * 二分查找第一条时间戳不早于 timestampMillis 的记录，只读取 O(log n) 条记录的时间戳
+     * 记录按收集时间顺序写入；系统时间被回拨时结果只在时间戳单调的范围内精确
+     *
+     * @return 写入顺序的序号，所有记录都更早时返回 getCount()
+     */
+    public long findFirstAtOrAfter(long timestampMillis) throws IOException {
+        long lo = 0;
+        long hi = count;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            int segment = segmentOf(mid);
+            if (segments[segment].timestampOf(mid - starts[segment]) < timestampMillis) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    /**
+     * 按当前遍历方向跳到指定时间：正向时从第一条不早于该时间的记录开始，
+     * 反向时从最后一条不晚于该时间的记录开始
+     */
+    public void seekToTimestamp(long timestampMillis) throws IOException {
+        if (reverse) {
+            long after = timestampMillis == Long.MAX_VALUE ? count : findFirstAtOrAfter(timestampMillis + 1);
+            seek(count - after);
+        } else {
+            seek(findFirstAtOrAfter(timestampMillis));
+        }
+    }
+    
+    /**
+     * 读取第 pageNumber 页（从 0 开始），页大小为 page.length，结果写入 page 中已有的对象
+     *
+     * @return 本页实际读取的记录数
+     */
+    public int readPage(long pageNumber, DataRecord[] page) throws IOException {
+        long start = pageNumber * page.length;
+        if (start >= count) {
+            return 0;
+        }
+        seek(start);
+        int n = 0;
+        while (n < page.length && next(page[n])) {
+            n++;
+        }
+        return n;
+    }
+    
+    /**
+     * 按页大小计算的总页数
+     */
+    public long getPageCount(int pageSize) {
+        return (count + pageSize - 1) / pageSize;
+    }
+    
+    /**
+     * 查找全局序号所在的段，顺序遍历时直接命中上次的段
+     */
+    private int segmentOf(long ordinal) {
+        int hint = currentSegment;
+        if (ordinal >= starts[hint] && ordinal < starts[hint + 1]) {
+            return hint;
+        }
+        int lo = 0;
+        int hi = segments.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= ordinal) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        // 跳过空段
+        while (starts[lo + 1] <= ordinal) {
+            lo++;
+        }
+        currentSegment = lo;
+        return lo;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        for (SegmentSource segment : segments) {
+            segment.close();
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,222 @@
+package com.example.permissionapp.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 按时间范围和数据类型过滤的只读查询，结果按写入顺序（0 为最旧）编号
+ * 时间范围先按各段的最大时间戳找到段，再用段的稀疏时间索引定位到序号区间；指定类型时，
+ * 完整落在区间内的段直接用段统计计数，只有区间两端的段查位置表，读取第 n 条结果时用该段的位置表直接定位。
+ * 打开查询时只打开结果所在的段，不逐条解码历史记录，耗时与结果涉及的段数和读取的条数有关。
+ * 查询建立在打开时的快照上，之后写入的记录不会出现；段索引还没建好时在内存中从段内记录重建
+ */
+public final class RecordQuery implements Closeable {
+    
+    private final StoreSnapshot.Part[] parts;
+    private final DataType type;
+    // 各段第一条记录在快照中的序号，最后一项为快照的总条数
+    private final long[] starts;
+    // 结果所在的段在打开查询时打开，其余为 null
+    private final SegmentSource[] sources;
+    private final SegmentIndex[] indexes;
+    // 时间范围对应的序号区间 [first, end)
+    private final long first;
+    private final long end;
+    private final long count;
+    // 指定类型时：有结果的段、该段第一条结果在位置表中的序号、之前各段的结果数
+    private final int[] matchSegments;
+    private final int[] firstRanks;
+    private final long[] matchStarts;
+    
+    /**
+     * 打开失败时关闭已打开的段
+     *
+     * @param type       null 为全部类型
+     * @param fromMillis 不早于这个时间，Long.MIN_VALUE 为不限
+     * @param toMillis   早于这个时间，Long.MAX_VALUE 为不限
+     */
+    RecordQuery(StoreSnapshot.Part[] parts, DataType type, long fromMillis, long toMillis) throws IOException {
+        this.parts = parts;
+        this.type = type;
+        this.starts = new long[parts.length + 1];
+        this.sources = new SegmentSource[parts.length];
+        this.indexes = new SegmentIndex[parts.length];
+        // 各段最大时间戳的前缀最大值，单调不减
+        long[] maxSoFar = new long[parts.length];
+        long max = Long.MIN_VALUE;
+        for (int s = 0; s < parts.length; s++) {
+            starts[s + 1] = starts[s] + parts[s].recordCount;
+            max = Math.max(max, parts[s].maxTimestamp);
+            maxSoFar[s] = max;
+        }
+        try {
+            first = firstAtOrAfter(maxSoFar, fromMillis);
+            end = Math.max(first, toMillis == Long.MAX_VALUE ? starts[parts.length] : firstAtOrAfter(maxSoFar, toMillis));
+            if (type == null) {
+                count = end - first;
+                matchSegments = null;
+                firstRanks = null;
+                matchStarts = null;
+                if (count > 0) {
+                    for (int s = segmentOf(first); s <= segmentOf(end - 1); s++) {
+                        source(s);
+                    }
+                }
+                return;
+            }
+            
+            int[] segments = new int[parts.length];
+            int[] ranks = new int[parts.length];
+            long[] matched = new long[parts.length + 1];
+            int n = 0;
+            long total = 0;
+            for (int s = 0; s < parts.length; s++) {
+                long from = Math.max(first, starts[s]) - starts[s];
+                long to = Math.min(end, starts[s + 1]) - starts[s];
+                if (from >= to) {
+                    continue;
+                }
+                int fromRank;
+                int toRank;
+                if (from == 0 && to == parts[s].recordCount) {
+                    fromRank = 0;
+                    toRank = (int) parts[s].typeCounts[type.ordinal()];
+                } else {
+                    SegmentIndex index = index(s);
+                    fromRank = index.rankOf(type, from);
+                    toRank = index.rankOf(type, to);
+                }
+                if (toRank > fromRank) {
+                    source(s);
+                    segments[n] = s;
+                    ranks[n] = fromRank;
+                    matched[n] = total;
+                    total += toRank - fromRank;
+                    n++;
+                }
+            }
+            matched[n] = total;
+            count = total;
+            matchSegments = Arrays.copyOf(segments, n);
+            firstRanks = Arrays.copyOf(ranks, n);
+            matchStarts = Arrays.copyOf(matched, n + 1);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+    
+    /**
+     * 结果条数
+     */
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * 第 position 条结果（从 0 开始，0 为最旧）在快照中的序号，与同一快照上游标的序号一致
+     */
+    public long getOrdinal(long position) throws IOException {
+        if (position < 0 || position >= count) {
+            throw new IndexOutOfBoundsException("position " + position + " of " + count);
+        }
+        if (type == null) {
+            return first + position;
+        }
+        int lo = 0;
+        int hi = matchSegments.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (matchStarts[mid] <= position) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        int segment = matchSegments[lo];
+        int rank = firstRanks[lo] + (int) (position - matchStarts[lo]);
+        return starts[segment] + index(segment).positionOf(type, rank);
+    }
+    
+    /**
+     * 读取第 position 条结果
+     */
+    public void read(long position, DataRecord into) throws IOException {
+        long ordinal = getOrdinal(position);
+        int segment = segmentOf(ordinal);
+        sources[segment].read(ordinal - starts[segment], into);
+    }
+    
+    /**
+     * 第一条时间戳不早于 timestampMillis 的记录在快照中的序号
+     * 按各段最大时间戳的前缀最大值二分出第一个可能含有结果的段，再在段内用稀疏时间索引查找
+     */
+    private long firstAtOrAfter(long[] maxSoFar, long timestampMillis) throws IOException {
+        if (timestampMillis == Long.MIN_VALUE) {
+            return 0;
+        }
+        int lo = 0;
+        int hi = parts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (maxSoFar[mid] < timestampMillis) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo == parts.length) {
+            return starts[parts.length];
+        }
+        return starts[lo] + index(lo).findFirstAtOrAfter(source(lo), timestampMillis);
+    }
+    
+    /**
+     * 快照中序号所在的段（跳过没有记录的段）
+     */
+    private int segmentOf(long ordinal) {
+        int lo = 0;
+        int hi = parts.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= ordinal) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+    
+    /**
+     * 打开的段与快照记录的条数不同说明段已被改写，抛出异常由调用方改用更新的快照
+     */
+    private SegmentSource source(int segment) throws IOException {
+        if (sources[segment] == null) {
+            SegmentSource source = parts[segment].opener.open();
+            if (source.getCount() != parts[segment].recordCount) {
+                source.close();
+                throw new IOException("segment changed: " + source.getCount() + " of " + parts[segment].recordCount + " records");
+            }
+            sources[segment] = source;
+        }
+        return sources[segment];
+    }
+    
+    private SegmentIndex index(int segment) throws IOException {
+        if (indexes[segment] == null) {
+            indexes[segment] = parts[segment].index(source(segment));
+        }
+        return indexes[segment];
+    }
+    
+    @Override
+    public void close() throws IOException {
+        for (SegmentSource source : sources) {
+            if (source != null) {
+                source.close();
+            }
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,1116 @@
+package com.example.permissionapp.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.SecretKey;
+
+/**
+ * 分段记录存储
+ * 记录按顺序写入大小受限的段文件，清单文件记录段列表和每段的统计。
+ * 保留策略整段丢弃最旧的段，清除只改写清单，段文件由后台线程删除；
+ * 后台合并把相邻的小段合成一段，减少文件数；较旧的段按分层策略改写为按块压缩的冷数据格式。
+ * 每段维护一份汇总统计，已封存段的汇总保存在检查点文件中，查询汇总不需要读取记录。
+ * 给出数据密钥时所有段文件和汇总检查点都加密保存：活动段按写入批次加密，
+ * 段封存后由后台改写为按块压缩并加密的格式（不等待变冷），读取时只解密用到的块。
+ * 写入和段列表的变化在锁内进行，每次提交后发布一份不可变快照（StoreSnapshot）；
+ * 游标从最新的快照在锁外打开，不阻塞写入，也看不到提交一半的批次。
+ * 每段另有二级索引（稀疏时间索引和按类型的位置表，见 SegmentIndex），活动段的索引随写入在内存中维护，
+ * 封存时写入索引文件；按时间和类型过滤的查询（query）只读取结果所在的段
+ */
+public class RecordStore implements Closeable {
+    
+    public static final String DIRECTORY = "collected_data";
+    static final String MANIFEST_FILE = "MANIFEST";
+    static final String ROLLUP_FILE = "ROLLUPS";
+    
+    public static final long DEFAULT_SEGMENT_BYTES = 256 * 1024;
+    public static final long DEFAULT_SEGMENT_MAX_AGE_MILLIS = 24L * 60 * 60 * 1000;
+    
+    private static final int MANIFEST_MAGIC = 0x50524D4D; // "PRMM"
+    private static final int MANIFEST_VERSION = 3;
+    private static final int ROLLUP_MAGIC = 0x50524D52; // "PRMR"
+    private static final int ROLLUP_VERSION = 2;
+    // 汇总检查点加密时的标识，写入附加认证数据
+    private static final long ROLLUP_CONTEXT = -1;
+    
+    // 之前版本的单文件布局，首次打开时迁移为第一个段
+    private static final String OLD_DATA_FILE = "collected_data.bin";
+    private static final String OLD_INDEX_FILE = "collected_data.idx";
+    
+    private final File directory;
+    private final JournalWriter.FlushPolicy flushPolicy;
+    private final RetentionPolicy retention;
+    private final TieringPolicy tiering;
+    // 为 null 时不加密
+    private final SecretKey dataKey;
+    private final ChunkCipher metaCipher;
+    private final long segmentBytes;
+    private final long segmentMaxAgeMillis;
+    private final ExecutorService maintenance;
+    // 合并和压缩都会改写段文件，彼此互斥；与 this 同时持有时先取这把锁
+    private final Object rewriteLock = new Object();
+    
+    // 按写入顺序排列，最后一个为活动段
+    private final List<SegmentInfo> segments = new ArrayList<>();
+    private ActiveSegment active;
+    private long nextFileNumber = 1;
+    private boolean maintenanceScheduled = false;
+    // 后台补建索引时在锁外读取，需要能看到关闭
+    private volatile boolean closed = false;
+    
+    // 已提交的写入数（追加的记录数加清除次数），只在持有锁时修改
+    private long sequence = 0;
+    // 已封存段的打开方式和统计，段列表变化时重建；加上活动段即为一份快照
+    private StoreSnapshot.Part[] sealedParts = new StoreSnapshot.Part[0];
+    // 活动段的二级索引，覆盖活动段的全部记录；重新打开后还没补齐时为 null，由后台补建
+    private SegmentIndex activeIndex;
+    // 最近一次发布的快照，读取方不加锁直接使用；关闭后为 null
+    private volatile StoreSnapshot published;
+    
+    // 已关闭段的写入统计累计
+    private JournalWriter.Stats closedJournalStats = JournalWriter.Stats.EMPTY;
+    private long segmentsDropped = 0;
+    private long segmentsMerged = 0;
+    private long segmentsCompressed = 0;
+    // 打开时活动段的恢复：校验的字节数和截掉的残缺尾部
+    private long recoveryScannedBytes = 0;
+    private long recoveryTruncatedBytes = 0;
+    
+    // 所有已封存段的汇总之和，段列表变化时重算；加上活动段的汇总即为全部记录的汇总
+    private final Rollup sealedRollup = new Rollup();
+    
+    public RecordStore(File filesDir, JournalWriter.FlushPolicy flushPolicy, RetentionPolicy retention) throws IOException {
+        this(filesDir, flushPolicy, retention, TieringPolicy.DISABLED);
+    }
+    
+    public RecordStore(File filesDir, JournalWriter.FlushPolicy flushPolicy, RetentionPolicy retention,
+                       TieringPolicy tiering) throws IOException {
+        this(filesDir, flushPolicy, retention, tiering, DEFAULT_SEGMENT_BYTES, DEFAULT_SEGMENT_MAX_AGE_MILLIS);
+    }
+    
+    public RecordStore(File filesDir, JournalWriter.FlushPolicy flushPolicy, RetentionPolicy retention,
+                       long segmentBytes, long segmentMaxAgeMillis) throws IOException {
+        this(filesDir, flushPolicy, retention, TieringPolicy.DISABLED, segmentBytes, segmentMaxAgeMillis);
+    }
+    
+    public RecordStore(File filesDir, JournalWriter.FlushPolicy flushPolicy, RetentionPolicy retention,
+                       TieringPolicy tiering, long segmentBytes, long segmentMaxAgeMillis) throws IOException {
+        this(filesDir, flushPolicy, retention, tiering, null, segmentBytes, segmentMaxAgeMillis);
+    }
+    
+    /**
+     * @param dataKey AES 数据密钥，为 null 时不加密；之前未加密写入的段会在后台改写为加密格式
+     */
+    public RecordStore(File filesDir, JournalWriter.FlushPolicy flushPolicy, RetentionPolicy retention,
+                       TieringPolicy tiering, SecretKey dataKey) throws IOException {
+        this(filesDir, flushPolicy, retention, tiering, dataKey, DEFAULT_SEGMENT_BYTES, DEFAULT_SEGMENT_MAX_AGE_MILLIS);
+    }
+    
+    public RecordStore(File filesDir, JournalWriter.FlushPolicy flushPolicy, RetentionPolicy retention,
+                       TieringPolicy tiering, SecretKey dataKey,
+                       long segmentBytes, long segmentMaxAgeMillis) throws IOException {
+        this.directory = new File(filesDir, DIRECTORY);
+        this.flushPolicy = flushPolicy;
+        this.retention = retention;
+        this.tiering = tiering;
+        this.dataKey = dataKey;
+        this.metaCipher = dataKey != null ? new ChunkCipher(dataKey) : null;
+        this.segmentBytes = segmentBytes;
+        this.segmentMaxAgeMillis = segmentMaxAgeMillis;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "record-store-maintenance");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        this.maintenance = executor;
+        
+        synchronized (this) {
+            if (!readManifest()) {
+                migrateSingleFile(filesDir);
+            }
+            SegmentInfo last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (last != null && !last.sealed && dataKey != null && !last.encrypted
+                    && last.dataFile(directory).exists()) {
+                // 启用加密前写入的明文活动段：恢复后封存，由后台改写为加密格式
+                new SegmentWriter(directory, last, flushPolicy).seal();
+                last.sealed = true;
+            }
+            if (last == null || last.sealed) {
+                last = new SegmentInfo(nextFileNumber++);
+                segments.add(last);
+            }
+            loadRollups();
+            active = openActive(last);
+            // 活动段的索引不写入检查点，已有记录时由后台从段内记录补建，不延长恢复时间
+            activeIndex = last.recordCount == 0 ? new SegmentIndex() : null;
+            recoveryScannedBytes = active.getRecoveryScannedBytes();
+            recoveryTruncatedBytes = active.getRecoveryTruncatedBytes();
+            segmentsChanged();
+            deleteOrphanFiles();
+            scheduleMaintenance();
+        }
+    }
+    
+    public File getDirectory() {
+        return directory;
+    }
+    
+    public JournalWriter.FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+    
+    /**
+     * 追加一条记录，活动段超过大小或时间限制时先切换到新段
+     */
+    public synchronized void append(DataRecord record) throws IOException {
+        ensureOpen();
+        rollIfNeeded(record.getTimestampMillis());
+        try {
+            active.append(record);
+        } catch (IOException e) {
+            indexLost();
+            throw e;
+        }
+        if (activeIndex != null) {
+            activeIndex.add(record);
+        }
+        sequence++;
+    }
+    
+    /**
+     * 作为一次事务追加一批记录：一次加锁、一次文件写入（按刷盘策略 fsync）
+     * 批次只在开始前检查一次是否切换段，整批写入同一段
+     */
+    public synchronized void appendAll(DataRecord[] records, int count) throws IOException {
+        ensureOpen();
+        if (count == 0) {
+            return;
+        }
+        rollIfNeeded(records[0].getTimestampMillis());
+        try {
+            active.appendBatch(records, count);
+        } catch (IOException e) {
+            indexLost();
+            throw e;
+        }
+        if (activeIndex != null) {
+            for (int i = 0; i < count; i++) {
+                activeIndex.add(records[i]);
+            }
+        }
+        sequence += count;
+        publish();
+    }
+    
+    /**
+     * 写入失败时不知道活动段里留下了几条，丢弃活动段的索引，由后台按段内记录补建
+     */
+    private void indexLost() {
+        activeIndex = null;
+        scheduleMaintenance();
+    }
+    
+    /**
+     * 把缓冲中的记录和索引写入文件，并发布包含这些记录的快照
+     */
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        publish();
+    }
+    
+    /**
+     * 清除全部记录
+     * 只在调用线程上改写清单，旧段文件由后台线程删除，已打开的游标不受影响
+     */
+    public void clear() throws IOException {
+        List<SegmentInfo> dropped;
+        synchronized (this) {
+            ensureOpen();
+            closeActive(false);
+            dropped = new ArrayList<>(segments);
+            segments.clear();
+            SegmentInfo fresh = new SegmentInfo(nextFileNumber++);
+            segments.add(fresh);
+            active = openActive(fresh);
+            activeIndex = new SegmentIndex();
+            sequence++;
+            segmentsChanged();
+        }
+        maintenance.execute(() -> deleteFiles(dropped));
+    }
+    
+    /**
+     * 从最新发布的快照打开只读游标，不取存储的锁；游标只看到已提交（appendAll 或 flush 之后）的记录
+     */
+    public RecordCursor openCursor() throws IOException {
+        return openOnSnapshot(StoreSnapshot::openCursor);
+    }
+    
+    /**
+     * 按时间范围和数据类型过滤的查询，与 openCursor 一样从最新发布的快照打开
+     * 耗时与结果所在的段和读取的条数有关，不随历史长度增长
+     *
+     * @param type       null 为全部类型
+     * @param fromMillis 不早于这个时间，Long.MIN_VALUE 为不限
+     * @param toMillis   早于这个时间，Long.MAX_VALUE 为不限
+     */
+    public RecordQuery query(DataType type, long fromMillis, long toMillis) throws IOException {
+        return openOnSnapshot(snapshot -> snapshot.openQuery(type, fromMillis, toMillis));
+    }
+    
+    private interface SnapshotReader<T> {
+        T open(StoreSnapshot snapshot) throws IOException;
+    }
+    
+    /**
+     * 快照中的段文件可能在打开前被后台合并、压缩或删除，此时一定已有更新的快照发布，改用新快照重试
+     */
+    private <T> T openOnSnapshot(SnapshotReader<T> reader) throws IOException {
+        StoreSnapshot snapshot = published;
+        while (true) {
+            if (snapshot == null) {
+                throw new IOException("store closed: " + directory);
+            }
+            try {
+                return reader.open(snapshot);
+            } catch (IOException e) {
+                StoreSnapshot latest = published;
+                if (latest == snapshot) {
+                    throw e;
+                }
+                snapshot = latest;
+            }
+        }
+    }
+    
+    /**
+     * 最近一次发布的快照
+     */
+    public StoreSnapshot getSnapshot() throws IOException {
+        StoreSnapshot snapshot = published;
+        if (snapshot == null) {
+            throw new IOException("store closed: " + directory);
+        }
+        return snapshot;
+    }
+    
+    /**
+     * 把活动段缓冲中的记录写入文件，用当前的段列表发布快照，持有锁时调用
+     */
+    private void publish() throws IOException {
+        active.flush();
+        StoreSnapshot.Part[] parts = Arrays.copyOf(sealedParts, sealedParts.length + 1);
+        SegmentInfo info = active.getInfo();
+        SegmentIndex index = activeIndex != null && activeIndex.getCount() == info.recordCount
+                ? activeIndex.snapshot() : null;
+        parts[sealedParts.length] = new StoreSnapshot.Part(active.snapshot(), () -> index, info);
+        published = new StoreSnapshot(sequence, parts);
+    }
+    
+    private SegmentSource openSegment(SegmentInfo info) throws IOException {
+        return opener(info).open();
+    }
+    
+    /**
+     * 按段的存储格式捕获打开方式：活动段读取已写入的记录，压缩段按块解压（加密时先解密该块），
+     * 尚未改写的加密段整段解密到内存。段信息在调用时复制，之后的修改不影响已捕获的打开方式
+     */
+    private StoreSnapshot.SegmentOpener opener(SegmentInfo info) {
+        if (active != null && info == active.getInfo()) {
+            return active.snapshot();
+        }
+        long fileNumber = info.fileNumber;
+        if (info.compressed) {
+            // 明文压缩段可能正被改写为加密格式（改名覆盖同一文件），有密钥时总是带上，按文件头决定是否解密
+            File coldFile = info.coldFile(directory);
+            return () -> new CompressedSegment(coldFile, dataKey != null ? new ChunkCipher(dataKey) : null, fileNumber);
+        }
+        File dataFile = info.dataFile(directory);
+        if (info.encrypted) {
+            return () -> EncryptedSegmentWriter.readSealed(dataFile, newCipher(), fileNumber);
+        }
+        File indexFile = info.indexFile(directory);
+        long count = info.recordCount;
+        return () -> new SegmentReader(dataFile, indexFile, count);
+    }
+    
+    /**
+     * 已封存段的索引文件，有密钥时带上（未加密的旧文件按文件头直接读取）
+     */
+    private StoreSnapshot.Part sealedPart(SegmentInfo info) {
+        File file = info.secondaryIndexFile(directory);
+        long fileNumber = info.fileNumber;
+        return new StoreSnapshot.Part(opener(info),
+                () -> SegmentIndex.read(file, dataKey != null ? new ChunkCipher(dataKey) : null, fileNumber), info);
+    }
+    
+    private ActiveSegment openActive(SegmentInfo info) throws IOException {
+        if (dataKey == null) {
+            return new SegmentWriter(directory, info, flushPolicy);
+        }
+        info.encrypted = true;
+        return new EncryptedSegmentWriter(directory, info, flushPolicy, new ChunkCipher(dataKey));
+    }
+    
+    private ChunkCipher newCipher() throws IOException {
+        if (dataKey == null) {
+            throw new IOException("store contains encrypted segments but no key was given: " + directory);
+        }
+        return new ChunkCipher(dataKey);
+    }
+    
+    /**
+     * 全部记录的汇总统计，耗时与历史长度无关
+     */
+    public synchronized Rollup getRollup() throws IOException {
+        ensureOpen();
+        Rollup rollup = sealedRollup.copy();
+        rollup.add(active.getInfo().rollup);
+        return rollup;
+    }
+    
+    /**
+     * 从段文件重新计算所有段的汇总并写入检查点，用于检查点损坏或汇总规则变化后
+     */
+    public synchronized void rebuildRollups() throws IOException {
+        ensureOpen();
+        active.flush();
+        for (SegmentInfo info : segments) {
+            rebuildRollup(info);
+        }
+        segmentsChanged();
+    }
+    
+    /**
+     * 所有段的累计写入统计
+     */
+    public synchronized JournalWriter.Stats getJournalStats() {
+        return closedJournalStats.plus(active.getJournal().getStats());
+    }
+    
+    /**
+     * 存储概况：段数、记录数、字节数，以及保留策略和合并的累计次数
+     */
+    public synchronized String describe() {
+        long records = 0;
+        long bytes = 0;
+        int cold = 0;
+        int encrypted = 0;
+        long coldRawBytes = 0;
+        long coldStoredBytes = 0;
+        for (SegmentInfo info : segments) {
+            records += info.recordCount;
+            bytes += info.sizeBytes;
+            if (info.encrypted) {
+                encrypted++;
+            }
+            if (info.compressed) {
+                cold++;
+                coldRawBytes += info.sizeBytes;
+                coldStoredBytes += info.storedBytes;
+            }
+        }
+        return "segments=" + segments.size() + ", records=" + records + ", bytes=" + bytes
+                + ", encrypted=" + encrypted + ", cold=" + cold + " (" + coldRawBytes + " -> " + coldStoredBytes + " bytes"
+                + (coldStoredBytes > 0 ? String.format(Locale.US, ", ratio %.2f", coldRawBytes / (double) coldStoredBytes) : "")
+                + "), dropped=" + segmentsDropped + ", merged=" + segmentsMerged + ", compressed=" + segmentsCompressed
+                + ", recovery=" + recoveryScannedBytes + "B scanned/" + recoveryTruncatedBytes + "B truncated";
+    }
+    
+    /**
+     * 活动段超过大小或时间限制时切换到新段
+     */
+    private void rollIfNeeded(long timestampMillis) throws IOException {
+        SegmentInfo info = active.getInfo();
+        if (info.sizeBytes >= segmentBytes
+                || (info.recordCount > 0 && timestampMillis - info.minTimestamp > segmentMaxAgeMillis)) {
+            roll();
+        }
+    }
+    
+    private void roll() throws IOException {
+        SegmentInfo sealed = active.getInfo();
+        closeActive(true);
+        sealed.sealed = true;
+        if (activeIndex != null && activeIndex.getCount() == sealed.recordCount) {
+            try {
+                activeIndex.write(sealed.secondaryIndexFile(directory), metaCipher, sealed.fileNumber);
+            } catch (IOException e) {
+                // 索引可以重建，写入失败时由后台补建
+            }
+        }
+        SegmentInfo next = new SegmentInfo(nextFileNumber++);
+        segments.add(next);
+        active = openActive(next);
+        activeIndex = new SegmentIndex();
+        segmentsChanged();
+        scheduleMaintenance();
+    }
+    
+    /**
+     * @param seal 切换段时封存（落盘后不再保留检查点）；否则关闭前写入检查点
+     */
+    private void closeActive(boolean seal) throws IOException {
+        closedJournalStats = closedJournalStats.plus(active.getJournal().getStats());
+        if (seal) {
+            active.seal();
+        } else {
+            active.close();
+        }
+    }
+    
+    // ---- 后台维护：保留策略与段合并 ----
+    
+    private void scheduleMaintenance() {
+        if (maintenanceScheduled || closed) {
+            return;
+        }
+        maintenanceScheduled = true;
+        maintenance.execute(() -> {
+            synchronized (RecordStore.this) {
+                maintenanceScheduled = false;
+            }
+            try {
+                enforceRetention(System.currentTimeMillis());
+                while (compact()) {
+                    // 继续合并直到没有相邻的稀疏段
+                }
+                while (compressColdSegment(System.currentTimeMillis())) {
+                    // 逐段压缩，每段提交后再选下一段
+                }
+                while (buildMissingIndex()) {
+                    // 逐段补建缺失的索引文件
+                }
+                indexActiveSegment();
+            } catch (IOException e) {
+                // 维护失败不影响写入，下次切换段时会重试
+            }
+        });
+    }
+    
+    /**
+     * 按保留策略从最旧的已封存段开始整段丢弃
+     *
+     * @return 丢弃的段数
+     */
+    public int enforceRetention(long nowMillis) throws IOException {
+        List<SegmentInfo> dropped = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return 0;
+            }
+            long totalBytes = 0;
+            long[] typeTotals = new long[DataType.values().length];
+            for (SegmentInfo info : segments) {
+                totalBytes += info.sizeBytes;
+                for (int i = 0; i < typeTotals.length; i++) {
+                    typeTotals[i] += info.typeCounts[i];
+                }
+            }
+            while (segments.size() > 1) {
+                SegmentInfo oldest = segments.get(0);
+                boolean drop = retention.isExpired(oldest, nowMillis)
+                        || totalBytes > retention.maxTotalBytes
+                        || retention.exceedsTypeLimit(typeTotals, oldest);
+                if (!oldest.sealed || !drop) {
+                    break;
+                }
+                segments.remove(0);
+                dropped.add(oldest);
+                totalBytes -= oldest.sizeBytes;
+                for (int i = 0; i < typeTotals.length; i++) {
+                    typeTotals[i] -= oldest.typeCounts[i];
+                }
+            }
+            if (dropped.isEmpty()) {
+                return 0;
+            }
+            segmentsDropped += dropped.size();
+            segmentsChanged();
+        }
+        deleteFiles(dropped);
+        return dropped.size();
+    }
+    
+    /**
+     * 合并一对相邻的稀疏段（都小于段上限的四分之一）
+     * 两段都是未压缩的明文段时逐条复制为普通段；有密钥或两段都已压缩时解密、解压后写成一个压缩段（有密钥时加密），
+     * 未加密存储中不合并已压缩和未压缩的段，较新的段保持不压缩。
+     * 复制在锁外进行，提交前确认两段仍然相邻存在，否则放弃本次结果
+     *
+     * @return 是否完成了一次合并
+     */
+    public boolean compact() throws IOException {
+        synchronized (rewriteLock) {
+            return compactPair();
+        }
+    }
+    
+    private boolean compactPair() throws IOException {
+        SegmentInfo first = null;
+        SegmentInfo second = null;
+        SegmentInfo merged;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            long sparse = segmentBytes / 4;
+            for (int i = 0; i + 1 < segments.size(); i++) {
+                SegmentInfo a = segments.get(i);
+                SegmentInfo b = segments.get(i + 1);
+                if (a.sealed && b.sealed && (dataKey != null || a.compressed == b.compressed)
+                        && a.sizeBytes < sparse && b.sizeBytes < sparse) {
+                    first = a;
+                    second = b;
+                    break;
+                }
+            }
+            if (first == null) {
+                return false;
+            }
+            merged = new SegmentInfo(nextFileNumber++);
+            writeManifest();
+        }
+        
+        SegmentIndex index;
+        if (dataKey != null || first.compressed) {
+            SegmentSource firstSource = openSegment(first);
+            SegmentSource concat;
+            try {
+                concat = new ConcatSegment(firstSource, openSegment(second));
+            } catch (IOException e) {
+                firstSource.close();
+                throw e;
+            }
+            try (SegmentSource source = concat) {
+                index = SegmentIndex.build(source);
+                merged.storedBytes = CompressedSegment.write(source, merged.coldFile(directory), tiering,
+                        dataKey != null ? new ChunkCipher(dataKey) : null, merged.fileNumber);
+            }
+            merged.add(first);
+            merged.add(second);
+            merged.compressed = true;
+            merged.encrypted = dataKey != null;
+        } else {
+            SegmentWriter writer = new SegmentWriter(directory, merged, JournalWriter.FlushPolicy.sizeWindow(64 * 1024, false));
+            index = new SegmentIndex();
+            try {
+                copySegment(first, writer, index);
+                copySegment(second, writer, index);
+                writer.seal();
+            } finally {
+                writer.close();
+            }
+        }
+        try {
+            index.write(merged.secondaryIndexFile(directory), dataKey != null ? new ChunkCipher(dataKey) : null,
+                    merged.fileNumber);
+        } catch (IOException e) {
+            // 索引可以重建，写入失败时由后台补建
+        }
+        merged.sealed = true;
+        
+        synchronized (this) {
+            int i = segments.indexOf(first);
+            if (closed || i < 0 || i + 1 >= segments.size() || segments.get(i + 1) != second) {
+                // 期间被清除或过期，丢弃合并结果
+                deleteFiles(Collections.singletonList(merged));
+                return false;
+            }
+            segments.set(i, merged);
+            segments.remove(i + 1);
+            segmentsMerged++;
+            segmentsChanged();
+        }
+        List<SegmentInfo> old = new ArrayList<>(2);
+        old.add(first);
+        old.add(second);
+        deleteFiles(old);
+        return true;
+    }
+    
+    /**
+     * 把一个已封存的段改写为按块压缩的格式：明文存储中是按分层策略已经变冷的段，
+     * 加密存储中是尚未改写为加密块格式的段（包括启用加密前写入的明文段）
+     * 改写在锁外进行，提交前确认该段仍在且未被合并或丢弃，否则放弃本次结果
+     *
+     * @return 是否改写了一个段
+     */
+    public boolean compressColdSegment(long nowMillis) throws IOException {
+        synchronized (rewriteLock) {
+            return compressOne(nowMillis);
+        }
+    }
+    
+    private boolean compressOne(long nowMillis) throws IOException {
+        SegmentInfo target = null;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            for (SegmentInfo info : segments) {
+                if (info != active.getInfo() && needsRewrite(info, nowMillis)) {
+                    target = info;
+                    break;
+                }
+            }
+            if (target == null) {
+                return false;
+            }
+        }
+        
+        // 明文的压缩段改写为加密格式时目标文件名相同，新文件改名覆盖旧文件
+        File coldFile = target.coldFile(directory);
+        boolean wasCompressed = target.compressed;
+        long storedBytes;
+        try (SegmentSource source = openSegment(target)) {
+            ChunkCipher cipher = dataKey != null ? new ChunkCipher(dataKey) : null;
+            storedBytes = CompressedSegment.write(source, coldFile, tiering, cipher, target.fileNumber);
+            if (cipher != null && !target.encrypted) {
+                // 启用加密前写入的索引文件同样改写为加密格式，段内序号不变
+                File indexFile = target.secondaryIndexFile(directory);
+                SegmentIndex index = SegmentIndex.read(indexFile, null, target.fileNumber);
+                if (index == null || index.getCount() != source.getCount()) {
+                    index = SegmentIndex.build(source);
+                }
+                index.write(indexFile, cipher, target.fileNumber);
+            }
+        }
+        
+        synchronized (this) {
+            if (closed || !segments.contains(target)) {
+                if (!wasCompressed) {
+                    coldFile.delete();
+                }
+                target.secondaryIndexFile(directory).delete();
+                return false;
+            }
+            target.compressed = true;
+            target.encrypted = dataKey != null;
+            target.storedBytes = storedBytes;
+            segmentsCompressed++;
+            segmentsChanged();
+        }
+        if (!wasCompressed) {
+            // 已打开的游标仍持有原文件的映射，删除不影响它们
+            target.dataFile(directory).delete();
+            target.indexFile(directory).delete();
+        }
+        return true;
+    }
+    
+    /**
+     * 为一个缺少索引文件的已封存段建立二级索引（重新打开后封存的段、写入索引失败的段）
+     * 建立在锁外进行，写入后确认该段仍在，否则删除刚写入的文件
+     *
+     * @return 是否建立了一个索引
+     */
+    private boolean buildMissingIndex() throws IOException {
+        synchronized (rewriteLock) {
+            return indexOne();
+        }
+    }
+    
+    private boolean indexOne() throws IOException {
+        SegmentInfo target = null;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            for (SegmentInfo info : segments) {
+                if (info.sealed && !info.secondaryIndexFile(directory).exists()) {
+                    target = info;
+                    break;
+                }
+            }
+            if (target == null) {
+                return false;
+            }
+        }
+        
+        File indexFile = target.secondaryIndexFile(directory);
+        SegmentIndex index;
+        try (SegmentSource source = openSegment(target)) {
+            index = SegmentIndex.build(source);
+        }
+        index.write(indexFile, dataKey != null ? new ChunkCipher(dataKey) : null, target.fileNumber);
+        synchronized (this) {
+            if (closed || !segments.contains(target)) {
+                indexFile.delete();
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 重新打开或写入失败后活动段没有索引：先在锁外为已提交的记录建立索引，
+     * 再在锁内补上期间追加的记录，之后随写入维护
+     */
+    private void indexActiveSegment() throws IOException {
+        SegmentInfo info;
+        StoreSnapshot.SegmentOpener opener;
+        synchronized (this) {
+            if (closed || activeIndex != null) {
+                return;
+            }
+            info = active.getInfo();
+            opener = active.snapshot();
+        }
+        
+        SegmentIndex index = new SegmentIndex();
+        DataRecord record = new DataRecord();
+        try (SegmentSource source = opener.open()) {
+            for (long i = 0; i < source.getCount(); i++) {
+                if (closed) {
+                    return;
+                }
+                source.read(i, record);
+                index.add(record);
+            }
+        }
+        
+        synchronized (this) {
+            if (closed || activeIndex != null || active.getInfo() != info) {
+                // 已关闭、已切换到新段或期间写入失败后又被补齐
+                return;
+            }
+            active.flush();
+            try (SegmentSource source = active.snapshot().open()) {
+                for (long i = index.getCount(); i < source.getCount(); i++) {
+                    source.read(i, record);
+                    index.add(record);
+                }
+            }
+            activeIndex = index;
+            publish();
+        }
+    }
+    
+    /**
+     * 删除所有段的索引文件并从段内记录重新建立，用于索引文件损坏或索引格式变化后
+     * 重建期间的查询在内存中临时建立索引，结果不受影响
+     */
+    public void rebuildIndexes() throws IOException {
+        synchronized (rewriteLock) {
+            synchronized (this) {
+                ensureOpen();
+                for (SegmentInfo info : segments) {
+                    info.secondaryIndexFile(directory).delete();
+                }
+                activeIndex = null;
+            }
+            while (indexOne()) {
+                // 逐段重建
+            }
+        }
+        indexActiveSegment();
+    }
+    
+    private boolean needsRewrite(SegmentInfo info, long nowMillis) {
+        if (dataKey != null) {
+            return info.sealed && info.recordCount > 0 && !(info.compressed && info.encrypted);
+        }
+        return tiering.isCold(info, nowMillis);
+    }
+    
+    private void copySegment(SegmentInfo source, SegmentWriter target, SegmentIndex index) throws IOException {
+        DataRecord record = new DataRecord();
+        try (SegmentSource reader = openSegment(source)) {
+            for (long i = 0; i < reader.getCount(); i++) {
+                reader.read(i, record);
+                target.append(record);
+                index.add(record);
+            }
+        }
+    }
+    
+    private void deleteFiles(List<SegmentInfo> dropped) {
+        for (SegmentInfo info : dropped) {
+            info.dataFile(directory).delete();
+            info.indexFile(directory).delete();
+            info.coldFile(directory).delete();
+            info.checkpointFile(directory).delete();
+            info.secondaryIndexFile(directory).delete();
+        }
+    }
+    
+    /**
+     * 删除清单中没有的段文件（删除前进程退出或合并未完成时残留）
+     */
+    private void deleteOrphanFiles() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> live = new HashSet<>();
+        for (SegmentInfo info : segments) {
+            if (info.compressed) {
+                live.add(info.coldFile(directory).getName());
+            } else {
+                live.add(info.dataFile(directory).getName());
+                live.add(info.indexFile(directory).getName());
+            }
+            live.add(info.secondaryIndexFile(directory).getName());
+        }
+        live.add(active.getInfo().checkpointFile(directory).getName());
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith("segment-") && !live.contains(name)) {
+                file.delete();
+            }
+        }
+    }
+    
+    // ---- 清单与汇总检查点 ----
+    
+    /**
+     * 段列表变化后调用：重算已封存段的汇总，写入清单和汇总检查点
+     */
+    private void segmentsChanged() throws IOException {
+        sealedRollup.reset();
+        List<StoreSnapshot.Part> parts = new ArrayList<>(segments.size());
+        for (SegmentInfo info : segments) {
+            if (info != active.getInfo()) {
+                sealedRollup.add(info.rollup);
+                parts.add(sealedPart(info));
+            }
+        }
+        sealedParts = parts.toArray(new StoreSnapshot.Part[0]);
+        // 先发布新快照再删除旧文件，读取方打开旧快照失败时总能看到更新的快照
+        publish();
+        writeManifest();
+        writeRollups();
+    }
+    
+    /**
+     * 只保存已封存段的汇总；活动段重新打开时会逐条重放，汇总随之重建
+     */
+    private void writeRollups() throws IOException {
+        List<SegmentInfo> sealed = new ArrayList<>(segments.size());
+        for (SegmentInfo info : segments) {
+            if (info.sealed) {
+                sealed.add(info);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream content = new DataOutputStream(bytes);
+        content.writeInt(sealed.size());
+        for (SegmentInfo info : sealed) {
+            content.writeLong(info.fileNumber);
+            content.writeLong(info.recordCount);
+            info.rollup.write(content);
+        }
+        content.flush();
+        
+        File tmp = new File(directory, ROLLUP_FILE + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(ROLLUP_MAGIC);
+            out.writeByte(ROLLUP_VERSION);
+            out.writeBoolean(metaCipher != null);
+            if (metaCipher != null) {
+                // 汇总里有位置格子等敏感内容，加密存储时整体加密
+                ByteBuffer sealedContent = ByteBuffer.allocate(bytes.size() + ChunkCipher.OVERHEAD);
+                metaCipher.encrypt(ByteBuffer.wrap(bytes.toByteArray()), sealedContent, ROLLUP_CONTEXT, 0);
+                out.write(sealedContent.array());
+            } else {
+                bytes.writeTo(out);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(new File(directory, ROLLUP_FILE))) {
+            throw new IOException("cannot replace rollups in " + directory);
+        }
+    }
+    
+    /**
+     * 从检查点恢复已封存段的汇总；检查点缺失、损坏或条数对不上的段从段文件重建
+     */
+    private void loadRollups() throws IOException {
+        Map<Long, Rollup> saved = new HashMap<>();
+        Map<Long, Long> savedCounts = new HashMap<>();
+        File file = new File(directory, ROLLUP_FILE);
+        if (file.exists()) {
+            try (DataInputStream fileIn = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (fileIn.readInt() != ROLLUP_MAGIC) {
+                    throw new IOException("bad rollups: " + file);
+                }
+                int version = fileIn.readUnsignedByte();
+                if (version > ROLLUP_VERSION) {
+                    throw new IOException("unsupported rollups version " + version);
+                }
+                DataInputStream in = fileIn;
+                if (version >= 2 && fileIn.readBoolean()) {
+                    // 密钥不对或缺失时解密失败，与检查点损坏一样从段文件重建
+                    if (metaCipher == null) {
+                        throw new IOException("rollups are encrypted but no key was given");
+                    }
+                    byte[] sealedContent = new byte[(int) file.length()];
+                    int length = 0;
+                    int n;
+                    while ((n = fileIn.read(sealedContent, length, sealedContent.length - length)) > 0) {
+                        length += n;
+                    }
+                    ByteBuffer content = ByteBuffer.allocate(length);
+                    metaCipher.decrypt(ByteBuffer.wrap(sealedContent, 0, length), content, ROLLUP_CONTEXT, 0);
+                    in = new DataInputStream(new ByteArrayInputStream(content.array(), 0, content.position()));
+                }
+                int n = in.readInt();
+                for (int i = 0; i < n; i++) {
+                    long fileNumber = in.readLong();
+                    savedCounts.put(fileNumber, in.readLong());
+                    saved.put(fileNumber, Rollup.read(in));
+                }
+            } catch (IOException e) {
+                saved.clear();
+                savedCounts.clear();
+            }
+        }
+        for (SegmentInfo info : segments) {
+            if (!info.sealed) {
+                continue;
+            }
+            Rollup rollup = saved.get(info.fileNumber);
+            if (rollup != null && savedCounts.get(info.fileNumber) == info.recordCount) {
+                info.rollup.reset();
+                info.rollup.add(rollup);
+            } else {
+                rebuildRollup(info);
+            }
+        }
+    }
+    
+    /**
+     * 重放段内全部记录，重算该段的汇总
+     */
+    private void rebuildRollup(SegmentInfo info) throws IOException {
+        info.rollup.reset();
+        DataRecord record = new DataRecord();
+        SegmentSource reader = openSegment(info);
+        try {
+            for (long i = 0; i < reader.getCount(); i++) {
+                reader.read(i, record);
+                info.rollup.onAppend(record);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+    
+    
+    /**
+     * 清单先写临时文件再改名，改名是原子操作，崩溃时只会看到旧清单或新清单
+     */
+    private void writeManifest() throws IOException {
+        File tmp = new File(directory, MANIFEST_FILE + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeByte(MANIFEST_VERSION);
+            out.writeLong(nextFileNumber);
+            out.writeInt(segments.size());
+            for (SegmentInfo info : segments) {
+                info.write(out);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(new File(directory, MANIFEST_FILE))) {
+            throw new IOException("cannot replace manifest in " + directory);
+        }
+    }
+    
+    private boolean readManifest() throws IOException {
+        File file = new File(directory, MANIFEST_FILE);
+        if (!file.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MANIFEST_MAGIC) {
+                throw new IOException("bad manifest: " + file);
+            }
+            int version = in.readUnsignedByte();
+            if (version > MANIFEST_VERSION) {
+                throw new IOException("unsupported manifest version " + version);
+            }
+            nextFileNumber = in.readLong();
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                segments.add(SegmentInfo.read(in, version));
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 把单文件布局的数据和索引改名为第一个段，作为活动段继续写入
+     */
+    private void migrateSingleFile(File filesDir) {
+        File oldData = new File(filesDir, OLD_DATA_FILE);
+        File oldIndex = new File(filesDir, OLD_INDEX_FILE);
+        if (!oldData.exists()) {
+            return;
+        }
+        SegmentInfo info = new SegmentInfo(nextFileNumber++);
+        if (oldData.renameTo(info.dataFile(directory))) {
+            if (oldIndex.exists()) {
+                oldIndex.renameTo(info.indexFile(directory));
+            }
+            segments.add(info);
+        }
+    }
+    
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("store closed: " + directory);
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            published = null;
+            try {
+                closeActive(false);
+                writeManifest();
+            } finally {
+                maintenance.shutdown();
+            }
+        }
+    }
+} 
\ No newline at end of file
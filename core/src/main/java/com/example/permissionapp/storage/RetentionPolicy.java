@@ -0,0 +1,48 @@
+package com.example.permissionapp.storage;
+
+/**
+ * 数据保留策略
+ * 超出任一限制时从最旧的已封存段开始整段丢弃，不改写文件
+ */
+public final class RetentionPolicy {
+    
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    
+    /** 默认保留 30 天、最多 16 MB、每种数据最多 50000 条 */
+    public static final RetentionPolicy DEFAULT = new RetentionPolicy(30 * DAY_MILLIS, 16L * 1024 * 1024, 50_000);
+    
+    /** 不限制 */
+    public static final RetentionPolicy UNLIMITED = new RetentionPolicy(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+    
+    public final long maxAgeMillis;
+    public final long maxTotalBytes;
+    public final long maxRecordsPerType;
+    
+    public RetentionPolicy(long maxAgeMillis, long maxTotalBytes, long maxRecordsPerType) {
+        if (maxAgeMillis <= 0 || maxTotalBytes <= 0 || maxRecordsPerType <= 0) {
+            throw new IllegalArgumentException("retention limits must be positive");
+        }
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxTotalBytes = maxTotalBytes;
+        this.maxRecordsPerType = maxRecordsPerType;
+    }
+    
+    /**
+     * 段中最新的记录也超过保留时间时整段过期
+     */
+    boolean isExpired(SegmentInfo segment, long nowMillis) {
+        return segment.recordCount > 0 && nowMillis - segment.maxTimestamp > maxAgeMillis;
+    }
+    
+    /**
+     * 某种数据的总条数超限，并且该段含有这种数据
+     */
+    boolean exceedsTypeLimit(long[] typeTotals, SegmentInfo segment) {
+        for (int i = 0; i < typeTotals.length; i++) {
+            if (typeTotals[i] > maxRecordsPerType && segment.typeCounts[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+} 
\ No newline at end of file
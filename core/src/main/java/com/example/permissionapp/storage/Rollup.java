@@ -0,0 +1,288 @@
+package com.example.permissionapp.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 记录的汇总统计，每次追加时增量更新
+ * 每个段各有一份，保留策略和清除按段丢弃时汇总随之一致；多份汇总可以合并
+ */
+public final class Rollup {
+    
+    private static final int TYPE_COUNT = DataType.values().length;
+    
+    // 位置按 0.01 度（约 1 公里）取整后去重，每段最多保存这么多个格子
+    static final double CELL_DEGREES = 0.01;
+    static final int MAX_CELLS = 4096;
+    
+    private final long[] counts = new long[TYPE_COUNT];
+    private final long[] firstTimestamps = new long[TYPE_COUNT];
+    private final long[] lastTimestamps = new long[TYPE_COUNT];
+    
+    private int contactMin;
+    private int contactMax;
+    private int contactLast;
+    
+    private long storageMin;
+    private long storageMax;
+    private long storageFirst;
+    private long storageLast;
+    
+    // 升序排列的格子编号
+    private long[] cells = new long[16];
+    private int cellCount;
+    private boolean cellsTruncated;
+    
+    public Rollup() {
+        reset();
+    }
+    
+    void reset() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(firstTimestamps, Long.MAX_VALUE);
+        Arrays.fill(lastTimestamps, Long.MIN_VALUE);
+        contactMin = Integer.MAX_VALUE;
+        contactMax = Integer.MIN_VALUE;
+        contactLast = 0;
+        storageMin = Long.MAX_VALUE;
+        storageMax = Long.MIN_VALUE;
+        storageFirst = 0;
+        storageLast = 0;
+        cellCount = 0;
+        cellsTruncated = false;
+    }
+    
+    /**
+     * 计入一条记录，不分配对象（格子数组扩容除外）
+     */
+    void onAppend(DataRecord record) {
+        int t = record.getType().ordinal();
+        long timestamp = record.getTimestampMillis();
+        boolean first = timestamp < firstTimestamps[t];
+        boolean last = timestamp >= lastTimestamps[t];
+        counts[t]++;
+        if (first) {
+            firstTimestamps[t] = timestamp;
+        }
+        if (last) {
+            lastTimestamps[t] = timestamp;
+        }
+        switch (record.getType()) {
+            case CONTACT_COUNT:
+                contactMin = Math.min(contactMin, record.getContactCount());
+                contactMax = Math.max(contactMax, record.getContactCount());
+                if (last) {
+                    contactLast = record.getContactCount();
+                }
+                break;
+            case APPROXIMATE_LOCATION:
+                addCell(cellOf(record.getLatitude(), record.getLongitude()));
+                break;
+            case APP_STORAGE_INFO:
+                storageMin = Math.min(storageMin, record.getSizeBytes());
+                storageMax = Math.max(storageMax, record.getSizeBytes());
+                if (first) {
+                    storageFirst = record.getSizeBytes();
+                }
+                if (last) {
+                    storageLast = record.getSizeBytes();
+                }
+                break;
+        }
+    }
+    
+    /**
+     * 合并另一份汇总；时间戳相同时以 other 为较新的一方
+     */
+    void add(Rollup other) {
+        int contacts = DataType.CONTACT_COUNT.ordinal();
+        int storage = DataType.APP_STORAGE_INFO.ordinal();
+        if (other.counts[contacts] > 0) {
+            contactMin = Math.min(contactMin, other.contactMin);
+            contactMax = Math.max(contactMax, other.contactMax);
+            if (other.lastTimestamps[contacts] >= lastTimestamps[contacts]) {
+                contactLast = other.contactLast;
+            }
+        }
+        if (other.counts[storage] > 0) {
+            storageMin = Math.min(storageMin, other.storageMin);
+            storageMax = Math.max(storageMax, other.storageMax);
+            if (other.firstTimestamps[storage] < firstTimestamps[storage]) {
+                storageFirst = other.storageFirst;
+            }
+            if (other.lastTimestamps[storage] >= lastTimestamps[storage]) {
+                storageLast = other.storageLast;
+            }
+        }
+        for (int t = 0; t < TYPE_COUNT; t++) {
+            counts[t] += other.counts[t];
+            firstTimestamps[t] = Math.min(firstTimestamps[t], other.firstTimestamps[t]);
+            lastTimestamps[t] = Math.max(lastTimestamps[t], other.lastTimestamps[t]);
+        }
+        for (int i = 0; i < other.cellCount; i++) {
+            addCell(other.cells[i]);
+        }
+        cellsTruncated |= other.cellsTruncated;
+    }
+    
+    Rollup copy() {
+        Rollup copy = new Rollup();
+        copy.add(this);
+        return copy;
+    }
+    
+    static long cellOf(double latitude, double longitude) {
+        long lat = Math.round((latitude + 90) / CELL_DEGREES);
+        long lon = Math.round((longitude + 180) / CELL_DEGREES);
+        return lat * 36_001L + lon;
+    }
+    
+    private void addCell(long cell) {
+        int i = Arrays.binarySearch(cells, 0, cellCount, cell);
+        if (i >= 0) {
+            return;
+        }
+        if (cellCount == MAX_CELLS) {
+            cellsTruncated = true;
+            return;
+        }
+        i = -i - 1;
+        if (cellCount == cells.length) {
+            cells = Arrays.copyOf(cells, cells.length * 2);
+        }
+        System.arraycopy(cells, i, cells, i + 1, cellCount - i);
+        cells[i] = cell;
+        cellCount++;
+    }
+    
+    public long getCount(DataType type) {
+        return counts[type.ordinal()];
+    }
+    
+    public long getTotalCount() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+    
+    /**
+     * 该类型最早一条记录的时间，没有记录时返回 -1
+     */
+    public long getFirstTimestamp(DataType type) {
+        return counts[type.ordinal()] == 0 ? -1 : firstTimestamps[type.ordinal()];
+    }
+    
+    /**
+     * 该类型最新一条记录的时间，没有记录时返回 -1
+     */
+    public long getLastTimestamp(DataType type) {
+        return counts[type.ordinal()] == 0 ? -1 : lastTimestamps[type.ordinal()];
+    }
+    
+    public int getContactMin() {
+        return getCount(DataType.CONTACT_COUNT) == 0 ? 0 : contactMin;
+    }
+    
+    public int getContactMax() {
+        return getCount(DataType.CONTACT_COUNT) == 0 ? 0 : contactMax;
+    }
+    
+    public int getContactLast() {
+        return contactLast;
+    }
+    
+    public long getStorageMin() {
+        return getCount(DataType.APP_STORAGE_INFO) == 0 ? 0 : storageMin;
+    }
+    
+    public long getStorageMax() {
+        return getCount(DataType.APP_STORAGE_INFO) == 0 ? 0 : storageMax;
+    }
+    
+    public long getStorageFirst() {
+        return storageFirst;
+    }
+    
+    public long getStorageLast() {
+        return storageLast;
+    }
+    
+    /**
+     * 最早和最新一次存储记录之间的增长，单位字节
+     */
+    public long getStorageGrowth() {
+        return storageLast - storageFirst;
+    }
+    
+    /**
+     * 出现过的位置格子数（0.01 度取整）
+     */
+    public int getDistinctLocationCells() {
+        return cellCount;
+    }
+    
+    /**
+     * 格子数达到上限后不再计入新的格子，此时 getDistinctLocationCells 是下限
+     */
+    public boolean isLocationCellsTruncated() {
+        return cellsTruncated;
+    }
+    
+    void write(DataOutput out) throws IOException {
+        out.writeByte(TYPE_COUNT);
+        for (int t = 0; t < TYPE_COUNT; t++) {
+            out.writeLong(counts[t]);
+            out.writeLong(firstTimestamps[t]);
+            out.writeLong(lastTimestamps[t]);
+        }
+        out.writeInt(contactMin);
+        out.writeInt(contactMax);
+        out.writeInt(contactLast);
+        out.writeLong(storageMin);
+        out.writeLong(storageMax);
+        out.writeLong(storageFirst);
+        out.writeLong(storageLast);
+        out.writeBoolean(cellsTruncated);
+        out.writeInt(cellCount);
+        for (int i = 0; i < cellCount; i++) {
+            out.writeLong(cells[i]);
+        }
+    }
+    
+    static Rollup read(DataInput in) throws IOException {
+        Rollup rollup = new Rollup();
+        int types = in.readUnsignedByte();
+        for (int t = 0; t < types; t++) {
+            long count = in.readLong();
+            long first = in.readLong();
+            long last = in.readLong();
+            if (t < TYPE_COUNT) {
+                rollup.counts[t] = count;
+                rollup.firstTimestamps[t] = first;
+                rollup.lastTimestamps[t] = last;
+            }
+        }
+        rollup.contactMin = in.readInt();
+        rollup.contactMax = in.readInt();
+        rollup.contactLast = in.readInt();
+        rollup.storageMin = in.readLong();
+        rollup.storageMax = in.readLong();
+        rollup.storageFirst = in.readLong();
+        rollup.storageLast = in.readLong();
+        rollup.cellsTruncated = in.readBoolean();
+        int n = in.readInt();
+        if (n < 0 || n > MAX_CELLS) {
+            throw new IOException("bad rollup cell count " + n);
+        }
+        rollup.cells = new long[Math.max(16, n)];
+        for (int i = 0; i < n; i++) {
+            rollup.cells[i] = in.readLong();
+        }
+        rollup.cellCount = n;
+        return rollup;
+    }
+} 
\ No newline at end of file
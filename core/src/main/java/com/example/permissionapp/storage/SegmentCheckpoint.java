@@ -0,0 +1,92 @@
+package com.example.permissionapp.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 活动段的检查点
+ * 记录一个已经 fsync 的数据长度，以及写到这个位置时的段统计和汇总。
+ * 重新打开活动段时信任检查点之前的内容，只校验检查点之后的记录，恢复时间与段大小无关
+ */
+final class SegmentCheckpoint {
+    
+    private static final int MAGIC = 0x50524D4B; // "PRMK"
+    private static final int VERSION = 2;
+    // SegmentInfo 的序列化格式，与清单版本 3 相同
+    private static final int SEGMENT_INFO_VERSION = 3;
+    
+    final long dataLength;
+    final SegmentInfo info;
+    
+    private SegmentCheckpoint(long dataLength, SegmentInfo info) {
+        this.dataLength = dataLength;
+        this.info = info;
+    }
+    
+    /**
+     * 写入检查点（先写临时文件再改名），调用前数据和索引应已落盘
+     */
+    static void write(File file, long dataLength, SegmentInfo info) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(dataLength);
+        info.write(out);
+        info.rollup.write(out);
+        out.flush();
+        byte[] content = bytes.toByteArray();
+        
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(tmp)) {
+            stream.write(content);
+            stream.write(ByteBuffer.allocate(4).putInt(Crc32c.compute(content, 0, content.length)).array());
+            stream.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("cannot write " + file);
+        }
+    }
+    
+    /**
+     * 读取检查点；文件不存在、损坏或不属于这个段时返回 null，由调用方从段头开始校验
+     */
+    static SegmentCheckpoint read(File file, long fileNumber) {
+        if (!file.isFile() || file.length() < 4 || file.length() > 64 * 1024) {
+            return null;
+        }
+        byte[] content = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(content);
+        } catch (IOException e) {
+            return null;
+        }
+        int length = content.length - 4;
+        if (ByteBuffer.wrap(content).getInt(length) != Crc32c.compute(content, 0, length)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content, 0, length))) {
+            // 旧版本的检查点按无效处理，从段头重新校验即可
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                return null;
+            }
+            long dataLength = in.readLong();
+            SegmentInfo info = SegmentInfo.read(in, SEGMENT_INFO_VERSION);
+            if (info.fileNumber != fileNumber || info.compressed) {
+                return null;
+            }
+            info.rollup.add(Rollup.read(in));
+            return new SegmentCheckpoint(dataLength, info);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,453 @@
+package com.example.permissionapp.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 段的二级索引：稀疏时间索引和按数据类型的位置表
+ * 时间索引每 TIME_INTERVAL 条记录保存一个时间戳，按时间查找时先在其中二分，只在一个区间内读取记录的时间戳；
+ * 位置表按类型保存段内序号（升序），按类型读取第 n 条时直接定位，不需要逐条解码比较。
+ * 位置表在内存中与文件中一样保存相邻位置之差的变长编码（通常每条一个字节），按固定大小的块追加，
+ * 每 MARK_INTERVAL 条保存一个标记，定位时从标记向后解码，最多解码 MARK_INTERVAL - 1 个差值。
+ * 活动段的索引随写入在内存中追加，追加不复制已有内容，封存后写入 .tix 文件。索引只由段内记录推出，
+ * 文件缺失、损坏或条数对不上时都可以从段内记录重建
+ */
+final class SegmentIndex {
+    
+    static final int TIME_INTERVAL = 64;
+    static final int MARK_INTERVAL = 64;
+    private static final int CHUNK_BYTES = 1024;
+    
+    private static final int MAGIC = 0x50524D49; // "PRMI"
+    private static final int VERSION = 1;
+    private static final int TYPE_COUNT = DataType.values().length;
+    // 加密时的附加认证数据位置，段数据的块位置都不小于 0
+    private static final long CIPHER_POSITION = -1;
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+    
+    /**
+     * 一个类型的位置表
+     * 快照与原表共享块和标记数组：之后的追加只写在快照范围之外，目录或标记扩容时原表换新数组，快照继续用旧数组
+     */
+    private static final class PositionList {
+        private byte[][] chunks;
+        // 已写入的字节数、条数和最后一个位置
+        private int bytes;
+        private int size;
+        private int last = -1;
+        // marks[k] 为第 k * MARK_INTERVAL 条的位置，markOffsets[k] 为它的编码的起始字节
+        private int[] marks;
+        private int[] markOffsets;
+        
+        PositionList() {
+            this.chunks = new byte[4][];
+            this.marks = new int[4];
+            this.markOffsets = new int[4];
+        }
+        
+        private PositionList(PositionList other) {
+            this.chunks = other.chunks;
+            this.bytes = other.bytes;
+            this.size = other.size;
+            this.last = other.last;
+            this.marks = other.marks;
+            this.markOffsets = other.markOffsets;
+        }
+        
+        PositionList copy() {
+            return new PositionList(this);
+        }
+        
+        /**
+         * 追加一个大于 last 的位置
+         */
+        void add(int position) {
+            if (size % MARK_INTERVAL == 0) {
+                int k = size / MARK_INTERVAL;
+                if (k == marks.length) {
+                    marks = Arrays.copyOf(marks, k * 2);
+                    markOffsets = Arrays.copyOf(markOffsets, k * 2);
+                }
+                marks[k] = position;
+                markOffsets[k] = bytes;
+            }
+            int delta = position - last;
+            while ((delta & ~0x7F) != 0) {
+                put((byte) ((delta & 0x7F) | 0x80));
+                delta >>>= 7;
+            }
+            put((byte) delta);
+            last = position;
+            size++;
+        }
+        
+        private void put(byte b) {
+            int chunk = bytes / CHUNK_BYTES;
+            if (chunk == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunk * 2);
+            }
+            if (chunks[chunk] == null) {
+                chunks[chunk] = new byte[CHUNK_BYTES];
+            }
+            chunks[chunk][bytes % CHUNK_BYTES] = b;
+            bytes++;
+        }
+        
+        /**
+         * 第 rank 条的位置
+         */
+        int get(int rank) {
+            int k = rank / MARK_INTERVAL;
+            int position = marks[k];
+            int offset = markOffsets[k];
+            for (int i = k * MARK_INTERVAL; i < rank; i++) {
+                offset = skip(offset);
+                position += delta(offset);
+            }
+            return position;
+        }
+        
+        /**
+         * 位置小于 ordinal 的条数
+         */
+        int rankOf(long ordinal) {
+            int marksUsed = (size + MARK_INTERVAL - 1) / MARK_INTERVAL;
+            int lo = 0;
+            int hi = marksUsed;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (marks[mid] < ordinal) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            if (lo == 0) {
+                return 0;
+            }
+            // 第 lo - 1 个标记小于 ordinal，下一个标记（如果有）不小于 ordinal，结果在两者之间
+            int rank = (lo - 1) * MARK_INTERVAL;
+            int position = marks[lo - 1];
+            int offset = markOffsets[lo - 1];
+            int end = Math.min(size, lo * MARK_INTERVAL);
+            while (rank + 1 < end) {
+                offset = skip(offset);
+                int next = position + delta(offset);
+                if (next >= ordinal) {
+                    break;
+                }
+                position = next;
+                rank++;
+            }
+            return rank + 1;
+        }
+        
+        /** 从 offset 处的差值开始，跳过它，返回下一个差值的起始字节 */
+        private int skip(int offset) {
+            while ((byteAt(offset) & 0x80) != 0) {
+                offset++;
+            }
+            return offset + 1;
+        }
+        
+        private int delta(int offset) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = byteAt(offset++);
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+        
+        private int byteAt(int offset) {
+            return chunks[offset / CHUNK_BYTES][offset % CHUNK_BYTES];
+        }
+        
+        /**
+         * 编码与索引文件中的格式相同，直接写出
+         */
+        void writeTo(DataOutput out) throws IOException {
+            for (int start = 0; start < bytes; start += CHUNK_BYTES) {
+                out.write(chunks[start / CHUNK_BYTES], 0, Math.min(CHUNK_BYTES, bytes - start));
+            }
+        }
+    }
+    
+    private int count;
+    // sparseTimestamps[k] 为段内第 k * TIME_INTERVAL 条记录的时间戳
+    private long[] sparseTimestamps;
+    private final PositionList[] positions;
+    
+    SegmentIndex() {
+        this.sparseTimestamps = new long[16];
+        this.positions = new PositionList[TYPE_COUNT];
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            positions[i] = new PositionList();
+        }
+    }
+    
+    private SegmentIndex(int count, long[] sparseTimestamps, PositionList[] positions) {
+        this.count = count;
+        this.sparseTimestamps = sparseTimestamps;
+        this.positions = positions;
+    }
+    
+    /**
+     * 从段内记录重建
+     */
+    static SegmentIndex build(SegmentSource source) throws IOException {
+        SegmentIndex index = new SegmentIndex();
+        DataRecord record = new DataRecord();
+        for (long i = 0; i < source.getCount(); i++) {
+            source.read(i, record);
+            index.add(record);
+        }
+        return index;
+    }
+    
+    /**
+     * 追加下一条记录（段内序号为当前条数）
+     */
+    void add(DataRecord record) {
+        if (count % TIME_INTERVAL == 0) {
+            int k = count / TIME_INTERVAL;
+            if (k == sparseTimestamps.length) {
+                sparseTimestamps = Arrays.copyOf(sparseTimestamps, k * 2);
+            }
+            sparseTimestamps[k] = record.getTimestampMillis();
+        }
+        positions[record.getType().ordinal()].add(count);
+        count++;
+    }
+    
+    /**
+     * 当前内容的只读副本，可以交给其他线程
+     * 与本对象共享数组：之后的追加只写在副本范围之外，扩容时本对象换新数组，副本继续用旧数组
+     */
+    SegmentIndex snapshot() {
+        PositionList[] copies = new PositionList[TYPE_COUNT];
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            copies[i] = positions[i].copy();
+        }
+        return new SegmentIndex(count, sparseTimestamps, copies);
+    }
+    
+    int getCount() {
+        return count;
+    }
+    
+    int getTypeCount(DataType type) {
+        return positions[type.ordinal()].size;
+    }
+    
+    /**
+     * 该类型的第 rank 条（从 0 开始）记录的段内序号
+     */
+    int positionOf(DataType type, int rank) {
+        PositionList list = positions[type.ordinal()];
+        if (rank < 0 || rank >= list.size) {
+            throw new IndexOutOfBoundsException("rank " + rank + " of " + list.size);
+        }
+        return list.get(rank);
+    }
+    
+    /**
+     * 段内序号小于 ordinal 的该类型记录数
+     */
+    int rankOf(DataType type, long ordinal) {
+        return positions[type.ordinal()].rankOf(ordinal);
+    }
+    
+    /**
+     * 段内第一条时间戳不早于 timestampMillis 的记录，与 RecordCursor.findFirstAtOrAfter 的约定相同；
+     * 稀疏索引确定区间后只读取 O(log TIME_INTERVAL) 条记录的时间戳
+     *
+     * @return 段内序号，所有记录都更早时返回条数
+     */
+    long findFirstAtOrAfter(SegmentSource source, long timestampMillis) throws IOException {
+        int sparseCount = (count + TIME_INTERVAL - 1) / TIME_INTERVAL;
+        int lo = 0;
+        int hi = sparseCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sparseTimestamps[mid] < timestampMillis) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo == 0) {
+            return 0;
+        }
+        // 第 lo - 1 个采样点早于目标，第 lo 个（如果有）不早于目标，结果在两者之间
+        long first = (long) (lo - 1) * TIME_INTERVAL + 1;
+        long end = Math.min(count, (long) lo * TIME_INTERVAL);
+        while (first < end) {
+            long mid = (first + end) >>> 1;
+            if (source.timestampOf(mid) < timestampMillis) {
+                first = mid + 1;
+            } else {
+                end = mid;
+            }
+        }
+        return first;
+    }
+    
+    // ---- 索引文件 ----
+    
+    /**
+     * 先写临时文件再改名；cipher 不为 null 时内容整体加密，段编号作为附加认证数据，文件不能挪给其他段使用
+     */
+    void write(File file, ChunkCipher cipher, long fileNumber) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024 + count);
+        DataOutputStream content = new DataOutputStream(bytes);
+        writeContent(content);
+        content.flush();
+        byte[] body = bytes.toByteArray();
+        
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(fos)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeBoolean(cipher != null);
+            if (cipher != null) {
+                ByteBuffer sealed = ByteBuffer.allocate(body.length + ChunkCipher.OVERHEAD);
+                cipher.encrypt(ByteBuffer.wrap(body), sealed, fileNumber, CIPHER_POSITION);
+                out.writeInt(sealed.position());
+                out.write(sealed.array(), 0, sealed.position());
+            } else {
+                out.writeInt(body.length);
+                out.write(body);
+                out.writeInt(Crc32c.compute(body, 0, body.length));
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("cannot write " + file);
+        }
+    }
+    
+    /**
+     * 读取索引文件；文件不存在、损坏、不属于这个段或无法解密时返回 null，由调用方从段内记录重建
+     *
+     * @param cipher 为 null 时只能读取未加密的文件
+     */
+    static SegmentIndex read(File file, ChunkCipher cipher, long fileNumber) {
+        if (!file.isFile() || file.length() > MAX_FILE_SIZE) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                return null;
+            }
+            boolean encrypted = in.readBoolean();
+            int length = in.readInt();
+            if (length < 0 || length > file.length()) {
+                return null;
+            }
+            byte[] stored = new byte[length];
+            in.readFully(stored);
+            byte[] body;
+            if (encrypted) {
+                if (cipher == null) {
+                    return null;
+                }
+                ByteBuffer plain = ByteBuffer.allocate(length);
+                cipher.decrypt(ByteBuffer.wrap(stored), plain, fileNumber, CIPHER_POSITION);
+                body = Arrays.copyOf(plain.array(), plain.position());
+            } else {
+                if (in.readInt() != Crc32c.compute(stored, 0, length)) {
+                    return null;
+                }
+                body = stored;
+            }
+            return readContent(new DataInputStream(new ByteArrayInputStream(body)));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 条数、采样间隔、采样时间戳，然后每个类型的条数和相邻位置的差（变长编码，通常一个字节）
+     */
+    private void writeContent(DataOutput out) throws IOException {
+        int sparseCount = (count + TIME_INTERVAL - 1) / TIME_INTERVAL;
+        out.writeInt(count);
+        out.writeInt(TIME_INTERVAL);
+        for (int k = 0; k < sparseCount; k++) {
+            out.writeLong(sparseTimestamps[k]);
+        }
+        out.writeByte(TYPE_COUNT);
+        for (PositionList list : positions) {
+            out.writeInt(list.size);
+            list.writeTo(out);
+        }
+    }
+    
+    private static SegmentIndex readContent(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || in.readInt() != TIME_INTERVAL) {
+            throw new IOException("bad segment index");
+        }
+        long[] sparse = new long[Math.max(1, (count + TIME_INTERVAL - 1) / TIME_INTERVAL)];
+        for (int k = 0; k < (count + TIME_INTERVAL - 1) / TIME_INTERVAL; k++) {
+            sparse[k] = in.readLong();
+        }
+        if (in.readUnsignedByte() != TYPE_COUNT) {
+            throw new IOException("bad segment index types");
+        }
+        PositionList[] positions = new PositionList[TYPE_COUNT];
+        int total = 0;
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            int n = in.readInt();
+            if (n < 0 || n > count - total) {
+                throw new IOException("bad segment index type count");
+            }
+            PositionList list = new PositionList();
+            int position = -1;
+            for (int i = 0; i < n; i++) {
+                position += readVarint(in);
+                if (position >= count) {
+                    throw new IOException("bad segment index position");
+                }
+                list.add(position);
+            }
+            positions[type] = list;
+            total += n;
+        }
+        if (total != count) {
+            throw new IOException("segment index covers " + total + " of " + count + " records");
+        }
+        return new SegmentIndex(count, sparse, positions);
+    }
+    
+    private static int readVarint(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value <= 0) {
+                    throw new IOException("bad varint");
+                }
+                return value;
+            }
+        }
+        throw new IOException("varint too long");
+    }
+} 
\ No newline at end of file
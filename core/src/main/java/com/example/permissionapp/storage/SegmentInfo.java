@@ -0,0 +1,140 @@
+package com.example.permissionapp.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * 段元数据
+ * 记录条数、大小、时间范围和各数据类型的条数，保留策略只依据这些信息决定整段丢弃；
+ * 段内记录的汇总统计不写入清单，单独保存在汇总检查点中
+ */
+final class SegmentInfo {
+    
+    private static final int TYPE_COUNT = DataType.values().length;
+    
+    final long fileNumber;
+    boolean sealed;
+    // 已改写为按块压缩的冷数据格式，此时只有 coldFile 存在；storedBytes 为压缩后的文件大小
+    boolean compressed;
+    long storedBytes;
+    // 段文件加密：未压缩时为加密帧，压缩时每块加密
+    boolean encrypted;
+    long recordCount;
+    long sizeBytes;
+    long minTimestamp = Long.MAX_VALUE;
+    long maxTimestamp = Long.MIN_VALUE;
+    final long[] typeCounts = new long[TYPE_COUNT];
+    final Rollup rollup = new Rollup();
+    
+    SegmentInfo(long fileNumber) {
+        this.fileNumber = fileNumber;
+    }
+    
+    File dataFile(File directory) {
+        return new File(directory, String.format(Locale.US, "segment-%08d.bin", fileNumber));
+    }
+    
+    File indexFile(File directory) {
+        return new File(directory, String.format(Locale.US, "segment-%08d.idx", fileNumber));
+    }
+    
+    File checkpointFile(File directory) {
+        return new File(directory, String.format(Locale.US, "segment-%08d.ckp", fileNumber));
+    }
+    
+    File coldFile(File directory) {
+        return new File(directory, String.format(Locale.US, "segment-%08d.cz", fileNumber));
+    }
+    
+    File secondaryIndexFile(File directory) {
+        return new File(directory, String.format(Locale.US, "segment-%08d.tix", fileNumber));
+    }
+    
+    void onAppend(DataRecord record, int encodedSize) {
+        recordCount++;
+        sizeBytes += encodedSize;
+        minTimestamp = Math.min(minTimestamp, record.getTimestampMillis());
+        maxTimestamp = Math.max(maxTimestamp, record.getTimestampMillis());
+        typeCounts[record.getType().ordinal()]++;
+        rollup.onAppend(record);
+    }
+    
+    void reset() {
+        recordCount = 0;
+        sizeBytes = 0;
+        minTimestamp = Long.MAX_VALUE;
+        maxTimestamp = Long.MIN_VALUE;
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            typeCounts[i] = 0;
+        }
+        rollup.reset();
+    }
+    
+    /**
+     * 用检查点中保存的统计替换当前统计
+     */
+    void restore(SegmentInfo other) {
+        reset();
+        add(other);
+    }
+    
+    /**
+     * 合并另一段的统计，用于段合并
+     */
+    void add(SegmentInfo other) {
+        recordCount += other.recordCount;
+        sizeBytes += other.sizeBytes;
+        minTimestamp = Math.min(minTimestamp, other.minTimestamp);
+        maxTimestamp = Math.max(maxTimestamp, other.maxTimestamp);
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            typeCounts[i] += other.typeCounts[i];
+        }
+        rollup.add(other.rollup);
+    }
+    
+    void write(DataOutput out) throws IOException {
+        out.writeLong(fileNumber);
+        out.writeBoolean(sealed);
+        out.writeLong(recordCount);
+        out.writeLong(sizeBytes);
+        out.writeLong(minTimestamp);
+        out.writeLong(maxTimestamp);
+        out.writeByte(TYPE_COUNT);
+        for (long count : typeCounts) {
+            out.writeLong(count);
+        }
+        out.writeBoolean(compressed);
+        out.writeLong(storedBytes);
+        out.writeBoolean(encrypted);
+    }
+    
+    /**
+     * @param version 清单格式版本，版本 1 没有压缩信息，版本 2 没有加密信息
+     */
+    static SegmentInfo read(DataInput in, int version) throws IOException {
+        SegmentInfo info = new SegmentInfo(in.readLong());
+        info.sealed = in.readBoolean();
+        info.recordCount = in.readLong();
+        info.sizeBytes = in.readLong();
+        info.minTimestamp = in.readLong();
+        info.maxTimestamp = in.readLong();
+        int types = in.readUnsignedByte();
+        for (int i = 0; i < types; i++) {
+            long count = in.readLong();
+            if (i < TYPE_COUNT) {
+                info.typeCounts[i] = count;
+            }
+        }
+        if (version >= 2) {
+            info.compressed = in.readBoolean();
+            info.storedBytes = in.readLong();
+        }
+        if (version >= 3) {
+            info.encrypted = in.readBoolean();
+        }
+        return info;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,182 @@
+package com.example.permissionapp.storage;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 单个段文件的只读访问
+ * 数据文件和索引文件以只读方式映射到内存，按索引直接定位记录，不经过堆上的缓冲区；
+ * 映射建立后即关闭文件，打开时间与段大小无关，页面由系统按需载入和回收
+ */
+final class SegmentReader implements SegmentSource {
+    
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    
+    private final ByteBuffer data;
+    private final ByteBuffer index;
+    private final long dataSize;
+    
+    // 索引文件中有效的条目数，以及索引尚未覆盖的尾部记录偏移量
+    private final long indexedCount;
+    private long[] tailOffsets = new long[16];
+    private int tailCount = 0;
+    private final long count;
+    
+    /**
+     * @param knownCount 已封存段在清单中记录的条数或快照中活动段的条数，索引完整时直接信任，
+     *                   否则校验索引并补扫尾部，最多读到这么多条；小于 0 时读到文件末尾
+     */
+    SegmentReader(File dataFile, File indexFile, long knownCount) throws IOException {
+        try (FileInputStream in = new FileInputStream(dataFile)) {
+            FileChannel channel = in.getChannel();
+            dataSize = channel.size();
+            if (dataSize < RecordCodec.HEADER_SIZE) {
+                throw new EOFException("missing file header: " + dataFile);
+            }
+            if (dataSize > Integer.MAX_VALUE) {
+                throw new IOException("segment too large to map: " + dataFile);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, dataSize);
+        }
+        try {
+            RecordCodec.readFileHeader(data.duplicate());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("bad segment header: " + dataFile, e);
+        }
+        
+        ByteBuffer mappedIndex = EMPTY;
+        if (indexFile.exists()) {
+            try (FileInputStream in = new FileInputStream(indexFile)) {
+                FileChannel channel = in.getChannel();
+                // 只映射完整的条目；活动段的索引可能正在追加
+                long size = channel.size() - channel.size() % SegmentWriter.INDEX_ENTRY_SIZE;
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("index too large to map: " + indexFile);
+                }
+                if (size > 0) {
+                    mappedIndex = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                }
+            }
+        }
+        index = mappedIndex;
+        
+        long indexEntries = index.capacity() / SegmentWriter.INDEX_ENTRY_SIZE;
+        if (knownCount >= 0 && knownCount <= indexEntries) {
+            indexedCount = knownCount;
+        } else {
+            indexedCount = validIndexedCount(indexEntries);
+            scanTail();
+        }
+        // 补扫尾部时可能读到已知条数之后才写入的记录，快照不包含它们
+        count = knownCount >= 0 ? Math.min(knownCount, indexedCount + tailCount) : indexedCount + tailCount;
+    }
+    
+    /**
+     * 段内记录数（打开时的快照）
+     */
+    @Override
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * 读取段内第 ordinal 条记录
+     */
+    @Override
+    public void read(long ordinal, DataRecord into) throws IOException {
+        long offset = offsetOf(ordinal);
+        data.position((int) offset);
+        if (!RecordCodec.decode(data, into)) {
+            throw new EOFException("truncated record at offset " + offset);
+        }
+    }
+    
+    /**
+     * 段内第 ordinal 条记录的时间戳，只读取时间戳字段，用于按时间二分查找
+     */
+    @Override
+    public long timestampOf(long ordinal) {
+        data.position((int) offsetOf(ordinal));
+        return RecordCodec.peekTimestamp(data);
+    }
+    
+    long getDataSize() {
+        return dataSize;
+    }
+    
+    long getIndexedCount() {
+        return indexedCount;
+    }
+    
+    long[] getTailOffsets() {
+        long[] copy = new long[tailCount];
+        System.arraycopy(tailOffsets, 0, copy, 0, tailCount);
+        return copy;
+    }
+    
+    long offsetOf(long ordinal) {
+        if (ordinal >= indexedCount) {
+            return tailOffsets[(int) (ordinal - indexedCount)];
+        }
+        return index.getLong((int) ordinal * SegmentWriter.INDEX_ENTRY_SIZE);
+    }
+    
+    /**
+     * offset 处是否有一条完整的记录
+     */
+    private int completeRecordSize(long offset) {
+        if (offset < RecordCodec.HEADER_SIZE || offset + 2 > dataSize) {
+            return -1;
+        }
+        data.position((int) offset);
+        int size = RecordCodec.peekRecordSize(data);
+        return offset + size <= dataSize ? size : -1;
+    }
+    
+    /**
+     * 索引可能比数据多出未落盘的条目（崩溃或并发写入），只保留指向完整记录的前缀
+     * 从末尾向前检查，通常第一条就有效
+     */
+    private long validIndexedCount(long entries) {
+        long n = entries;
+        while (n > 0) {
+            if (completeRecordSize(index.getLong((int) (n - 1) * SegmentWriter.INDEX_ENTRY_SIZE)) >= 0) {
+                return n;
+            }
+            n--;
+        }
+        return 0;
+    }
+    
+    /**
+     * 从最后一条已索引记录之后扫描，补上索引尚未覆盖的记录
+     */
+    private void scanTail() {
+        long offset = RecordCodec.HEADER_SIZE;
+        if (indexedCount > 0) {
+            long last = offsetOf(indexedCount - 1);
+            offset = last + completeRecordSize(last);
+        }
+        int size;
+        while ((size = completeRecordSize(offset)) >= 0) {
+            if (tailCount == tailOffsets.length) {
+                long[] grown = new long[tailOffsets.length * 2];
+                System.arraycopy(tailOffsets, 0, grown, 0, tailCount);
+                tailOffsets = grown;
+            }
+            tailOffsets[tailCount++] = offset;
+            offset += size;
+        }
+    }
+    
+    /**
+     * 映射在缓冲区被回收时解除，这里没有需要释放的文件句柄
+     */
+    @Override
+    public void close() {
+    }
+} 
\ No newline at end of file
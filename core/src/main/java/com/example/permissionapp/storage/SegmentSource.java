@@ -0,0 +1,28 @@
+package com.example.permissionapp.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 游标读取一个段的方式：未压缩段直接映射，压缩段按块解压
+ */
+interface SegmentSource extends Closeable {
+    
+    /**
+     * 段内记录数（打开时的快照）
+     */
+    long getCount();
+    
+    /**
+     * 读取段内第 ordinal 条记录
+     */
+    void read(long ordinal, DataRecord into) throws IOException;
+    
+    /**
+     * 段内第 ordinal 条记录的时间戳，用于按时间二分查找
+     */
+    long timestampOf(long ordinal) throws IOException;
+    
+    @Override
+    void close();
+} 
\ No newline at end of file
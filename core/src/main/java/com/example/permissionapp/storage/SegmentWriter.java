@@ -0,0 +1,274 @@
+package com.example.permissionapp.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * 活动段写入器
+ * 数据文件保存二进制记录，旁路索引文件按顺序保存每条记录的偏移量（8 字节一条）。
+ * 写入不逐条 fsync：每写入一定字节数做一次检查点，重新打开时只校验检查点之后的记录并截掉残缺的尾部
+ */
+final class SegmentWriter implements ActiveSegment {
+    
+    static final int INDEX_ENTRY_SIZE = 8;
+    
+    // 两次检查点之间最多写入的字节数，也是崩溃后恢复时最多需要校验的字节数
+    static final long CHECKPOINT_INTERVAL_BYTES = 64 * 1024;
+    
+    // 索引只跟随数据文件的刷盘写入，自身的窗口足够大，不会先于数据文件落盘
+    private static final JournalWriter.FlushPolicy INDEX_POLICY =
+            JournalWriter.FlushPolicy.sizeWindow(64 * 1024, false);
+    
+    private final SegmentInfo info;
+    private final File dataFile;
+    private final File indexFile;
+    private final File checkpointFile;
+    private final JournalWriter data;
+    private final JournalWriter index;
+    private final ByteBuffer encodeBuffer = ByteBuffer.allocate(RecordCodec.MAX_RECORD_SIZE);
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+    
+    // 上一次检查点时段内记录的字节数
+    private long checkpointedBytes;
+    private long recoveryScannedBytes;
+    private long recoveryTruncatedBytes;
+    private boolean closed = false;
+    
+    SegmentWriter(File directory, SegmentInfo info, JournalWriter.FlushPolicy policy) throws IOException {
+        this.info = info;
+        this.dataFile = info.dataFile(directory);
+        this.indexFile = info.indexFile(directory);
+        this.checkpointFile = info.checkpointFile(directory);
+        recover();
+        this.index = new JournalWriter(indexFile, INDEX_POLICY);
+        try {
+            this.data = new JournalWriter(dataFile, policy, RecordCodec.fileHeader());
+        } catch (IOException e) {
+            index.close();
+            throw e;
+        }
+        // 先写数据再写索引，崩溃时索引最多落后于数据
+        this.data.setFlushListener(index::flush);
+    }
+    
+    /**
+     * 重新打开活动段时，清单中的统计可能已经过期，数据文件末尾可能有崩溃留下的残缺记录，索引也可能落后或超前于数据。
+     * 从检查点（没有时从段头）开始逐条校验，第一条不完整或校验不符的记录之后全部截掉，
+     * 统计从检查点保存的值继续累加，索引按校验结果重写检查点之后的部分
+     */
+    private void recover() throws IOException {
+        info.reset();
+        if (!dataFile.exists() || dataFile.length() < RecordCodec.HEADER_SIZE) {
+            if (indexFile.exists()) {
+                indexFile.delete();
+            }
+            checkpointFile.delete();
+            return;
+        }
+        SegmentCheckpoint checkpoint = SegmentCheckpoint.read(checkpointFile, info.fileNumber);
+        if (checkpoint != null
+                && (checkpoint.dataLength > dataFile.length()
+                || checkpoint.info.recordCount * INDEX_ENTRY_SIZE > indexFile.length())) {
+            // 检查点之前的内容已落盘，文件比检查点短说明检查点不可信
+            checkpoint = null;
+        }
+        long start = 0;
+        if (checkpoint != null) {
+            info.restore(checkpoint.info);
+            start = checkpoint.dataLength;
+        }
+        
+        long[] offsets = new long[16];
+        int scanned = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(dataFile, "rw")) {
+            long length = raf.length();
+            if (length - start > Integer.MAX_VALUE) {
+                throw new IOException("segment too large to recover: " + dataFile);
+            }
+            byte[] tail = new byte[(int) (length - start)];
+            raf.seek(start);
+            raf.readFully(tail);
+            ByteBuffer buffer = ByteBuffer.wrap(tail);
+            if (start == 0) {
+                try {
+                    RecordCodec.readFileHeader(buffer);
+                } catch (IllegalArgumentException e) {
+                    // 段头损坏时不猜测后面的内容，交给调用方按打开失败处理
+                    throw new IOException("bad segment header: " + dataFile, e);
+                }
+            }
+            DataRecord record = new DataRecord();
+            while (true) {
+                int position = buffer.position();
+                try {
+                    if (!RecordCodec.decode(buffer, record)) {
+                        break;
+                    }
+                } catch (IllegalArgumentException e) {
+                    buffer.position(position);
+                    break;
+                }
+                if (scanned == offsets.length) {
+                    long[] grown = new long[offsets.length * 2];
+                    System.arraycopy(offsets, 0, grown, 0, scanned);
+                    offsets = grown;
+                }
+                offsets[scanned++] = start + position;
+                info.onAppend(record, buffer.position() - position);
+            }
+            long validLength = start + buffer.position();
+            recoveryScannedBytes = tail.length;
+            if (validLength < length) {
+                raf.setLength(validLength);
+                raf.getFD().sync();
+                recoveryTruncatedBytes = length - validLength;
+            }
+        }
+        
+        try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+            long validIndexLength = (info.recordCount - scanned) * INDEX_ENTRY_SIZE;
+            raf.setLength(validIndexLength);
+            ByteBuffer entries = ByteBuffer.allocate(scanned * INDEX_ENTRY_SIZE);
+            for (int i = 0; i < scanned; i++) {
+                entries.putLong(offsets[i]);
+            }
+            raf.seek(validIndexLength);
+            raf.write(entries.array());
+        }
+        checkpointedBytes = checkpoint != null ? checkpoint.info.sizeBytes : 0;
+    }
+    
+    @Override
+    public SegmentInfo getInfo() {
+        return info;
+    }
+    
+    @Override
+    public JournalWriter getJournal() {
+        return data;
+    }
+    
+    /**
+     * 追加一条记录并更新段统计
+     */
+    @Override
+    public void append(DataRecord record) throws IOException {
+        appendRecord(record);
+        checkpointIfDue();
+    }
+    
+    private void appendRecord(DataRecord record) throws IOException {
+        encodeBuffer.clear();
+        int size = RecordCodec.encode(record, encodeBuffer);
+        encodeBuffer.flip();
+        long offset = data.append(encodeBuffer);
+        indexEntry.clear();
+        indexEntry.putLong(offset);
+        indexEntry.flip();
+        index.append(indexEntry);
+        info.onAppend(record, size);
+    }
+    
+    /**
+     * 持有数据日志的锁，定时刷盘不会把这批记录拆成多次写入
+     */
+    @Override
+    public void appendBatch(DataRecord[] records, int count) throws IOException {
+        synchronized (data) {
+            for (int i = 0; i < count; i++) {
+                appendRecord(records[i]);
+            }
+            data.flush();
+            checkpointIfDue();
+        }
+    }
+    
+    private void checkpointIfDue() throws IOException {
+        if (info.sizeBytes - checkpointedBytes >= CHECKPOINT_INTERVAL_BYTES) {
+            checkpoint();
+        }
+    }
+    
+    /**
+     * 数据和索引落盘后写入检查点
+     */
+    private void checkpoint() throws IOException {
+        synchronized (data) {
+            data.sync();
+            index.sync();
+            SegmentCheckpoint.write(checkpointFile, data.size(), info);
+            checkpointedBytes = info.sizeBytes;
+        }
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        data.flush();
+    }
+    
+    /**
+     * 索引随数据一起刷盘，flush 之后索引已覆盖全部记录，读取时直接信任索引
+     */
+    @Override
+    public StoreSnapshot.SegmentOpener snapshot() {
+        long count = info.recordCount;
+        return () -> new SegmentReader(dataFile, indexFile, count);
+    }
+    
+    /**
+     * 重新打开时从检查点之后校验的字节数
+     */
+    @Override
+    public long getRecoveryScannedBytes() {
+        return recoveryScannedBytes;
+    }
+    
+    @Override
+    public long getRecoveryTruncatedBytes() {
+        return recoveryTruncatedBytes;
+    }
+    
+    /**
+     * 封存段：数据和索引落盘后关闭，已封存段的条数以清单为准，不再需要检查点
+     */
+    @Override
+    public void seal() throws IOException {
+        try {
+            if (!closed) {
+                data.sync();
+                index.sync();
+            }
+        } finally {
+            close(false);
+        }
+        checkpointFile.delete();
+    }
+    
+    /**
+     * 关闭前写入检查点（上次检查点之后有写入时），正常关闭后重新打开不需要校验任何记录
+     */
+    @Override
+    public void close() throws IOException {
+        close(true);
+    }
+    
+    private void close(boolean writeCheckpoint) throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (writeCheckpoint && info.sizeBytes != checkpointedBytes) {
+                checkpoint();
+            }
+        } finally {
+            try {
+                data.close();
+            } finally {
+                index.close();
+            }
+        }
+    }
+} 
\ No newline at end of file
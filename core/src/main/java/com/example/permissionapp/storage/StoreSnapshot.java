@@ -0,0 +1,114 @@
+package com.example.permissionapp.storage;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 存储在某次提交之后的不可变视图
+ * 每次提交（appendAll、flush、段列表变化）后发布一份新快照，读取方在锁外按快照打开各段，不阻塞写入；
+ * 每段的条数在发布时确定，之后追加的记录和提交一半的批次都不会出现在快照中
+ */
+public final class StoreSnapshot {
+    
+    /**
+     * 在发布时捕获一段的打开方式和条数，可以在任意线程上打开
+     */
+    interface SegmentOpener {
+        SegmentSource open() throws IOException;
+    }
+    
+    /**
+     * 在发布时捕获一段二级索引的读取方式
+     */
+    interface IndexOpener {
+        /**
+         * @return 索引还没有建好或文件不可用时返回 null，由调用方从段内记录重建
+         */
+        SegmentIndex open() throws IOException;
+    }
+    
+    /**
+     * 快照中的一段：打开方式和发布时的段统计，查询据此跳过整段而不打开段文件和索引
+     * 已封存段的 Part 在段列表变化前被之后的快照沿用，读到的索引也随之缓存
+     */
+    static final class Part {
+        final SegmentOpener opener;
+        final long recordCount;
+        final long maxTimestamp;
+        final long[] typeCounts;
+        private final IndexOpener indexOpener;
+        // 内存紧张时可以回收，下次查询重新读取
+        private volatile SoftReference<SegmentIndex> cachedIndex;
+        
+        /**
+         * 复制段信息中的统计，持有存储的锁时调用
+         */
+        Part(SegmentOpener opener, IndexOpener indexOpener, SegmentInfo info) {
+            this.opener = opener;
+            this.indexOpener = indexOpener;
+            this.recordCount = info.recordCount;
+            this.maxTimestamp = info.maxTimestamp;
+            this.typeCounts = info.typeCounts.clone();
+        }
+        
+        /**
+         * 这一段的二级索引；索引文件缺失或损坏、活动段重新打开后还没补齐时从段内记录重建
+         *
+         * @param source 已打开的这一段
+         */
+        SegmentIndex index(SegmentSource source) throws IOException {
+            SoftReference<SegmentIndex> cached = cachedIndex;
+            SegmentIndex index = cached != null ? cached.get() : null;
+            if (index == null) {
+                index = indexOpener.open();
+                if (index == null || index.getCount() != recordCount) {
+                    index = SegmentIndex.build(source);
+                }
+                cachedIndex = new SoftReference<>(index);
+            }
+            return index;
+        }
+    }
+    
+    private final long sequence;
+    private final Part[] parts;
+    
+    StoreSnapshot(long sequence, Part[] parts) {
+        this.sequence = sequence;
+        this.parts = parts;
+    }
+    
+    /**
+     * 发布时已提交的写入数（追加的记录数加清除次数），单调递增
+     */
+    public long getSequence() {
+        return sequence;
+    }
+    
+    /**
+     * 打开快照中的全部段，部分段打开失败时关闭已打开的段
+     */
+    RecordCursor openCursor() throws IOException {
+        List<SegmentSource> readers = new ArrayList<>(parts.length);
+        try {
+            for (Part part : parts) {
+                readers.add(part.opener.open());
+            }
+        } catch (IOException | RuntimeException e) {
+            for (SegmentSource reader : readers) {
+                reader.close();
+            }
+            throw e;
+        }
+        return new RecordCursor(readers);
+    }
+    
+    /**
+     * 打开快照上的过滤查询，只打开结果所在的段
+     */
+    RecordQuery openQuery(DataType type, long fromMillis, long toMillis) throws IOException {
+        return new RecordQuery(parts, type, fromMillis, toMillis);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,373 @@
+package com.example.permissionapp.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 记录存储的单一写入线程
+ * 任意线程提交的记录和清除请求进入无锁队列，由写入线程按提交顺序执行：
+ * 连续的记录合并为一次 appendAll，清除排在之前提交的记录之后。提交方不等待文件写入，也不取存储的锁；
+ * 读取方通过 RecordStore.openCursor 使用已发布的快照，同样不阻塞写入线程。
+ * 提交的记录复制到提交线程对象池中的队列项，写入线程复制到自己的批次后把队列项放回，稳定状态下提交和写入都不分配对象
+ */
+public final class StoreWriter implements Closeable {
+    
+    /**
+     * 提交结果回调，在写入线程上调用
+     */
+    public interface Listener {
+        /** 一批记录已写入并发布；records 中的对象在回调返回后会被复用 */
+        void onCommitted(DataRecord[] records, int count, long elapsedNanos);
+        
+        /** 一批记录写入失败，已丢弃 */
+        void onFailed(int count, IOException e);
+    }
+    
+    /**
+     * 写入统计快照
+     */
+    public static final class Stats {
+        public final long submitted;
+        public final long committed;
+        public final long failed;
+        public final long commits;
+        public final int maxBatch;
+        
+        Stats(long submitted, long committed, long failed, long commits, int maxBatch) {
+            this.submitted = submitted;
+            this.committed = committed;
+            this.failed = failed;
+            this.commits = commits;
+            this.maxBatch = maxBatch;
+        }
+        
+        /** 平均每次 appendAll 写入的记录数 */
+        public double recordsPerCommit() {
+            return commits == 0 ? 0 : committed / (double) commits;
+        }
+    }
+    
+    // 每个提交线程最多缓存的空闲队列项；写入线程跟得上时够用，更大的突发提交超出的部分每次新建
+    private static final int POOL_SIZE = 64;
+    
+    /**
+     * 队列中的一项：一批记录（提交时复制到项中预先分配的对象），或者清除、同步、停止请求
+     * 记录项属于提交线程的对象池，离开队列头部后由写入线程放回；清除、同步、停止请求每次新建
+     */
+    private static final class Op extends MpscQueue.Node {
+        final OpPool pool;
+        DataRecord[] records;
+        int count;
+        final boolean clear;
+        final boolean stop;
+        final CountDownLatch done;
+        
+        Op(OpPool pool) {
+            this.pool = pool;
+            this.records = new DataRecord[0];
+            this.clear = false;
+            this.stop = false;
+            this.done = null;
+        }
+        
+        Op(boolean clear, boolean stop, CountDownLatch done) {
+            this.pool = null;
+            this.records = null;
+            this.clear = clear;
+            this.stop = stop;
+            this.done = done;
+        }
+    }
+    
+    /**
+     * 一个提交线程的空闲记录项，环形数组：写入线程放回，所属的提交线程取出，各自只推进自己的计数。
+     * 满时放回的项交给垃圾回收，空时提交线程新建
+     */
+    private static final class OpPool {
+        private final Op[] ops = new Op[POOL_SIZE];
+        private final AtomicLong puts = new AtomicLong();
+        private final AtomicLong takes = new AtomicLong();
+        
+        /** 只在所属的提交线程上调用 */
+        Op take() {
+            long take = takes.get();
+            if (take == puts.get()) {
+                return null;
+            }
+            int slot = (int) (take % POOL_SIZE);
+            Op op = ops[slot];
+            ops[slot] = null;
+            takes.lazySet(take + 1);
+            return op;
+        }
+        
+        /** 只在写入线程上调用 */
+        void put(Op op) {
+            long put = puts.get();
+            if (put - takes.get() == POOL_SIZE) {
+                return;
+            }
+            ops[(int) (put % POOL_SIZE)] = op;
+            puts.lazySet(put + 1);
+        }
+    }
+    
+    private final RecordStore store;
+    private final Listener listener;
+    private final MpscQueue<Op> queue = new MpscQueue<>();
+    private final ThreadLocal<OpPool> pools = new ThreadLocal<OpPool>() {
+        @Override
+        protected OpPool initialValue() {
+            return new OpPool();
+        }
+    };
+    private final Thread thread;
+    // 写入线程准备挂起时为 true，提交方入队后据此唤醒
+    private volatile boolean parked = false;
+    private volatile boolean closed = false;
+    // 上次 sync 之后的写入失败，由 sync 抛出
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    
+    private final LongAdder submitted = new LongAdder();
+    // 以下只由写入线程修改
+    private volatile long committed = 0;
+    private volatile long failed = 0;
+    private volatile long commits = 0;
+    private volatile int maxBatch = 0;
+    
+    // 待写入的记录（预先分配，逐条复制），只在写入线程上使用
+    private DataRecord[] batch;
+    private int batchCount = 0;
+    private final int maxBatchRecords;
+    
+    /**
+     * @param maxBatchRecords 合并为一次 appendAll 的最多记录数；单次提交的一批记录不会被拆开
+     * @param listener        可以为 null
+     */
+    public StoreWriter(RecordStore store, int maxBatchRecords, Listener listener) {
+        if (maxBatchRecords <= 0) {
+            throw new IllegalArgumentException("maxBatchRecords must be positive");
+        }
+        this.store = store;
+        this.listener = listener;
+        this.maxBatchRecords = maxBatchRecords;
+        this.batch = grow(new DataRecord[0], maxBatchRecords);
+        this.thread = new Thread(this::run, "record-store-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    public RecordStore getStore() {
+        return store;
+    }
+    
+    /**
+     * 提交一条记录，记录在调用时复制，调用方可以继续复用 record
+     */
+    public void submit(DataRecord record) {
+        Op op = obtain(1);
+        op.records[0].copyFrom(record);
+        op.count = 1;
+        submitted.increment();
+        enqueue(op);
+    }
+    
+    /**
+     * 提交一批记录，整批写入同一次 appendAll，读取方要么看到整批，要么一条都看不到
+     */
+    public void submitAll(DataRecord[] records, int count) {
+        if (count == 0) {
+            return;
+        }
+        Op op = obtain(count);
+        for (int i = 0; i < count; i++) {
+            op.records[i].copyFrom(records[i]);
+        }
+        op.count = count;
+        submitted.add(count);
+        enqueue(op);
+    }
+    
+    /**
+     * 清除全部记录，之前提交的记录先写入再清除；等待清除完成后返回
+     */
+    public void clear() throws IOException {
+        await(new Op(true, false, new CountDownLatch(1)));
+    }
+    
+    /**
+     * 等待之前提交的全部记录写入并发布
+     *
+     * @return 发布的快照序号
+     * @throws IOException 上次 sync 之后有写入失败
+     */
+    public long sync() throws IOException {
+        await(new Op(false, false, new CountDownLatch(1)));
+        return store.getSnapshot().getSequence();
+    }
+    
+    public Stats getStats() {
+        return new Stats(submitted.sum(), committed, failed, commits, maxBatch);
+    }
+    
+    /**
+     * 写入已入队的全部请求后停止写入线程；不关闭存储
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.offer(new Op(false, true, null));
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while stopping the writer");
+        }
+        IOException e = failure.getAndSet(null);
+        if (e != null) {
+            throw e;
+        }
+    }
+    
+    private void await(Op op) throws IOException {
+        enqueue(op);
+        try {
+            op.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the writer");
+        }
+        IOException e = failure.getAndSet(null);
+        if (e != null) {
+            throw e;
+        }
+    }
+    
+    /**
+     * 从当前线程的对象池取一个记录项，容量不够时扩大
+     */
+    private Op obtain(int count) {
+        OpPool pool = pools.get();
+        Op op = pool.take();
+        if (op == null) {
+            op = new Op(pool);
+        }
+        if (op.records.length < count) {
+            op.records = grow(op.records, count);
+        }
+        return op;
+    }
+    
+    private static DataRecord[] grow(DataRecord[] records, int size) {
+        DataRecord[] grown = Arrays.copyOf(records, size);
+        for (int i = records.length; i < size; i++) {
+            grown[i] = new DataRecord();
+        }
+        return grown;
+    }
+    
+    private void enqueue(Op op) {
+        if (closed) {
+            throw new IllegalStateException("writer closed");
+        }
+        queue.offer(op);
+        // 入队之后再检查：写入线程要么看到这一项，要么已经挂起并在这里被唤醒
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+    }
+    
+    // ---- 写入线程 ----
+    
+    private void run() {
+        boolean stopping = false;
+        // 上一次取出的项，仍是队列的头部哨兵
+        Op previous = null;
+        while (true) {
+            Op op = queue.poll();
+            if (op == null) {
+                commit();
+                if (stopping) {
+                    return;
+                }
+                parked = true;
+                if (queue.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+                continue;
+            }
+            if (previous != null && previous.pool != null) {
+                // 上一项已离开队列头部，记录也已复制出来
+                previous.pool.put(previous);
+            }
+            previous = op;
+            if (op.records != null) {
+                if (batchCount > 0 && batchCount + op.count > maxBatchRecords) {
+                    commit();
+                }
+                if (batchCount + op.count > batch.length) {
+                    batch = grow(batch, batchCount + op.count);
+                }
+                for (int i = 0; i < op.count; i++) {
+                    batch[batchCount + i].copyFrom(op.records[i]);
+                }
+                batchCount += op.count;
+                continue;
+            }
+            commit();
+            if (op.clear) {
+                try {
+                    store.clear();
+                } catch (IOException e) {
+                    failure.set(e);
+                }
+            }
+            if (op.done != null) {
+                op.done.countDown();
+            }
+            // 停止前继续处理与停止请求同时入队的请求，不让提交方一直等待
+            stopping |= op.stop;
+        }
+    }
+    
+    /**
+     * 把已合并的记录作为一次事务写入，写入后存储发布新快照
+     */
+    private void commit() {
+        int count = batchCount;
+        if (count == 0) {
+            return;
+        }
+        batchCount = 0;
+        long start = System.nanoTime();
+        try {
+            store.appendAll(batch, count);
+            committed += count;
+            commits++;
+            maxBatch = Math.max(maxBatch, count);
+            if (listener != null) {
+                listener.onCommitted(batch, count, System.nanoTime() - start);
+            }
+        } catch (IOException | RuntimeException e) {
+            // 写入线程不能因为一批记录出错而退出
+            IOException error = e instanceof IOException ? (IOException) e : new IOException("append failed", e);
+            failed += count;
+            failure.set(error);
+            if (listener != null) {
+                listener.onFailed(count, error);
+            }
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.example.permissionapp.storage;
+
+/**
+ * 冷数据分层策略
+ * 最新记录早于 coldAfterMillis 的已封存段在后台改写为按块压缩的格式，
+ * 每块约 blockBytes 字节（压缩前），可以单独解压；活动段和较新的段保持不压缩，追加不受影响
+ */
+public final class TieringPolicy {
+    
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    
+    /** 默认 3 天前的段压缩为 16 KB 的 deflate 块 */
+    public static final TieringPolicy DEFAULT = new TieringPolicy(3 * DAY_MILLIS, 16 * 1024, BlockCodec.DEFLATE);
+    
+    /** 不压缩 */
+    public static final TieringPolicy DISABLED = new TieringPolicy(Long.MAX_VALUE, 16 * 1024, BlockCodec.DEFLATE);
+    
+    public final long coldAfterMillis;
+    public final int blockBytes;
+    public final int codecId;
+    
+    public TieringPolicy(long coldAfterMillis, int blockBytes, int codecId) {
+        if (coldAfterMillis < 0 || blockBytes < RecordCodec.MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("invalid tiering policy");
+        }
+        this.coldAfterMillis = coldAfterMillis;
+        this.blockBytes = blockBytes;
+        this.codecId = codecId;
+    }
+    
+    /**
+     * 已封存且整段都早于冷数据阈值的未压缩段
+     */
+    boolean isCold(SegmentInfo segment, long nowMillis) {
+        return coldAfterMillis != Long.MAX_VALUE && segment.sealed && !segment.compressed
+                && segment.recordCount > 0 && nowMillis - segment.maxTimestamp > coldAfterMillis;
+    }
+} 
\ No newline at end of file
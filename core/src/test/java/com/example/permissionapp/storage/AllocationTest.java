@@ -0,0 +1,179 @@
+package com.example.permissionapp.storage;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 稳定状态下 RecordStore.append 和经 StoreWriter 的提交不为每条记录分配对象
+ * 每种数据类型先写入一批记录预热，再用线程的分配计数统计写入 RECORDS 条的分配字节数；
+ * 经 StoreWriter 时分别统计提交线程和写入线程
+ */
+public class AllocationTest {
+    
+    private static final int WARMUP_RECORDS = 200_000;
+    private static final int RECORDS = 100_000;
+    // 允许的摊销分配：活动段索引每条记录常驻约一个字节，每 64 KB 数据写一次检查点（约 4 KB）；
+    // 每条记录分配一个对象至少 16 字节，会超过这个上限
+    private static final double MAX_BYTES_PER_RECORD = 8.0;
+    // 写入线程每次提交发布一份不可变快照（段列表、段统计和活动段索引的视图），约 300 字节，与批次大小无关
+    private static final long MAX_BYTES_PER_COMMIT = 512;
+    private static final long BASE_TIMESTAMP = 1_700_000_000_000L;
+    private static final int BATCH_SIZE = 16;
+    // 每提交这么多次同步一次，不超过提交线程对象池的大小，避免池空时新建队列项；
+    // 同步请求每次新建，计入提交线程的分配
+    private static final int SYNC_EVERY = 32;
+    
+    private File directory;
+    private RecordStore store;
+    private long sequence = 0;
+    
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("allocation-test").toFile();
+        // 段足够大且不按时间切换，测量期间只写活动段
+        store = new RecordStore(directory, JournalWriter.FlushPolicy.sizeWindow(16 * 1024, false),
+                RetentionPolicy.UNLIMITED, 256L * 1024 * 1024, Long.MAX_VALUE);
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        deleteRecursively(directory);
+    }
+    
+    @Test
+    public void appendDoesNotAllocatePerRecord() throws IOException {
+        com.sun.management.ThreadMXBean allocation = allocationCounters();
+        long thread = Thread.currentThread().getId();
+        DataRecord record = new DataRecord();
+        
+        for (DataType type : DataType.values()) {
+            append(type, record, WARMUP_RECORDS);
+            long before = allocation.getThreadAllocatedBytes(thread);
+            append(type, record, RECORDS);
+            assertPerRecord(type + " append", allocation.getThreadAllocatedBytes(thread) - before);
+        }
+    }
+    
+    @Test
+    public void writerDoesNotAllocatePerRecord() throws IOException {
+        com.sun.management.ThreadMXBean allocation = allocationCounters();
+        long submitter = Thread.currentThread().getId();
+        Set<Thread> existing = Thread.getAllStackTraces().keySet();
+        StoreWriter writer = new StoreWriter(store, 512, null);
+        try {
+            long writerThread = writerThreadId(existing);
+            DataRecord[] batch = new DataRecord[BATCH_SIZE];
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                batch[i] = new DataRecord();
+            }
+            
+            for (DataType type : DataType.values()) {
+                for (int batchSize : new int[] {1, BATCH_SIZE}) {
+                    String name = type + (batchSize == 1 ? " submit" : " submitAll");
+                    submit(writer, type, batch, batchSize, WARMUP_RECORDS);
+                    long commitsBefore = writer.getStats().commits;
+                    long submitterBefore = allocation.getThreadAllocatedBytes(submitter);
+                    long writerBefore = allocation.getThreadAllocatedBytes(writerThread);
+                    submit(writer, type, batch, batchSize, RECORDS);
+                    long submitterBytes = allocation.getThreadAllocatedBytes(submitter) - submitterBefore;
+                    long writerBytes = allocation.getThreadAllocatedBytes(writerThread) - writerBefore;
+                    long commits = writer.getStats().commits - commitsBefore;
+                    assertPerRecord(name + " (submitting thread)", submitterBytes);
+                    // 写入线程连续的小提交各自发布快照，扣除每次提交的固定开销后按记录计算
+                    assertPerRecord(name + " (writer thread, " + commits + " commits)",
+                            Math.max(0, writerBytes - commits * MAX_BYTES_PER_COMMIT));
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+    
+    private static com.sun.management.ThreadMXBean allocationCounters() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported());
+        return (com.sun.management.ThreadMXBean) threads;
+    }
+    
+    private static void assertPerRecord(String name, long allocatedBytes) {
+        double perRecord = allocatedBytes / (double) RECORDS;
+        assertTrue(name + " allocated " + perRecord + " bytes per record", perRecord < MAX_BYTES_PER_RECORD);
+    }
+    
+    /**
+     * 创建 StoreWriter 之后新出现的写入线程
+     */
+    private static long writerThreadId(Set<Thread> existing) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!existing.contains(thread) && thread.getName().equals("record-store-writer")) {
+                return thread.getId();
+            }
+        }
+        throw new AssertionError("writer thread not found");
+    }
+    
+    private void append(DataType type, DataRecord record, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            store.append(next(type, record));
+        }
+    }
+    
+    /**
+     * 按 batchSize 条一次提交 count 条记录，batchSize 为 1 时用 submit；返回前等待全部写入
+     */
+    private void submit(StoreWriter writer, DataType type, DataRecord[] batch, int batchSize, int count) throws IOException {
+        for (int submitted = 0, calls = 0; submitted < count; submitted += batchSize) {
+            if (batchSize == 1) {
+                writer.submit(next(type, batch[0]));
+            } else {
+                for (int i = 0; i < batchSize; i++) {
+                    next(type, batch[i]);
+                }
+                writer.submitAll(batch, batchSize);
+            }
+            if (++calls % SYNC_EVERY == 0) {
+                writer.sync();
+            }
+        }
+        writer.sync();
+    }
+    
+    private DataRecord next(DataType type, DataRecord record) {
+        long timestamp = BASE_TIMESTAMP + sequence;
+        switch (type) {
+            case CONTACT_COUNT:
+                record.setContactCount(timestamp, (int) (sequence % 5000));
+                break;
+            case APPROXIMATE_LOCATION:
+                record.setLocation(timestamp, 31.23 + (sequence % 100) / 100.0, 121.47, 12.5f);
+                break;
+            default:
+                record.setStorage(timestamp, 1024L * 1024 * (sequence % 512));
+                break;
+        }
+        sequence++;
+        return record;
+    }
+    
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+} 
\ No newline at end of file
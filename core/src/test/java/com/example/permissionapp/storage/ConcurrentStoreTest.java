@@ -0,0 +1,189 @@
+package com.example.permissionapp.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 并发压力：PRODUCERS 个生产者线程经 StoreWriter 提交记录，同时 READERS 个读取线程从快照打开游标，运行 DURATION_MILLIS
+ * 每个生产者的记录时间戳固定为自己的编号，联系人数量为自己的提交序号。读取线程校验：
+ * 快照序号和记录数单调不减；最新的若干条记录中每个生产者的序号连续；每个生产者最新可见的记录是一批的最后一条（批次不会只写一半）。
+ * 结束时等待写入线程写完，完整遍历一次，确认提交的记录没有丢失、重复或乱序
+ */
+public class ConcurrentStoreTest {
+    
+    private static final int PRODUCERS = 4;
+    private static final int READERS = 4;
+    private static final int LATEST = 256;
+    private static final long DURATION_MILLIS = 2000;
+    // 生产者最多领先写入线程这么多条，避免队列无限增长
+    private static final long MAX_BACKLOG = 64 * 1024;
+    
+    private File directory;
+    private RecordStore store;
+    private StoreWriter writer;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicLong reads = new AtomicLong();
+    
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("concurrent-test").toFile();
+        // 段较小，运行期间会多次切换段
+        store = new RecordStore(directory, JournalWriter.FlushPolicy.sizeWindow(256 * 1024, false),
+                RetentionPolicy.UNLIMITED, TieringPolicy.DISABLED, 1024 * 1024, Long.MAX_VALUE);
+        writer = new StoreWriter(store, 512, null);
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            store.close();
+            deleteRecursively(directory);
+        }
+    }
+    
+    @Test
+    public void singleRecordSubmissions() throws Exception {
+        run(1);
+    }
+    
+    @Test
+    public void batchSubmissions() throws Exception {
+        run(16);
+    }
+    
+    private void run(int batchSize) throws Exception {
+        long deadline = System.nanoTime() + DURATION_MILLIS * 1_000_000L;
+        Thread[] threads = new Thread[PRODUCERS + READERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            int id = p;
+            threads[p] = new Thread(() -> {
+                try {
+                    produce(id, batchSize, deadline);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "producer-" + p);
+        }
+        for (int r = 0; r < READERS; r++) {
+            threads[PRODUCERS + r] = new Thread(() -> {
+                try {
+                    read(batchSize, deadline);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "reader-" + r);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Throwable e = failure.get();
+        if (e != null) {
+            throw new AssertionError(e.toString(), e);
+        }
+        writer.sync();
+        assertTrue("readers made no progress", reads.get() > 0);
+        verifyAll();
+    }
+    
+    private void produce(int id, int batchSize, long deadline) {
+        DataRecord[] batch = new DataRecord[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            batch[i] = new DataRecord();
+        }
+        int next = 0;
+        while (System.nanoTime() < deadline && failure.get() == null) {
+            StoreWriter.Stats stats = writer.getStats();
+            while (stats.submitted - stats.committed - stats.failed > MAX_BACKLOG) {
+                Thread.yield();
+                stats = writer.getStats();
+            }
+            for (int i = 0; i < batchSize; i++) {
+                batch[i].setContactCount(id, next++);
+            }
+            writer.submitAll(batch, batchSize);
+        }
+    }
+    
+    private void read(int batchSize, long deadline) throws IOException {
+        DataRecord[] latest = new DataRecord[LATEST];
+        for (int i = 0; i < LATEST; i++) {
+            latest[i] = new DataRecord();
+        }
+        long[] newest = new long[PRODUCERS];
+        long lastSequence = -1;
+        long lastCount = 0;
+        while (System.nanoTime() < deadline && failure.get() == null) {
+            StoreSnapshot snapshot = store.getSnapshot();
+            assertTrue("snapshot sequence went back: " + snapshot.getSequence() + " < " + lastSequence,
+                    snapshot.getSequence() >= lastSequence);
+            lastSequence = snapshot.getSequence();
+            try (RecordCursor cursor = store.openCursor()) {
+                assertTrue("record count went back: " + cursor.getCount() + " < " + lastCount,
+                        cursor.getCount() >= lastCount);
+                lastCount = cursor.getCount();
+                int n = cursor.readLatest(latest);
+                // 从新到旧：同一生产者的序号必须逐条减一，第一次见到的（最新的）必须是一批的最后一条
+                for (int p = 0; p < PRODUCERS; p++) {
+                    newest[p] = -1;
+                }
+                for (int i = 0; i < n; i++) {
+                    int producer = (int) latest[i].getTimestampMillis();
+                    long sequence = latest[i].getContactCount();
+                    if (newest[producer] < 0) {
+                        assertTrue("producer " + producer + " has a partial batch ending at " + sequence,
+                                sequence % batchSize == batchSize - 1);
+                    } else {
+                        assertEquals("producer " + producer + " jumped from " + newest[producer],
+                                newest[producer] - 1, sequence);
+                    }
+                    newest[producer] = sequence;
+                }
+            }
+            reads.incrementAndGet();
+        }
+    }
+    
+    /**
+     * 写入线程写完之后，每个生产者的记录都应从 0 开始连续出现
+     */
+    private void verifyAll() throws IOException {
+        long[] expected = new long[PRODUCERS];
+        DataRecord record = new DataRecord();
+        long total = 0;
+        try (RecordCursor cursor = store.openCursor()) {
+            while (cursor.next(record)) {
+                int producer = (int) record.getTimestampMillis();
+                assertEquals("producer " + producer + " record " + total, expected[producer], record.getContactCount());
+                expected[producer]++;
+                total++;
+            }
+        }
+        StoreWriter.Stats stats = writer.getStats();
+        assertEquals("failed records", 0, stats.failed);
+        assertEquals("records read back", stats.submitted, total);
+    }
+    
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+} 
\ No newline at end of file
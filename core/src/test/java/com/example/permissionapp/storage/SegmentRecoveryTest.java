@@ -0,0 +1,343 @@
+package com.example.permissionapp.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 崩溃后重新打开活动段：从检查点继续校验，截掉残缺或校验不符的尾部，索引按校验结果重写
+ * 写入记录后在关闭前复制段文件作为崩溃时的磁盘内容，按不同位置截断或改写后重新打开
+ */
+public class SegmentRecoveryTest {
+    
+    private static final long FILE_NUMBER = 1;
+    // 写到两个半检查点间隔，最后一个检查点之后留有约半个间隔的记录
+    private static final long WRITTEN_BYTES = SegmentWriter.CHECKPOINT_INTERVAL_BYTES * 5 / 2;
+    private static final long BASE_TIMESTAMP = 1_700_000_000_000L;
+    private static final JournalWriter.FlushPolicy POLICY = JournalWriter.FlushPolicy.sizeWindow(16 * 1024, false);
+    
+    private File root;
+    private byte[] data;
+    private byte[] index;
+    private byte[] checkpoint;
+    private int records;
+    // offsets[i] 为第 i 条记录在数据文件中的偏移，offsets[records] 为数据文件长度
+    private long[] offsets;
+    private long checkpointLength;
+    private int checkpointRecords;
+    private int cases = 0;
+    
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("recovery-test").toFile();
+        File directory = new File(root, "written");
+        assertTrue(directory.mkdirs());
+        SegmentInfo info = new SegmentInfo(FILE_NUMBER);
+        SegmentWriter writer = new SegmentWriter(directory, info, POLICY);
+        SegmentCheckpoint saved;
+        try {
+            DataRecord record = new DataRecord();
+            while (info.sizeBytes < WRITTEN_BYTES) {
+                writer.append(record(records++, record));
+            }
+            writer.flush();
+            data = Files.readAllBytes(info.dataFile(directory).toPath());
+            index = Files.readAllBytes(info.indexFile(directory).toPath());
+            checkpoint = Files.readAllBytes(info.checkpointFile(directory).toPath());
+            saved = SegmentCheckpoint.read(info.checkpointFile(directory), FILE_NUMBER);
+        } finally {
+            // 关闭时会写入新的检查点，崩溃时的内容已在关闭前复制
+            writer.close();
+        }
+        
+        assertEquals("index entries", records * SegmentWriter.INDEX_ENTRY_SIZE, index.length);
+        offsets = new long[records + 1];
+        ByteBuffer entries = ByteBuffer.wrap(index);
+        for (int i = 0; i < records; i++) {
+            offsets[i] = entries.getLong();
+        }
+        offsets[records] = data.length;
+        assertTrue("no checkpoint written", saved != null);
+        checkpointLength = saved.dataLength;
+        checkpointRecords = (int) saved.info.recordCount;
+        assertTrue("checkpoint at " + checkpointLength, checkpointLength > RecordCodec.HEADER_SIZE);
+        assertTrue("records after the checkpoint", checkpointRecords < records - 100);
+        assertEquals("checkpoint on a record boundary", offsets[checkpointRecords], checkpointLength);
+    }
+    
+    @After
+    public void tearDown() {
+        deleteRecursively(root);
+    }
+    
+    @Test
+    public void intactSegmentResumesFromCheckpoint() throws IOException {
+        SegmentWriter writer = reopen(data, index, checkpoint);
+        try {
+            assertRecovered(writer, records);
+            assertEquals("scanned bytes", data.length - checkpointLength, writer.getRecoveryScannedBytes());
+            assertEquals("truncated bytes", 0, writer.getRecoveryTruncatedBytes());
+        } finally {
+            writer.close();
+        }
+    }
+    
+    @Test
+    public void tornTailIsTruncated() throws IOException {
+        int last = records - 1;
+        int middle = (checkpointRecords + records) / 2;
+        // 记录边界、长度前缀中间、记录中间、只差校验码的最后一个字节
+        long[] cuts = {
+                offsets[middle],
+                offsets[middle] + 1,
+                (offsets[middle] + offsets[middle + 1]) / 2,
+                offsets[last + 1] - 1,
+                checkpointLength + 1,
+        };
+        for (long cut : cuts) {
+            int survivors = recordsBefore(cut);
+            SegmentWriter writer = reopen(Arrays.copyOf(data, (int) cut), index, checkpoint);
+            try {
+                assertRecovered(writer, survivors);
+                assertEquals("cut at " + cut + ": scanned bytes", cut - checkpointLength, writer.getRecoveryScannedBytes());
+                assertEquals("cut at " + cut + ": truncated bytes", cut - offsets[survivors], writer.getRecoveryTruncatedBytes());
+            } finally {
+                writer.close();
+            }
+        }
+    }
+    
+    @Test
+    public void badChecksumDropsRecordAndTail() throws IOException {
+        int[] damaged = {checkpointRecords, (checkpointRecords + records) / 2, records - 1};
+        for (int k : damaged) {
+            // 记录中间的一个字节和校验码的最后一个字节
+            long[] positions = {(offsets[k] + offsets[k + 1]) / 2, offsets[k + 1] - 1};
+            for (long position : positions) {
+                byte[] corrupted = data.clone();
+                corrupted[(int) position] ^= 0x5A;
+                SegmentWriter writer = reopen(corrupted, index, checkpoint);
+                try {
+                    assertRecovered(writer, k);
+                    assertEquals("record " + k + " byte " + position + ": truncated bytes",
+                            data.length - offsets[k], writer.getRecoveryTruncatedBytes());
+                } finally {
+                    writer.close();
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void indexIsRewrittenAfterCheckpoint() throws IOException {
+        // 索引落后于数据（只到检查点）或超前于数据（尾部有多余的项），都按数据文件重写检查点之后的部分
+        byte[] behind = Arrays.copyOf(index, checkpointRecords * SegmentWriter.INDEX_ENTRY_SIZE);
+        byte[] ahead = Arrays.copyOf(index, index.length + 10 * SegmentWriter.INDEX_ENTRY_SIZE);
+        Arrays.fill(ahead, index.length, ahead.length, (byte) 0x7F);
+        byte[] garbled = index.clone();
+        Arrays.fill(garbled, checkpointRecords * SegmentWriter.INDEX_ENTRY_SIZE, garbled.length, (byte) 0);
+        for (byte[] damaged : new byte[][] {behind, ahead, garbled}) {
+            SegmentWriter writer = reopen(data, damaged, checkpoint);
+            try {
+                assertRecovered(writer, records);
+                assertEquals("scanned bytes", data.length - checkpointLength, writer.getRecoveryScannedBytes());
+            } finally {
+                writer.close();
+            }
+        }
+    }
+    
+    @Test
+    public void untrustedCheckpointScansFromHeader() throws IOException {
+        // 数据文件比检查点短、索引比检查点短、检查点本身损坏或缺失：都从段头开始校验
+        long cut = offsets[checkpointRecords / 2] + 3;
+        byte[] badCheckpoint = checkpoint.clone();
+        badCheckpoint[badCheckpoint.length / 2] ^= 1;
+        byte[][][] images = {
+                {Arrays.copyOf(data, (int) cut), index, checkpoint},
+                {data, Arrays.copyOf(index, (checkpointRecords - 1) * SegmentWriter.INDEX_ENTRY_SIZE), checkpoint},
+                {data, index, badCheckpoint},
+                {data, index, null},
+        };
+        for (byte[][] image : images) {
+            SegmentWriter writer = reopen(image[0], image[1], image[2]);
+            try {
+                int survivors = recordsBefore(image[0].length);
+                assertRecovered(writer, survivors);
+                assertEquals("scanned bytes", image[0].length, writer.getRecoveryScannedBytes());
+                assertEquals("truncated bytes", image[0].length - offsets[survivors], writer.getRecoveryTruncatedBytes());
+            } finally {
+                writer.close();
+            }
+        }
+    }
+    
+    @Test
+    public void damagedHeaderFailsToOpen() throws IOException {
+        byte[] corrupted = data.clone();
+        corrupted[0] ^= 0x20;
+        try {
+            reopen(corrupted, index, null).close();
+            fail("opened a segment with a damaged header");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("bad segment header"));
+        }
+    }
+    
+    @Test
+    public void storeReopensAfterCrash() throws IOException {
+        File written = new File(root, "store");
+        RecordStore store = new RecordStore(written, POLICY, RetentionPolicy.UNLIMITED,
+                64L * 1024 * 1024, Long.MAX_VALUE);
+        File image = new File(root, "store-image");
+        try {
+            DataRecord record = new DataRecord();
+            for (int i = 0; i < records; i++) {
+                store.append(record(i, record));
+            }
+            store.flush();
+            copyDirectory(store.getDirectory(), new File(image, RecordStore.DIRECTORY));
+        } finally {
+            store.close();
+        }
+        // 最后一条记录只写了一半
+        File dataFile = new SegmentInfo(FILE_NUMBER).dataFile(new File(image, RecordStore.DIRECTORY));
+        byte[] torn = Files.readAllBytes(dataFile.toPath());
+        Files.write(dataFile.toPath(), Arrays.copyOf(torn, torn.length - 2));
+        
+        RecordStore reopened = new RecordStore(image, POLICY, RetentionPolicy.UNLIMITED, 64L * 1024 * 1024, Long.MAX_VALUE);
+        try {
+            int survivors = records - 1;
+            DataRecord record = new DataRecord();
+            DataRecord expected = new DataRecord();
+            try (RecordCursor cursor = reopened.openCursor()) {
+                assertEquals("records after recovery", survivors, cursor.getCount());
+                for (int i = 0; cursor.next(record); i++) {
+                    assertSame(i, record(i, expected), record);
+                }
+            }
+            for (DataType type : DataType.values()) {
+                try (RecordQuery query = reopened.query(type, Long.MIN_VALUE, Long.MAX_VALUE)) {
+                    assertEquals(type + " records", countOf(type, survivors), query.getCount());
+                }
+            }
+            // 截掉的尾部之后继续写入
+            reopened.append(record(survivors, record));
+            reopened.flush();
+            try (RecordCursor cursor = reopened.openCursor()) {
+                assertEquals("records after append", survivors + 1, cursor.getCount());
+                cursor.read(survivors, record);
+                assertSame(survivors, record(survivors, expected), record);
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    /**
+     * 把崩溃时的文件内容写入新目录并重新打开段；checkpoint 为 null 时不写检查点文件
+     */
+    private SegmentWriter reopen(byte[] data, byte[] index, byte[] checkpoint) throws IOException {
+        File directory = new File(root, "case-" + cases++);
+        assertTrue(directory.mkdirs());
+        SegmentInfo info = new SegmentInfo(FILE_NUMBER);
+        Files.write(info.dataFile(directory).toPath(), data);
+        Files.write(info.indexFile(directory).toPath(), index);
+        if (checkpoint != null) {
+            Files.write(info.checkpointFile(directory).toPath(), checkpoint);
+        }
+        return new SegmentWriter(directory, info, POLICY);
+    }
+    
+    /**
+     * 恢复后的统计、数据文件和索引都只覆盖前 count 条记录，按索引读回的记录与写入的一致
+     */
+    private void assertRecovered(SegmentWriter writer, int count) throws IOException {
+        SegmentInfo info = writer.getInfo();
+        assertEquals("recovered records", count, info.recordCount);
+        assertEquals("recovered bytes", offsets[count] - RecordCodec.HEADER_SIZE, info.sizeBytes);
+        assertEquals("contact records", countOf(DataType.CONTACT_COUNT, count), info.typeCounts[DataType.CONTACT_COUNT.ordinal()]);
+        File directory = writer.getJournal().getFile().getParentFile();
+        assertEquals("data length", offsets[count], info.dataFile(directory).length());
+        assertEquals("index length", (long) count * SegmentWriter.INDEX_ENTRY_SIZE, info.indexFile(directory).length());
+        DataRecord record = new DataRecord();
+        DataRecord expected = new DataRecord();
+        try (SegmentSource source = writer.snapshot().open()) {
+            assertEquals("readable records", count, source.getCount());
+            for (int i = 0; i < count; i++) {
+                source.read(i, record);
+                assertSame(i, record(i, expected), record);
+            }
+        }
+    }
+    
+    private int recordsBefore(long length) {
+        int count = 0;
+        while (count < records && offsets[count + 1] <= length) {
+            count++;
+        }
+        return count;
+    }
+    
+    private static void assertSame(int i, DataRecord expected, DataRecord actual) {
+        assertEquals("record " + i + " type", expected.getType(), actual.getType());
+        assertEquals("record " + i + " timestamp", expected.getTimestampMillis(), actual.getTimestampMillis());
+    }
+    
+    private static long countOf(DataType type, int records) {
+        long count = 0;
+        for (int i = 0; i < records; i++) {
+            if (typeOf(i) == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    private static DataType typeOf(int i) {
+        return DataType.values()[i % DataType.values().length];
+    }
+    
+    private static DataRecord record(int i, DataRecord record) {
+        long timestamp = BASE_TIMESTAMP + i * 1000L;
+        switch (typeOf(i)) {
+            case CONTACT_COUNT:
+                return record.setContactCount(timestamp, i % 5000);
+            case APPROXIMATE_LOCATION:
+                return record.setLocation(timestamp, 31.23 + (i % 100) / 100.0, 121.47, 12.5f);
+            default:
+                return record.setStorage(timestamp, 1024L * 1024 * (i % 512));
+        }
+    }
+    
+    private static void copyDirectory(File from, File to) throws IOException {
+        assertTrue(to.mkdirs());
+        File[] files = from.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile()) {
+                    Files.copy(file.toPath(), new File(to, file.getName()).toPath());
+                }
+            }
+        }
+    }
+    
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+} 
\ No newline at end of file
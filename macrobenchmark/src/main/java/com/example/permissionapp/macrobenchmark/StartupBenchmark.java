@@ -0,0 +1,68 @@
+package com.example.permissionapp.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.Metric;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.TraceSectionMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import kotlin.Unit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * MainActivity 的冷启动耗时：每次迭代前结束应用进程，再从桌面启动，直到首帧
+ * StartupTimingMetric 给出 timeToInitialDisplayMs，TraceSectionMetric 给出 StartupTrace 各阶段在 trace 中的耗时。
+ * 分别在不编译（只解释执行）和完全 AOT 编译两种情况下测量，对比启动优化前后的版本时使用同一台设备
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+    
+    private static final String PACKAGE_NAME = "com.example.permissionapp";
+    private static final int ITERATIONS = 10;
+    // 与 StartupTrace.Phase 的 trace 段名称一致
+    private static final String[] SECTIONS = {
+        "MainActivity.setContentView",
+        "MainActivity.bindViews",
+        "MainActivity.permissionState",
+        "MainActivity.deferredInit"
+    };
+    
+    @Rule
+    public final MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+    
+    @Test
+    public void coldStartNoCompilation() {
+        coldStart(new CompilationMode.None());
+    }
+    
+    @Test
+    public void coldStartFullCompilation() {
+        coldStart(new CompilationMode.Full());
+    }
+    
+    private void coldStart(CompilationMode compilationMode) {
+        benchmarkRule.measureRepeated(PACKAGE_NAME, metrics(), compilationMode, StartupMode.COLD, ITERATIONS,
+                scope -> {
+                    scope.pressHome();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    scope.startActivityAndWait();
+                    return Unit.INSTANCE;
+                });
+    }
+    
+    private static List<Metric> metrics() {
+        List<Metric> metrics = new ArrayList<>();
+        metrics.add(new StartupTimingMetric());
+        for (String section : SECTIONS) {
+            metrics.add(new TraceSectionMetric(section));
+        }
+        return metrics;
+    }
+} 
\ No newline at end of file